@@ -23,6 +23,36 @@
     threads: getenv("CAF_WORKER_THREADS") || 1,
     maxBatchSize: getenv("CAF_WORKER_MAX_BATCH_SIZE") || undefined,
     maxBatchTime: getenv("CAF_WORKER_MAX_BATCH_TIME") || undefined,
+    maxBatchBytes: getenv("CAF_WORKER_MAX_BATCH_BYTES") || undefined,
+    maxBatchPrefetch: getenv("CAF_WORKER_MAX_BATCH_PREFETCH") || undefined,
+    batchSizeAdaptation: {
+        enabled: getenv("CAF_WORKER_BATCH_SIZE_ADAPTATION_ENABLED") || undefined,
+        minBatchSize: getenv("CAF_WORKER_MIN_BATCH_SIZE") || undefined,
+        minBatchTime: getenv("CAF_WORKER_MIN_BATCH_TIME") || undefined,
+        targetProcessingTime: getenv("CAF_WORKER_TARGET_BATCH_PROCESSING_TIME") || undefined,
+        batchSizeIncrement: undefined,
+        batchTimeIncrement: undefined,
+        decreaseFactor: undefined
+    },
+    subdocumentParallelism: getenv("CAF_WORKER_SUBDOCUMENT_PARALLELISM") || undefined,
+    changeLogCompaction: {
+        maxEntries: getenv("CAF_WORKER_CHANGE_LOG_MAX_ENTRIES") || undefined,
+        maxBytes: getenv("CAF_WORKER_CHANGE_LOG_MAX_BYTES") || undefined,
+        retainEntryNames: getenv("CAF_WORKER_CHANGE_LOG_RETAIN_ENTRY_NAMES") || undefined
+    },
+    documentSnapshots: {
+        minChangeLogEntries: getenv("CAF_WORKER_DOCUMENT_SNAPSHOT_MIN_CHANGE_LOG_ENTRIES") || undefined,
+        maxCacheBytes: getenv("CAF_WORKER_DOCUMENT_SNAPSHOT_CACHE_MAX_BYTES") || undefined,
+        deleteSuperseded: getenv("CAF_WORKER_DOCUMENT_SNAPSHOT_DELETE_SUPERSEDED") || undefined
+    },
+    fieldValueOffloadThreshold: getenv("CAF_WORKER_FIELD_VALUE_OFFLOAD_THRESHOLD") || undefined,
+    fieldValueCache: {
+        maxBytes: getenv("CAF_WORKER_FIELD_VALUE_CACHE_MAX_BYTES") || undefined,
+        maxValueBytes: getenv("CAF_WORKER_FIELD_VALUE_CACHE_MAX_VALUE_BYTES") || undefined,
+        spillDirectory: getenv("CAF_WORKER_FIELD_VALUE_CACHE_SPILL_DIRECTORY") || undefined,
+        maxSpillBytes: getenv("CAF_WORKER_FIELD_VALUE_CACHE_MAX_SPILL_BYTES") || undefined,
+        prefetchThreads: getenv("CAF_WORKER_FIELD_VALUE_PREFETCH_THREADS") || undefined
+    },
     inputMessageProcessing: {
         documentTasksAccepted: undefined,
         fieldEnrichmentTasksAccepted: undefined,
@@ -36,6 +66,7 @@
         dynamicScriptCache: {
             maximumSize: getenv("CAF_WORKER_DYNAMIC_SCRIPT_CACHE_SIZE") || undefined,
             expireAfterWrite: getenv("CAF_WORKER_DYNAMIC_SCRIPT_CACHE_DURATION") || undefined
-        }
+        },
+        globalPoolSize: getenv("CAF_WORKER_SCRIPT_GLOBAL_POOL_SIZE") || undefined
     }
 });
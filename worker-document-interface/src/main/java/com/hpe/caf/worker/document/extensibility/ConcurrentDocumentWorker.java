@@ -0,0 +1,31 @@
+/*
+ * Copyright 2016-2019 Micro Focus or one of its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hpe.caf.worker.document.extensibility;
+
+/**
+ * A marker interface which a {@link DocumentWorker} implementation can implement to indicate that its
+ * {@link DocumentWorker#processDocument processDocument()} method is thread-safe.
+ * <p>
+ * When subdocuments are being processed separately, the framework may then process sibling subdocuments concurrently rather than one
+ * at a time. A document is always processed before its subdocuments are, and the customization script events for a task are still
+ * raised one at a time.
+ * <p>
+ * Implementations must only modify the document that they have been passed (including adding or removing its own subdocuments), and
+ * must not access its parent or sibling documents, as these may be being processed on other threads.
+ */
+public interface ConcurrentDocumentWorker extends DocumentWorker
+{
+}
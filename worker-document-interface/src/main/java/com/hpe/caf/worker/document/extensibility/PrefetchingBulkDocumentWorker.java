@@ -0,0 +1,37 @@
+/*
+ * Copyright 2016-2019 Micro Focus or one of its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hpe.caf.worker.document.extensibility;
+
+import java.util.Collection;
+import javax.annotation.Nonnull;
+
+/**
+ * An interface which a {@link BulkDocumentWorker} implementation can implement to declare the fields whose referenced values it reads
+ * when it processes the documents.
+ * <p>
+ * The framework may then retrieve the values of those fields from the data store concurrently while the batch is being built, so
+ * that they are already available locally when the worker opens them. This requires the field value cache to be enabled.
+ */
+public interface PrefetchingBulkDocumentWorker extends BulkDocumentWorker
+{
+    /**
+     * Returns the names of the fields whose referenced values should be retrieved in advance.
+     *
+     * @return the names of the fields to prefetch
+     */
+    @Nonnull
+    Collection<String> getPrefetchFieldNames();
+}
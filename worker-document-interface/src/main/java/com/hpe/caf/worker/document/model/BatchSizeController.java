@@ -36,6 +36,14 @@ public interface BatchSizeController extends DocumentWorkerObject
      */
     long getMaximumBatchTime();
 
+    /**
+     * Gets the maximum estimated size (in bytes) that a batch should be allowed to grow to before it is automatically closed. The
+     * estimate is based on the size of the task messages and on the data added to their documents while they were being prepared.
+     *
+     * @return the maximum estimated number of bytes in a batch, or zero if the batch size is not limited by bytes
+     */
+    long getMaximumBatchBytes();
+
     /**
      * Sets the maximum number of documents that should be included in a batch before it is automatically closed.
      *
@@ -51,4 +59,13 @@ public interface BatchSizeController extends DocumentWorkerObject
      * @param maxBatchTime the maximum number of milliseconds to allow a batch to build up
      */
     void setMaximumBatchTime(long maxBatchTime);
+
+    /**
+     * Sets the maximum estimated size (in bytes) that a batch should be allowed to grow to before it is automatically closed. The batch
+     * is closed early if adding another task of the average size seen so far would take it over this limit, but the first task is
+     * always added regardless of its size.
+     *
+     * @param maxBatchBytes the maximum estimated number of bytes to include in a batch, or zero to not limit the batch by bytes
+     */
+    void setMaximumBatchBytes(long maxBatchBytes);
 }
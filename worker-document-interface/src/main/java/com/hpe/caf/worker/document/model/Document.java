@@ -15,6 +15,7 @@
  */
 package com.hpe.caf.worker.document.model;
 
+import com.hpe.caf.worker.document.exceptions.DocumentWorkerTransientException;
 import javax.annotation.Nonnull;
 
 /**
@@ -100,6 +101,17 @@ public interface Document extends DocumentWorkerObject
      */
     void addFailure(String failureId, String failureMessage);
 
+    /**
+     * Records that the document could not be processed because of a transient failure, so that it should be retried later.
+     * <p>
+     * The task that the document is part of will be rejected and redelivered, and any changes made to its documents will be discarded.
+     * When a batch of documents is being processed only the tasks that contain documents marked in this way are rejected; the rest of
+     * the batch completes as normal. If more than one document in the same task is marked then the first failure recorded is reported.
+     *
+     * @param failure the transient failure which prevented the document from being processed
+     */
+    void markTransientFailure(DocumentWorkerTransientException failure);
+
     /**
      * Returns the parent document of this document, or {@code null} if this document does not have a parent document.
      *
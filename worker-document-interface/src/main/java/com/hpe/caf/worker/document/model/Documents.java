@@ -50,6 +50,22 @@ public interface Documents extends DocumentWorkerObject, Iterable<Document>
      */
     boolean isBatchClosed();
 
+    /**
+     * Signals that the worker has finished processing the specified document.
+     * <p>
+     * Once every document in the batch that came from a particular task has been marked as completed, the response for that task is
+     * built and sent straight away, rather than waiting for the rest of the batch to be processed. This reduces the time taken to
+     * respond to the earlier tasks in large batches. Documents that are not marked as completed are treated as completed when the
+     * worker returns from processing the batch.
+     * <p>
+     * Any changes made to a document after it has been marked as completed may be lost.
+     *
+     * @param document a document from this batch
+     * @throws IllegalArgumentException if the document is not part of this batch
+     * @throws InterruptedException if the thread is interrupted while the task's response is being built
+     */
+    void markCompleted(Document document) throws InterruptedException;
+
     /**
      * Returns a sequential {@code Stream} with this document batch as its source.
      *
@@ -57,4 +73,19 @@ public interface Documents extends DocumentWorkerObject, Iterable<Document>
      */
     @Nonnull
     Stream<Document> stream();
+
+    /**
+     * Returns a parallel {@code Stream} with this document batch as its source.
+     * <p>
+     * Unlike {@link #stream()}, this method first fills the batch, waiting until it is closed, and then returns a stream over the
+     * complete batch. The stream's spliterator is sized and can be split efficiently, so the documents can be processed concurrently.
+     * <p>
+     * The documents are still prepared one at a time and in order before they are added to the batch, and the after-processing events
+     * for each task are raised in order once the worker has finished with its documents. However, documents from the same task may be
+     * processed concurrently, so the worker should only modify the document that it is currently processing.
+     *
+     * @return a parallel {@code Stream} over the complete batch of documents
+     */
+    @Nonnull
+    Stream<Document> parallelStream();
 }
@@ -15,6 +15,9 @@
  */
 package com.hpe.caf.worker.document.model;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.List;
 import javax.annotation.Nonnull;
 
@@ -39,6 +42,17 @@ public interface Field extends DocumentWorkerObject
      */
     void add(byte[] data);
 
+    /**
+     * Stores the data read from the specified stream in the remote data store, and associates it with this field.<p>
+     * To replace existing values by a new one use {@link #set(java.io.InputStream)}. The data is passed to the data store as it is
+     * read rather than being held in memory, so this is recommended if the data is large. The stream is read to the end, but it is
+     * not closed.
+     *
+     * @param data the stream to read the data to be stored from
+     * @throws IOException if the data cannot be read or stored
+     */
+    void add(InputStream data) throws IOException;
+
     /**
      * Associates data stored in the remote data store with this field.<p>
      * To replace existing values by a new one use {@link #setReference(java.lang.String)}. The Worker Framework has the concept of a
@@ -54,6 +68,17 @@ public interface Field extends DocumentWorkerObject
      */
     void clear();
 
+    /**
+     * Opens a stream which can be used to write a new value for this field.<p>
+     * When the stream is closed the data written to it is stored in the remote data store, and a reference to it is added to this
+     * field. The data is not held in memory, so this is recommended if the data is large.
+     *
+     * @return a new OutputStream which can be used for writing the value
+     * @throws IOException if the stream cannot be opened
+     */
+    @Nonnull
+    OutputStream openOutputStream() throws IOException;
+
     /**
      * Returns the document that this field is associated with.
      *
@@ -116,6 +141,15 @@ public interface Field extends DocumentWorkerObject
      */
     void set(byte[] data);
 
+    /**
+     * Sets the value in this field, storing the data read from the specified stream in the remote data store.<p>
+     * Removes existing values by {@link #clear()} and adds new one by {@link #add(java.io.InputStream)}.
+     *
+     * @param data the stream to read the data to be stored from
+     * @throws IOException if the data cannot be read or stored
+     */
+    void set(InputStream data) throws IOException;
+
     /**
      * Sets the reference in this field to the data stored in the remote data store.<p>
      * Removes existing values by {@link #clear()} and adds new one by {@link #addReference(java.lang.String)}. The Worker Framework has
@@ -0,0 +1,92 @@
+/*
+ * Copyright 2016-2019 Micro Focus or one of its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hpe.caf.worker.document.scripting.graaljs;
+
+import com.hpe.caf.worker.document.scripting.ScriptEngineProvider;
+import com.hpe.caf.worker.document.scripting.ScriptFunction;
+import com.oracle.truffle.js.scriptengine.GraalJSScriptEngine;
+import javax.annotation.Nonnull;
+import javax.script.Bindings;
+import javax.script.ScriptContext;
+import javax.script.ScriptEngine;
+import javax.script.SimpleScriptContext;
+import org.graalvm.polyglot.Context;
+import org.graalvm.polyglot.Engine;
+import org.graalvm.polyglot.HostAccess;
+import org.graalvm.polyglot.PolyglotException;
+import org.graalvm.polyglot.Value;
+
+/**
+ * Supplies a GraalJS script engine, which is used in place of Nashorn when this module is on the classpath.
+ * <p>
+ * Each global context that a script is loaded into is a separate polyglot {@link Context}, but they all share a single polyglot
+ * {@link Engine}, so that the code parsed for a script is cached and reused by every context that the script is loaded into.
+ * <p>
+ * The contexts are created with Nashorn compatibility enabled and with full access to host objects, so that scripts can use the
+ * {@code thisScript} object and the event objects which are passed to their event handlers in the same way as they can when they are
+ * run by Nashorn.
+ */
+public final class GraalJSScriptEngineProvider implements ScriptEngineProvider
+{
+    @Nonnull
+    @Override
+    public ScriptEngine createScriptEngine()
+    {
+        final Engine engine = Engine.newBuilder()
+            .build();
+
+        final Context.Builder contextBuilder = Context.newBuilder("js")
+            .allowHostAccess(HostAccess.ALL)
+            .allowHostClassLookup(className -> true)
+            .allowExperimentalOptions(true)
+            .option("js.nashorn-compat", "true");
+
+        return GraalJSScriptEngine.create(engine, contextBuilder);
+    }
+
+    @Override
+    public ScriptFunction getFunction(final ScriptEngine scriptEngine, final Bindings global, final String name)
+    {
+        final Value function = getPolyglotContext(scriptEngine, global).getBindings("js").getMember(name);
+        if (function == null || !function.canExecute()) {
+            return null;
+        }
+
+        return args -> {
+            try {
+                return function.execute(args).as(Object.class);
+            } catch (final PolyglotException ex) {
+                // Rethrow exceptions which were thrown by host objects in the same form as Nashorn does
+                if (!ex.isHostException()) {
+                    throw ex;
+                }
+                final Throwable hostException = ex.asHostException();
+                throw (hostException instanceof RuntimeException)
+                    ? (RuntimeException) hostException
+                    : new RuntimeException(hostException);
+            }
+        };
+    }
+
+    @Nonnull
+    private static Context getPolyglotContext(final ScriptEngine scriptEngine, final Bindings global)
+    {
+        final ScriptContext scriptContext = new SimpleScriptContext();
+        scriptContext.setBindings(global, ScriptContext.ENGINE_SCOPE);
+
+        return ((GraalJSScriptEngine) scriptEngine).getPolyglotContext(scriptContext);
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright 2016-2019 Micro Focus or one of its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hpe.caf.worker.document.scripting.graaljs;
+
+import com.hpe.caf.api.worker.WorkerTaskData;
+import com.hpe.caf.worker.document.DocumentWorkerTask;
+import com.hpe.caf.worker.document.impl.ApplicationImpl;
+import com.hpe.caf.worker.document.model.Document;
+import com.hpe.caf.worker.document.model.Script;
+import com.hpe.caf.worker.document.scripting.JavaScriptManager;
+import com.hpe.caf.worker.document.scripting.ScriptEngineProvider;
+import com.hpe.caf.worker.document.tasks.AbstractTask;
+import com.hpe.caf.worker.document.tasks.FieldEnrichmentTask;
+import com.hpe.caf.worker.document.util.ServiceFunctions;
+import java.util.HashMap;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+public class GraalJSScriptEngineProviderTest
+{
+    private static final String TEST_SCRIPT
+        = "function onBeforeProcessDocument(e) {\n"
+        + "    e.cancel = e.document.getField('SKIP').hasValues();\n"
+        + "}\n"
+        + "function onProcessDocument(e) {\n"
+        + "    e.document.getField('SCRIPT_NAME').add(thisScript.getName());\n"
+        + "}\n";
+
+    @Test
+    public void providerRegisteredTest()
+    {
+        Assert.assertTrue(ServiceFunctions.loadService(ScriptEngineProvider.class) instanceof GraalJSScriptEngineProvider);
+    }
+
+    @Test
+    public void eventHandlersTest() throws Exception
+    {
+        final AbstractTask task = createTask(new JavaScriptManager(null, new GraalJSScriptEngineProvider()));
+        final Document document = task.getDocument();
+
+        final Script script = task.getScripts().add();
+        script.setName("test.js");
+        script.setScriptInline(TEST_SCRIPT);
+        script.load();
+
+        Assert.assertFalse(task.raiseBeforeProcessDocumentEvent(document));
+        task.raiseProcessDocumentEvent(document);
+        Assert.assertEquals("test.js", document.getField("SCRIPT_NAME").getStringValues().get(0));
+
+        document.getField("SKIP").add("true");
+        Assert.assertTrue(task.raiseBeforeProcessDocumentEvent(document));
+
+        task.unloadScripts();
+        Assert.assertFalse(script.isLoaded());
+    }
+
+    static AbstractTask createTask(final JavaScriptManager javaScriptManager)
+    {
+        final ApplicationImpl application = Mockito.mock(ApplicationImpl.class);
+        Mockito.when(application.getJavaScriptManager()).thenReturn(javaScriptManager);
+
+        final DocumentWorkerTask documentWorkerTask = new DocumentWorkerTask();
+        documentWorkerTask.fields = new HashMap<>();
+
+        return FieldEnrichmentTask.create(application, Mockito.mock(WorkerTaskData.class), documentWorkerTask);
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright 2016-2019 Micro Focus or one of its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hpe.caf.worker.document.scripting.graaljs;
+
+import com.hpe.caf.worker.document.config.ScriptCachingConfiguration;
+import com.hpe.caf.worker.document.model.Document;
+import com.hpe.caf.worker.document.model.Script;
+import com.hpe.caf.worker.document.scripting.JavaScriptManager;
+import com.hpe.caf.worker.document.scripting.NashornScriptEngineProvider;
+import com.hpe.caf.worker.document.scripting.ScriptEngineProvider;
+import com.hpe.caf.worker.document.tasks.AbstractTask;
+
+/**
+ * Compares the cost of running a customization script using GraalJS with the cost of running it using Nashorn.
+ * <p>
+ * Each iteration creates a task, loads the script into it, raises the document events for a number of documents and then unloads the
+ * script again, so both loading the script (with the script's global contexts being reused) and calling its event handlers are
+ * measured. This is not run as part of the build; run the {@code main} method with the test classpath to produce the timings.
+ */
+public final class ScriptEngineBenchmark
+{
+    private static final int DOCUMENTS_PER_TASK = 20;
+    private static final int WARMUP_ITERATIONS = 2000;
+    private static final int MEASURED_ITERATIONS = 5000;
+
+    private static final String SCRIPT
+        = "function onBeforeProcessDocument(e) {\n"
+        + "    e.cancel = e.document.getField('SKIP').hasValues();\n"
+        + "}\n"
+        + "function onProcessDocument(e) {\n"
+        + "    var count = 0;\n"
+        + "    for (var i = 0; i < 10; i++) {\n"
+        + "        count += e.document.getField('CONTENT').getValues().size();\n"
+        + "    }\n"
+        + "    e.document.getField('COUNT').set(String(count));\n"
+        + "}\n";
+
+    private ScriptEngineBenchmark()
+    {
+    }
+
+    public static void main(final String[] args) throws Exception
+    {
+        run("Nashorn", new NashornScriptEngineProvider());
+        run("GraalJS", new GraalJSScriptEngineProvider());
+    }
+
+    private static void run(final String name, final ScriptEngineProvider scriptEngineProvider) throws Exception
+    {
+        final ScriptCachingConfiguration scriptCachingConfig = new ScriptCachingConfiguration();
+        scriptCachingConfig.setGlobalPoolSize(8);
+
+        final JavaScriptManager javaScriptManager = new JavaScriptManager(scriptCachingConfig, scriptEngineProvider);
+
+        final long firstLoadStartTime = System.nanoTime();
+        runTask(javaScriptManager);
+        final long firstLoadTime = System.nanoTime() - firstLoadStartTime;
+
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            runTask(javaScriptManager);
+        }
+
+        final long startTime = System.nanoTime();
+        for (int i = 0; i < MEASURED_ITERATIONS; i++) {
+            runTask(javaScriptManager);
+        }
+        final long elapsedTime = System.nanoTime() - startTime;
+
+        System.out.printf("%-8s first task %8.1f ms, then %8.1f us/task%n",
+                          name, firstLoadTime / 1000000.0, elapsedTime / 1000.0 / MEASURED_ITERATIONS);
+    }
+
+    private static void runTask(final JavaScriptManager javaScriptManager) throws Exception
+    {
+        final AbstractTask task = GraalJSScriptEngineProviderTest.createTask(javaScriptManager);
+        final Document document = task.getDocument();
+        document.getField("CONTENT").add("value");
+
+        final Script script = task.getScripts().add();
+        script.setName("benchmark.js");
+        script.setScriptInline(SCRIPT);
+        script.load();
+
+        for (int i = 0; i < DOCUMENTS_PER_TASK; i++) {
+            if (!task.raiseBeforeProcessDocumentEvent(document)) {
+                task.raiseProcessDocumentEvent(document);
+                task.raiseAfterProcessDocumentEvent(document);
+            }
+        }
+
+        task.unloadScripts();
+    }
+}
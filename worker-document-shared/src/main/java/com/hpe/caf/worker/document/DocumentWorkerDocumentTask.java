@@ -24,6 +24,7 @@ import java.util.Map;
 public final class DocumentWorkerDocumentTask
 {
     public DocumentWorkerDocument document;
+    public String documentSnapshot;
     public List<DocumentWorkerChangeLogEntry> changeLog;
     public Map<String, String> customData;
     public List<DocumentWorkerScript> scripts;
@@ -100,6 +100,18 @@ public final class DocumentWorkerConfigurationBuilder
         return this;
     }
 
+    public DocumentWorkerConfigurationBuilder withMaxBatchBytes(final long maxBatchBytes)
+    {
+        this.configuration.setMaxBatchBytes(maxBatchBytes);
+        return this;
+    }
+
+    public DocumentWorkerConfigurationBuilder withMaxBatchPrefetch(final int maxBatchPrefetch)
+    {
+        this.configuration.setMaxBatchPrefetch(maxBatchPrefetch);
+        return this;
+    }
+
     public DocumentWorkerConfigurationBuilder withWorkerName(final String workerName)
     {
         this.configuration.setWorkerName(workerName);
@@ -32,10 +32,13 @@ import com.hpe.caf.worker.document.views.ReadOnlyFailures;
 import com.hpe.caf.worker.document.views.ReadOnlyFieldValue;
 import com.hpe.caf.worker.document.views.ReadOnlyFieldValues;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
 import java.util.Objects;
+import java.util.Set;
 import java.util.stream.Collector;
 import java.util.stream.Collectors;
 import static java.util.stream.Collectors.toList;
@@ -44,28 +47,57 @@ import javax.annotation.Nonnull;
 
 /**
  * Implements the application of a change log on top of a {@link ReadOnlyDocument}.
+ * <p>
+ * The base document is not copied up-front. Its field map, field value lists, failures and subdocuments are shared until a change
+ * is made to them, and only the parts which are changed are copied, so the cost of applying a change log is proportional to the size
+ * of the changes rather than the size of the document.
  */
 public final class MutableDocument
 {
+    private final ReadOnlyDocument baseDocument;
     private String reference;
-    private final Map<String, ArrayList<ReadOnlyFieldValue>> fields;
-    private ArrayList<ReadOnlyFailure> failures;
-    private final ArrayList<MutableDocument> subdocuments;
+
+    /**
+     * The fields of the document. This is the base document's map until a field is changed.
+     */
+    private Map<String, List<ReadOnlyFieldValue>> fields;
+
+    /**
+     * The names of the fields whose value lists have been copied and so can be modified, or null if no fields have been changed.
+     */
+    private Set<String> ownedFieldNames;
+
+    private List<ReadOnlyFailure> failures;
+    private boolean failuresChanged;
+
+    /**
+     * The subdocuments of the document, or null if they have not been needed yet, in which case they are the base document's
+     * subdocuments.
+     */
+    private ArrayList<MutableDocument> subdocuments;
+    private boolean subdocumentListChanged;
 
     public MutableDocument(final ReadOnlyDocument document)
     {
-        Objects.requireNonNull(document);
-
+        this.baseDocument = Objects.requireNonNull(document);
         this.reference = document.getReference();
-        this.fields = document.getFields().entrySet().stream().collect(
-            Collectors.toMap(Entry::getKey,
-                             entry -> new ArrayList<>(entry.getValue())));
-        this.failures = new ArrayList<>(document.getFailures());
-        this.subdocuments = document
-            .getSubdocuments()
-            .stream()
-            .map(MutableDocument::new)
-            .collect(toArrayList());
+        this.fields = document.getFields();
+        this.ownedFieldNames = null;
+        this.failures = document.getFailures();
+        this.failuresChanged = false;
+        this.subdocuments = null;
+        this.subdocumentListChanged = false;
+    }
+
+    /**
+     * Returns the document that this object was constructed from, which is not affected by the changes applied to this object.
+     *
+     * @return the original document
+     */
+    @Nonnull
+    public ReadOnlyDocument getBaseDocument()
+    {
+        return baseDocument;
     }
 
     public String getReference()
@@ -74,21 +106,50 @@ public final class MutableDocument
     }
 
     @Nonnull
-    public Map<String, ArrayList<ReadOnlyFieldValue>> getFields()
+    public Map<String, List<ReadOnlyFieldValue>> getFields()
     {
-        return fields;
+        return Collections.unmodifiableMap(fields);
     }
 
     @Nonnull
-    public ArrayList<ReadOnlyFailure> getFailures()
+    public List<ReadOnlyFailure> getFailures()
     {
-        return failures;
+        return Collections.unmodifiableList(failures);
     }
 
     @Nonnull
-    public ArrayList<MutableDocument> getSubdocuments()
+    public List<MutableDocument> getSubdocuments()
     {
-        return subdocuments;
+        return Collections.unmodifiableList(getMutableSubdocuments());
+    }
+
+    /**
+     * Checks whether any changes have been applied to the document or to any of its subdocuments.
+     *
+     * @return true if the document is different from the base document
+     */
+    public boolean hasChanges()
+    {
+        return !Objects.equals(reference, baseDocument.getReference())
+            || hasFieldChanges()
+            || hasFailureChanges()
+            || hasSubdocumentChanges();
+    }
+
+    public boolean hasFieldChanges()
+    {
+        return ownedFieldNames != null;
+    }
+
+    public boolean hasFailureChanges()
+    {
+        return failuresChanged;
+    }
+
+    public boolean hasSubdocumentChanges()
+    {
+        return subdocuments != null
+            && (subdocumentListChanged || subdocuments.stream().anyMatch(MutableDocument::hasChanges));
     }
 
     public void applyChangeLog(final List<DocumentWorkerChangeLogEntry> changeLog) throws InvalidChangeLogException
@@ -195,11 +256,18 @@ public final class MutableDocument
             final List<DocumentWorkerFieldValue> fieldValuesToAdd = addFieldEntry.getValue();
 
             if (fieldValuesToAdd != null) {
-                final List<ReadOnlyFieldValue> fieldValues = fields.get(fieldName);
+                final Map<String, List<ReadOnlyFieldValue>> mutableFields = getMutableFields();
+                final List<ReadOnlyFieldValue> fieldValues = mutableFields.get(fieldName);
                 final Stream<ReadOnlyFieldValue> extraFieldValues = ReadOnlyFieldValues.createStream(fieldValuesToAdd);
 
                 if (fieldValues == null) {
-                    fields.put(fieldName, extraFieldValues.collect(toArrayList()));
+                    mutableFields.put(fieldName, extraFieldValues.collect(toArrayList()));
+                    ownedFieldNames.add(fieldName);
+                } else if (ownedFieldNames.add(fieldName)) {
+                    // The value list is shared with the base document so copy it before adding to it
+                    final ArrayList<ReadOnlyFieldValue> newFieldValues = new ArrayList<>(fieldValues);
+                    newFieldValues.addAll(extraFieldValues.collect(toList()));
+                    mutableFields.put(fieldName, newFieldValues);
                 } else {
                     fieldValues.addAll(extraFieldValues.collect(toList()));
                 }
@@ -214,12 +282,13 @@ public final class MutableDocument
             final List<DocumentWorkerFieldValue> fieldValuesToSet = setFieldEntry.getValue();
 
             if (fieldValuesToSet == null) {
-                fields.remove(fieldName);
+                getMutableFields().remove(fieldName);
             } else {
                 final Stream<ReadOnlyFieldValue> newFieldValuesStream = ReadOnlyFieldValues.createStream(fieldValuesToSet);
                 final ArrayList<ReadOnlyFieldValue> newFieldValues = newFieldValuesStream.collect(toArrayList());
 
-                fields.put(fieldName, newFieldValues);
+                getMutableFields().put(fieldName, newFieldValues);
+                ownedFieldNames.add(fieldName);
             }
         }
     }
@@ -227,7 +296,9 @@ public final class MutableDocument
     private void removeFields(final List<String> removeFields)
     {
         for (final String fieldName : removeFields) {
-            fields.remove(fieldName);
+            if (fields.containsKey(fieldName)) {
+                getMutableFields().remove(fieldName);
+            }
         }
     }
 
@@ -236,6 +307,10 @@ public final class MutableDocument
         final ReadOnlyFailure failure = ReadOnlyFailure.create(addFailure);
 
         if (failure != null) {
+            if (!failuresChanged) {
+                failures = new ArrayList<>(failures);
+                failuresChanged = true;
+            }
             failures.add(failure);
         }
     }
@@ -245,13 +320,15 @@ public final class MutableDocument
         failures = ReadOnlyFailures
             .createStream(setFailures)
             .collect(toArrayList());
+        failuresChanged = true;
     }
 
     private void addSubdocument(final DocumentWorkerDocument addSubdocument)
     {
         final ReadOnlyDocument subdocument = ReadOnlyDocument.create(addSubdocument);
 
-        subdocuments.add(new MutableDocument(subdocument));
+        getMutableSubdocuments().add(new MutableDocument(subdocument));
+        subdocumentListChanged = true;
     }
 
     private void insertSubdocument(
@@ -261,7 +338,8 @@ public final class MutableDocument
     {
         final ReadOnlyDocument newSubdocument = ReadOnlyDocument.create(subdocument);
 
-        subdocuments.add(index, new MutableDocument(newSubdocument));
+        getMutableSubdocuments().add(index, new MutableDocument(newSubdocument));
+        subdocumentListChanged = true;
     }
 
     private void updateSubdocument(
@@ -270,7 +348,7 @@ public final class MutableDocument
         final List<DocumentWorkerChange> changes
     ) throws InvalidChangeLogException
     {
-        final MutableDocument subdocument = subdocuments.get(index);
+        final MutableDocument subdocument = getMutableSubdocuments().get(index);
         checkSubdocumentReference(reference, subdocument.reference);
 
         subdocument.applyChanges(changes);
@@ -281,10 +359,42 @@ public final class MutableDocument
         final String reference
     ) throws UnexpectedSubdocumentReferenceException
     {
-        final MutableDocument subdocument = subdocuments.get(index);
+        final List<MutableDocument> mutableSubdocuments = getMutableSubdocuments();
+        final MutableDocument subdocument = mutableSubdocuments.get(index);
         checkSubdocumentReference(reference, subdocument.reference);
 
-        subdocuments.remove(index);
+        mutableSubdocuments.remove(index);
+        subdocumentListChanged = true;
+    }
+
+    /**
+     * Returns the field map, first copying it if it is still shared with the base document. The value lists are not copied.
+     */
+    @Nonnull
+    private Map<String, List<ReadOnlyFieldValue>> getMutableFields()
+    {
+        if (ownedFieldNames == null) {
+            fields = new HashMap<>(fields);
+            ownedFieldNames = new HashSet<>();
+        }
+        return fields;
+    }
+
+    /**
+     * Returns the subdocument list, first creating it if necessary. The subdocuments themselves share the base document's
+     * subdocuments until they are changed.
+     */
+    @Nonnull
+    private ArrayList<MutableDocument> getMutableSubdocuments()
+    {
+        if (subdocuments == null) {
+            subdocuments = baseDocument
+                .getSubdocuments()
+                .stream()
+                .map(MutableDocument::new)
+                .collect(toArrayList());
+        }
+        return subdocuments;
     }
 
     private static <T> Collector<T, ?, ArrayList<T>> toArrayList()
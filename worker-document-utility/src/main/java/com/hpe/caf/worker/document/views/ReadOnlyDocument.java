@@ -83,6 +83,9 @@ public final class ReadOnlyDocument
     /**
      * Constructs a ReadOnlyDocument object which provides read access to the specified document.
      * <p>
+     * Any parts of the document which have not been changed are shared with the document's base document, which is returned unchanged
+     * if nothing in its hierarchy has been changed.
+     * <p>
      * <b>Note: </b>The specified document must not be changed after this object is constructed. If this constraint is violated then there
      * will be undefined results. What is presented may contain elements of both the original and current document.
      *
@@ -94,11 +97,23 @@ public final class ReadOnlyDocument
     {
         Objects.requireNonNull(document);
 
+        final ReadOnlyDocument baseDocument = document.getBaseDocument();
+
+        if (!document.hasChanges()) {
+            return baseDocument;
+        }
+
         return new ReadOnlyDocument(
             document.getReference(),
-            ReadOnlyFields.createFromMutable(document.getFields()),
-            ReadOnlyFailures.create(document.getFailures()),
-            ReadOnlyDocuments.create(document.getSubdocuments()));
+            document.hasFieldChanges()
+                ? ReadOnlyFields.createFromMutable(document.getFields())
+                : baseDocument.getFields(),
+            document.hasFailureChanges()
+                ? document.getFailures()
+                : baseDocument.getFailures(),
+            document.hasSubdocumentChanges()
+                ? ReadOnlyDocuments.createFromMutable(document.getSubdocuments())
+                : baseDocument.getSubdocuments());
     }
 
     /**
@@ -42,6 +42,12 @@ public final class ReadOnlyDocuments
 
     @Nonnull
     public static List<ReadOnlyDocument> create(final ArrayList<MutableDocument> documents)
+    {
+        return createFromMutable(documents);
+    }
+
+    @Nonnull
+    public static List<ReadOnlyDocument> createFromMutable(final List<MutableDocument> documents)
     {
         Objects.requireNonNull(documents);
 
@@ -16,7 +16,6 @@
 package com.hpe.caf.worker.document.views;
 
 import com.hpe.caf.worker.document.DocumentWorkerFieldValue;
-import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
@@ -47,7 +46,7 @@ public final class ReadOnlyFields
 
     @Nonnull
     public static Map<String, List<ReadOnlyFieldValue>> createFromMutable(
-        final Map<String, ArrayList<ReadOnlyFieldValue>> fields
+        final Map<String, ? extends List<ReadOnlyFieldValue>> fields
     )
     {
         Objects.requireNonNull(fields);
@@ -56,7 +55,7 @@ public final class ReadOnlyFields
             .entrySet()
             .stream()
             .collect(Collectors.toMap(Entry::getKey,
-                                      entry -> ReadOnlyFieldValues.create(entry.getValue()))));
+                                      entry -> Collections.unmodifiableList(entry.getValue()))));
     }
 
     @Nonnull
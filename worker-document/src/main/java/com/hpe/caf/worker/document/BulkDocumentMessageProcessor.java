@@ -15,6 +15,7 @@
  */
 package com.hpe.caf.worker.document;
 
+import com.google.common.util.concurrent.Uninterruptibles;
 import com.hpe.caf.api.worker.BulkWorkerRuntime;
 import com.hpe.caf.api.worker.InvalidTaskException;
 import com.hpe.caf.api.worker.TaskRejectedException;
@@ -22,19 +23,38 @@ import com.hpe.caf.api.worker.WorkerResponse;
 import com.hpe.caf.api.worker.WorkerTask;
 import com.hpe.caf.worker.document.exceptions.DocumentWorkerTransientException;
 import com.hpe.caf.worker.document.extensibility.BulkDocumentWorker;
+import com.hpe.caf.worker.document.extensibility.PrefetchingBulkDocumentWorker;
 import com.hpe.caf.worker.document.impl.ApplicationImpl;
+import com.hpe.caf.worker.document.impl.BatchSizeControllerImpl;
 import com.hpe.caf.worker.document.impl.DocumentWorkerObjectImpl;
-import com.hpe.caf.worker.document.model.BatchSizeController;
+import com.hpe.caf.worker.document.impl.FieldValueCache;
 import com.hpe.caf.worker.document.model.Document;
 import com.hpe.caf.worker.document.model.Documents;
+import com.hpe.caf.worker.document.model.FieldValue;
 import com.hpe.caf.worker.document.model.InputMessageProcessor;
+import com.hpe.caf.worker.document.model.Task;
 import com.hpe.caf.worker.document.tasks.AbstractTask;
 import com.hpe.caf.worker.document.util.DocumentFunctions;
+import com.hpe.caf.worker.document.util.DocumentTraversal;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 import java.util.NoSuchElementException;
 import java.util.Objects;
+import java.util.Queue;
+import java.util.Spliterator;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.stream.Stream;
 import java.util.stream.StreamSupport;
 import javax.annotation.Nonnull;
@@ -44,86 +64,258 @@ public final class BulkDocumentMessageProcessor
     private final ApplicationImpl application;
     private final BulkDocumentWorker bulkDocumentWorker;
     private final BulkWorkerRuntime bulkWorkerRuntime;
+    private final ExecutorService batchPreparationExecutor;
+    private final ExecutorService fieldValuePrefetchExecutor;
+    private final Queue<PreparedTask> unprocessedTasks;
+    private final List<String> prefetchFieldNames;
+    private final BatchSizeControllerImpl batchSizeController;
 
     private final int maxBatchSize;
     private final long maxBatchTime;
+    private final long maxBatchBytes;
+    private final int maxBatchPrefetch;
     private final boolean processSubdocumentsSeparately;
 
     private final List<BulkDocumentTask> bulkDocumentTasks;
+    private final ConcurrentMap<Task, BulkDocumentTask> bulkDocumentTaskLookup;
     private final List<Document> documentBatch;
+    private final Queue<PreparedTask> unusedPrefetchedTasks;
+    private long documentBatchBytes;
     private boolean isBatchClosed;
     private long batchEndTime;
+    private long batchClosedTime;
+    private long processingStartTime;
+    private long taskWaitTime;
+    private long initialTaskWaitTime;
+    private TaskPrefetcher taskPrefetcher;
 
     public BulkDocumentMessageProcessor(
         final ApplicationImpl application,
         final BulkDocumentWorker bulkDocumentWorker,
         final BulkWorkerRuntime bulkWorkerRuntime
     )
+    {
+        this(application, bulkDocumentWorker, bulkWorkerRuntime, null, null);
+    }
+
+    /**
+     * Constructs a message processor which can retrieve tasks, and the field values that the worker reads, in advance of them being
+     * needed.
+     *
+     * @param application the global data for the worker
+     * @param bulkDocumentWorker the actual implementation of the worker
+     * @param bulkWorkerRuntime the source of the tasks to be processed
+     * @param batchPreparationExecutor used to prepare tasks in the background, or null if tasks should not be prefetched
+     * @param fieldValuePrefetchExecutor used to retrieve field values in the background, or null if field values should not be
+     * prefetched
+     */
+    BulkDocumentMessageProcessor(
+        final ApplicationImpl application,
+        final BulkDocumentWorker bulkDocumentWorker,
+        final BulkWorkerRuntime bulkWorkerRuntime,
+        final ExecutorService batchPreparationExecutor,
+        final ExecutorService fieldValuePrefetchExecutor
+    )
+    {
+        this(application, bulkDocumentWorker, bulkWorkerRuntime, batchPreparationExecutor, fieldValuePrefetchExecutor, null);
+    }
+
+    /**
+     * Constructs a message processor whose batch is made up of tasks which have already been retrieved and prepared, rather than
+     * tasks retrieved from the runtime, if {@code unprocessedTasks} is specified.
+     */
+    private BulkDocumentMessageProcessor(
+        final ApplicationImpl application,
+        final BulkDocumentWorker bulkDocumentWorker,
+        final BulkWorkerRuntime bulkWorkerRuntime,
+        final ExecutorService batchPreparationExecutor,
+        final ExecutorService fieldValuePrefetchExecutor,
+        final Queue<PreparedTask> unprocessedTasks
+    )
     {
         this.application = application;
         this.bulkDocumentWorker = bulkDocumentWorker;
         this.bulkWorkerRuntime = bulkWorkerRuntime;
+        this.batchPreparationExecutor = batchPreparationExecutor;
+        this.fieldValuePrefetchExecutor = fieldValuePrefetchExecutor;
+        this.unprocessedTasks = unprocessedTasks;
+        this.prefetchFieldNames = getPrefetchFieldNames(application, bulkDocumentWorker, fieldValuePrefetchExecutor);
 
-        final BatchSizeController batchSizeController = application.getBatchSizeController();
+        final BatchSizeControllerImpl batchSizeController = application.getBatchSizeController();
+        this.batchSizeController = batchSizeController;
         this.maxBatchSize = batchSizeController.getMaximumBatchSize();
         this.maxBatchTime = batchSizeController.getMaximumBatchTime();
+        this.maxBatchBytes = batchSizeController.getMaximumBatchBytes();
+        this.maxBatchPrefetch = (batchPreparationExecutor == null)
+            ? 0
+            : application.getConfiguration().getMaxBatchPrefetch();
 
         final InputMessageProcessor inputMessageProcessor = application.getInputMessageProcessor();
         this.processSubdocumentsSeparately = inputMessageProcessor.getProcessSubdocumentsSeparately();
 
         this.bulkDocumentTasks = new ArrayList<>();
+        this.bulkDocumentTaskLookup = new ConcurrentHashMap<>();
         this.documentBatch = new ArrayList<>();
+        this.unusedPrefetchedTasks = new ArrayDeque<>();
+        this.documentBatchBytes = 0;
         this.isBatchClosed = false;
         this.batchEndTime = 0;
+        this.batchClosedTime = 0;
+        this.processingStartTime = 0;
+        this.taskWaitTime = 0;
+        this.initialTaskWaitTime = 0;
+        this.taskPrefetcher = null;
     }
 
     public void processTasks() throws InterruptedException
+    {
+        final int initialTaskCount = (unprocessedTasks == null) ? 0 : unprocessedTasks.size();
+        Queue<PreparedTask> unusedTasks = null;
+        boolean isBatchProcessed = false;
+        try {
+            processBatch();
+            isBatchProcessed = true;
+        } finally {
+            // Every task retrieved from the runtime must have a response before this method returns, so any tasks which were
+            // prepared but not added to the batch are rejected if the batch could not be processed (or if the worker did not take
+            // any of them, as they would never be added to a batch)
+            unusedTasks = stopPrefetching();
+            if (!isBatchProcessed || (unprocessedTasks != null && unusedTasks.size() == initialTaskCount)) {
+                rejectUnusedTasks(unusedTasks);
+            }
+        }
+
+        // Otherwise they are processed as a batch of their own, without retrieving any more tasks for it
+        if (!unusedTasks.isEmpty()) {
+            final BulkDocumentMessageProcessor unusedTaskProcessor = new BulkDocumentMessageProcessor(
+                application, bulkDocumentWorker, bulkWorkerRuntime, null, fieldValuePrefetchExecutor, unusedTasks);
+
+            unusedTaskProcessor.processTasks();
+        }
+    }
+
+    private static void rejectUnusedTasks(final Queue<PreparedTask> unusedTasks)
+    {
+        for (final PreparedTask unusedTask : unusedTasks) {
+            final AbstractTask documentWorkerTask = unusedTask.bulkDocumentTask.getDocumentWorkerTask();
+            final Exception cause = (unusedTask.transientException != null)
+                ? unusedTask.transientException
+                : unusedTask.runtimeException;
+            try {
+                unusedTask.bulkDocumentTask.getWorkerTask().setResponse(
+                    new TaskRejectedException("Failed to process task in batch", cause));
+            } finally {
+                documentWorkerTask.unloadScripts();
+            }
+        }
+        unusedTasks.clear();
+    }
+
+    private void processBatch() throws InterruptedException
     {
         // Create the object which encapsulates the batch of documents
         final DocumentsImpl documents = new DocumentsImpl(application);
 
         // Attempt to process the documents
+        processingStartTime = System.currentTimeMillis();
         try {
             bulkDocumentWorker.processDocuments(documents);
         } catch (final DocumentWorkerTransientException dwte) {
 
-            // Reject all the tasks in the batch
+            // Reject all the tasks in the batch which have not already been responded to
             final TaskRejectedException tre = new TaskRejectedException("Failed to process document", dwte);
             for (final BulkDocumentTask bulkDocumentTask : bulkDocumentTasks) {
-                bulkDocumentTask.getWorkerTask().setResponse(tre);
+                if (bulkDocumentTask.claimResponse()) {
+                    try {
+                        bulkDocumentTask.getWorkerTask().setResponse(tre);
+                    } finally {
+                        // The scripts are not called again once the task has been rejected
+                        bulkDocumentTask.getDocumentWorkerTask().unloadScripts();
+                    }
+                }
             }
 
             // Exit the method - all documents have been rejected
             return;
         }
 
+        // Let the batch size controller know how the batch went so that it can adjust the limits for future batches
+        recordBatch();
+
         // Cycle around the tasks and set the responses on them
         for (final BulkDocumentTask bulkDocumentTask : bulkDocumentTasks) {
+            completeTask(bulkDocumentTask);
+        }
+    }
 
-            // Get the task objects
-            final AbstractTask documentWorkerTask = bulkDocumentTask.getDocumentWorkerTask();
-            final WorkerTask workerTask = bulkDocumentTask.getWorkerTask();
-
-            try {
-                // Raise the onAfterProcessDocument and onAfterProcessTask events
-                for (final Document document : bulkDocumentTask.getDocuments()) {
-                    documentWorkerTask.raiseAfterProcessDocumentEvent(document);
-                }
+    /**
+     * Raises the after-processing events for the specified task and sets the response on it, unless the response has already been set.
+     *
+     * @param bulkDocumentTask the task whose documents have all been processed
+     * @throws InterruptedException if the thread is interrupted
+     */
+    private static void completeTask(final BulkDocumentTask bulkDocumentTask) throws InterruptedException
+    {
+        // Check that the response has not already been set
+        if (!bulkDocumentTask.claimResponse()) {
+            return;
+        }
 
-                documentWorkerTask.raiseAfterProcessTaskEvent();
+        // Get the task objects
+        final AbstractTask documentWorkerTask = bulkDocumentTask.getDocumentWorkerTask();
+        final WorkerTask workerTask = bulkDocumentTask.getWorkerTask();
 
-                // Create the WorkerResponse object
-                final WorkerResponse workerResponse = documentWorkerTask.createWorkerResponse();
+        try {
+            // Reject the task if any of its documents were marked as having failed transiently
+            if (rejectIfTransientFailure(bulkDocumentTask)) {
+                return;
+            }
 
-                // Set the response on the WorkerTask object
-                workerTask.setResponse(workerResponse);
+            // Raise the onAfterProcessDocument and onAfterProcessTask events
+            for (final Document document : bulkDocumentTask.getDocuments()) {
+                documentWorkerTask.raiseAfterProcessDocumentEvent(document);
+            }
 
-            } catch (final DocumentWorkerTransientException ex) {
+            documentWorkerTask.raiseAfterProcessTaskEvent();
 
-                // Reject the task as a transient exception was thrown from one of its event handlers
-                workerTask.setResponse(new TaskRejectedException("Failed to process task after scripts", ex));
+            // Check again in case any of the event handlers marked a document as having failed transiently
+            if (rejectIfTransientFailure(bulkDocumentTask)) {
+                return;
             }
+
+            // Create the WorkerResponse object
+            final WorkerResponse workerResponse = documentWorkerTask.createWorkerResponse();
+
+            // Set the response on the WorkerTask object
+            workerTask.setResponse(workerResponse);
+
+        } catch (final DocumentWorkerTransientException ex) {
+
+            // Reject the task as a transient exception was thrown from one of its event handlers
+            workerTask.setResponse(new TaskRejectedException("Failed to process task after scripts", ex));
+        } finally {
+            // The scripts are not called again once the task has been completed
+            documentWorkerTask.unloadScripts();
+        }
+    }
+
+    /**
+     * Sets a {@link TaskRejectedException} response on the specified task if a transient failure has been recorded against any of its
+     * documents.
+     *
+     * @param bulkDocumentTask the task to check
+     * @return true if the task has been rejected
+     */
+    private static boolean rejectIfTransientFailure(final BulkDocumentTask bulkDocumentTask)
+    {
+        final DocumentWorkerTransientException transientFailure = bulkDocumentTask.getDocumentWorkerTask().getTransientFailure();
+
+        if (transientFailure == null) {
+            return false;
         }
+
+        bulkDocumentTask.getWorkerTask().setResponse(new TaskRejectedException("Failed to process document", transientFailure));
+        return true;
     }
 
     private final class DocumentsImpl extends DocumentWorkerObjectImpl implements Documents
@@ -136,7 +328,7 @@ public final class BulkDocumentMessageProcessor
         @Override
         public void closeBatch()
         {
-            isBatchClosed = true;
+            closeBatchImpl();
         }
 
         @Override
@@ -145,6 +337,22 @@ public final class BulkDocumentMessageProcessor
             return documentBatch.size();
         }
 
+        @Override
+        public void markCompleted(final Document document) throws InterruptedException
+        {
+            Objects.requireNonNull(document);
+
+            final BulkDocumentTask bulkDocumentTask = bulkDocumentTaskLookup.get(document.getTask());
+            if (bulkDocumentTask == null) {
+                throw new IllegalArgumentException("The document is not part of the batch");
+            }
+
+            // Send the task's response as soon as all of its documents have been completed
+            if (bulkDocumentTask.markDocumentCompleted(document)) {
+                completeTask(bulkDocumentTask);
+            }
+        }
+
         @Override
         public boolean isBatchClosed()
         {
@@ -158,12 +366,42 @@ public final class BulkDocumentMessageProcessor
             return new DocumentsIterator();
         }
 
+        @Nonnull
+        @Override
+        public Spliterator<Document> spliterator()
+        {
+            // Once the batch is closed its size is known, so a sized spliterator which can be split efficiently can be returned
+            return isBatchClosed
+                ? Collections.unmodifiableList(documentBatch).spliterator()
+                : Documents.super.spliterator();
+        }
+
         @Nonnull
         @Override
         public Stream<Document> stream()
         {
             return StreamSupport.stream(spliterator(), false);
         }
+
+        @Nonnull
+        @Override
+        public Stream<Document> parallelStream()
+        {
+            fillBatch();
+
+            return StreamSupport.stream(spliterator(), true);
+        }
+
+        /**
+         * Adds documents to the batch until it is closed.
+         */
+        private void fillBatch()
+        {
+            final DocumentsIterator documentsIterator = new DocumentsIterator();
+            while (documentsIterator.hasNext()) {
+                documentsIterator.next();
+            }
+        }
     }
 
     private final class DocumentsIterator implements Iterator<Document>
@@ -198,9 +436,17 @@ public final class BulkDocumentMessageProcessor
 
                 // Start the batch timer now that the first document has been retrieved
                 batchEndTime = System.currentTimeMillis() + maxBatchTime;
+                initialTaskWaitTime = taskWaitTime;
+
+                if (taskPrefetcher != null) {
+                    taskPrefetcher.setCutoffTime(batchEndTime);
+                }
             } else if (currentBatchSize >= maxBatchSize) {
                 // The maximum batch size has been reached so don't attempt to retrieve any more documents
                 moreDocumentsAdded = false;
+            } else if (!hasByteBudgetFor(1)) {
+                // Another task of the average size would take the batch over its maximum size in bytes
+                moreDocumentsAdded = false;
             } else {
                 // Add the next document within the allowed timeframe
                 moreDocumentsAdded = tryAddMoreDocumentsToBatch(batchEndTime);
@@ -208,7 +454,7 @@ public final class BulkDocumentMessageProcessor
 
             // If a document wasn't returned then close the batch
             if (!moreDocumentsAdded) {
-                isBatchClosed = true;
+                closeBatchImpl();
                 return false;
             }
 
@@ -237,6 +483,19 @@ public final class BulkDocumentMessageProcessor
          * @return true if documents were successfully added to the batch; false if they were not
          */
         private boolean tryAddMoreDocumentsToBatch(final long cutoffTime)
+        {
+            // Keep track of how long is spent waiting for tasks so that it is not mistaken for time spent processing the batch
+            final long waitStartTime = System.currentTimeMillis();
+            try {
+                return (maxBatchPrefetch > 0 || unprocessedTasks != null)
+                    ? tryAddPreparedDocumentsToBatch(cutoffTime)
+                    : tryAddNextDocumentsToBatch(cutoffTime);
+            } finally {
+                taskWaitTime += System.currentTimeMillis() - waitStartTime;
+            }
+        }
+
+        private boolean tryAddNextDocumentsToBatch(final long cutoffTime)
         {
             for (;;) {
                 // Get the next task to add to the batch
@@ -248,29 +507,15 @@ public final class BulkDocumentMessageProcessor
                 }
 
                 try {
-                    // Load the task's customization scripts and raise its onProcessTask event
-                    final AbstractTask task = bulkDocumentTask.getDocumentWorkerTask();
-                    task.loadScripts();
-                    task.raiseProcessTaskEvent();
-
-                    // Get the documents from the task that should be added to the batch
-                    final List<Document> documentsToAdd = getDocumentsToAddToBatch(task);
-
-                    // Add the task to the collection
-                    bulkDocumentTask.setDocuments(documentsToAdd);
-                    bulkDocumentTasks.add(bulkDocumentTask);
-
-                    // If there are documents to add to the batch then add them and return, otherwise try the next task
-                    if (!documentsToAdd.isEmpty()) {
-                        documentBatch.addAll(documentsToAdd);
-                        return true;
-                    }
+                    // Load the task's customization scripts, raise its onProcessTask event and prepare its documents
+                    prepareTask(bulkDocumentTask);
 
                 } catch (final DocumentWorkerTransientException ex) {
 
                     // Reject the task as a transient exception was thrown from one of its event handlers
                     bulkDocumentTask.getWorkerTask().setResponse(
                         new TaskRejectedException("Failed to process task before scripts", ex));
+                    bulkDocumentTask.getDocumentWorkerTask().unloadScripts();
 
                     // Since a transient exception has occurred I'm going to close the batch rather than trying the next task
                     return false;
@@ -284,83 +529,311 @@ public final class BulkDocumentMessageProcessor
                     Thread.currentThread().interrupt();
                     return false;
                 }
+
+                // If there are documents to add to the batch then add them and return, otherwise try the next task
+                if (addTaskToBatch(bulkDocumentTask)) {
+                    return true;
+                }
             }
         }
 
-        /**
-         * Retrieves the next document task to be processed, or null if no task could be retrieved before the specified cut-off time.
-         * <p>
-         * If the thread is interrupted then it will return null immediately. Any invalid tasks encountered are skipped (after setting an
-         * appropriate response on them).
-         *
-         * @param cutoffTime the cut-off time, specified in milliseconds since the Unix epoch
-         * @return the next document to be processed
-         */
-        private BulkDocumentTask getNextBulkDocumentTask(final long cutoffTime)
+        private boolean tryAddPreparedDocumentsToBatch(final long cutoffTime)
         {
-            // Get the next valid task (loop around if there are invalid messages)
-            WorkerTask workerTask;
-            AbstractTask documentWorkerTask;
-            do {
-                // Get the next worker task
-                workerTask = getNextWorkerTask(cutoffTime);
+            for (;;) {
+                // Take the next task which has already been prepared, or wait for the next task to be prepared in the background
+                final PreparedTask preparedTask;
+                try {
+                    preparedTask = takePreparedTask(cutoffTime);
+                } catch (final InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+
+                // If there are no more tasks then return that no document could be added to the batch
+                final BulkDocumentTask bulkDocumentTask = preparedTask.bulkDocumentTask;
+                if (bulkDocumentTask == null) {
+                    return false;
+                }
 
-                if (workerTask == null) {
-                    return null;
+                // Propagate any unexpected exception in the same way as it would have been if it had been thrown on this thread
+                if (preparedTask.runtimeException != null) {
+                    throw preparedTask.runtimeException;
                 }
 
-                // Confirm that the worker task is valid.
-                // If it is not valid then set the response on it immediately and move on to the next one without counting it.
-                documentWorkerTask = getValidDocumentWorkerTask(workerTask);
+                if (preparedTask.transientException != null) {
+                    // Reject the task as a transient exception was thrown from one of its event handlers and close the batch
+                    bulkDocumentTask.getWorkerTask().setResponse(
+                        new TaskRejectedException("Failed to process task before scripts", preparedTask.transientException));
+                    bulkDocumentTask.getDocumentWorkerTask().unloadScripts();
 
-            } while (documentWorkerTask == null);
+                    return false;
+                }
 
-            // Create and return the new BulkDocumentTask object
-            return new BulkDocumentTask(workerTask, documentWorkerTask);
+                // If there are documents to add to the batch then add them and return, otherwise try the next task
+                final boolean documentsAdded = addTaskToBatch(bulkDocumentTask);
+                if (taskPrefetcher != null) {
+                    taskPrefetcher.requestMoreTasks();
+                }
+
+                if (documentsAdded) {
+                    return true;
+                }
+            }
         }
 
-        /**
-         * Retrieves the next task to be processed. If the next task cannot be retrieved before the specified cut-off time then null is
-         * returned. If the thread is interrupted then it will return null immediately.
-         *
-         * @param cutoffTime the cut-off time, specified in milliseconds since the Unix epoch
-         * @return the next task to be processed, or null if no task could be retrieved before the cut-off time
-         */
-        private WorkerTask getNextWorkerTask(final long cutoffTime)
+        private PreparedTask takePreparedTask(final long cutoffTime) throws InterruptedException
         {
-            final long maxWaitTime = cutoffTime - System.currentTimeMillis();
+            if (unprocessedTasks != null) {
+                final PreparedTask preparedTask = unprocessedTasks.poll();
+                return (preparedTask != null) ? preparedTask : PreparedTask.END;
+            }
 
-            try {
-                return bulkWorkerRuntime.getNextWorkerTask(maxWaitTime);
-            } catch (final InterruptedException ex) {
-                Thread.currentThread().interrupt();
-                return null;
+            // Start retrieving tasks in the background if that has not already been started
+            if (taskPrefetcher == null) {
+                taskPrefetcher = new TaskPrefetcher(cutoffTime);
+                taskPrefetcher.start();
             }
+
+            return taskPrefetcher.take();
         }
 
         /**
-         * If the specified worker task is the correct type and version then the DocumentWorkerTask is de-serialised and returned. If
-         * there is an issue with it then the appropriate response is set on the WorkerTask object and null is returned.
+         * Adds the specified prepared task to the collection of tasks and its documents to the batch.
          *
-         * @param workerTask the Worker Framework task to examine and extract the DocumentWorkerTask from
-         * @return the decoded DocumentWorkerTask that was extracted from the WorkerTaskData object, or null if there was an error
+         * @param bulkDocumentTask the task which has been prepared
+         * @return true if any documents were added to the batch
          */
-        private AbstractTask getValidDocumentWorkerTask(final WorkerTask workerTask)
+        private boolean addTaskToBatch(final BulkDocumentTask bulkDocumentTask)
         {
-            Objects.requireNonNull(workerTask);
+            // Add the task to the collection
+            bulkDocumentTasks.add(bulkDocumentTask);
+            bulkDocumentTaskLookup.put(bulkDocumentTask.getDocumentWorkerTask(), bulkDocumentTask);
+            documentBatchBytes += bulkDocumentTask.getEstimatedSize();
 
-            try {
-                return application.getInputMessageProcessor().createTask(workerTask);
-            } catch (final InvalidTaskException ex) {
-                workerTask.setResponse(ex);
-                return null;
-            } catch (final TaskRejectedException ex) {
-                workerTask.setResponse(ex);
+            // Add the documents to the batch
+            final List<Document> documentsToAdd = bulkDocumentTask.getDocuments();
+            documentBatch.addAll(documentsToAdd);
+
+            return !documentsToAdd.isEmpty();
+        }
+    }
+
+    /**
+     * Retrieves the next document task to be processed, or null if no task could be retrieved before the specified cut-off time.
+     * <p>
+     * If the thread is interrupted then it will return null immediately. Any invalid tasks encountered are skipped (after setting an
+     * appropriate response on them).
+     *
+     * @param cutoffTime the cut-off time, specified in milliseconds since the Unix epoch
+     * @return the next document to be processed
+     */
+    private BulkDocumentTask getNextBulkDocumentTask(final long cutoffTime)
+    {
+        // Get the next valid task (loop around if there are invalid messages)
+        WorkerTask workerTask;
+        AbstractTask documentWorkerTask;
+        do {
+            // Get the next worker task
+            workerTask = getNextWorkerTask(cutoffTime);
+
+            if (workerTask == null) {
                 return null;
             }
+
+            // Confirm that the worker task is valid.
+            // If it is not valid then set the response on it immediately and move on to the next one without counting it.
+            documentWorkerTask = getValidDocumentWorkerTask(workerTask);
+
+        } while (documentWorkerTask == null);
+
+        // Create and return the new BulkDocumentTask object
+        return new BulkDocumentTask(workerTask, documentWorkerTask);
+    }
+
+    /**
+     * Retrieves the next task to be processed. If the next task cannot be retrieved before the specified cut-off time then null is
+     * returned. If the thread is interrupted then it will return null immediately.
+     *
+     * @param cutoffTime the cut-off time, specified in milliseconds since the Unix epoch
+     * @return the next task to be processed, or null if no task could be retrieved before the cut-off time
+     */
+    private WorkerTask getNextWorkerTask(final long cutoffTime)
+    {
+        final long maxWaitTime = cutoffTime - System.currentTimeMillis();
+
+        try {
+            return bulkWorkerRuntime.getNextWorkerTask(maxWaitTime);
+        } catch (final InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return null;
         }
     }
 
+    /**
+     * If the specified worker task is the correct type and version then the DocumentWorkerTask is de-serialised and returned. If
+     * there is an issue with it then the appropriate response is set on the WorkerTask object and null is returned.
+     *
+     * @param workerTask the Worker Framework task to examine and extract the DocumentWorkerTask from
+     * @return the decoded DocumentWorkerTask that was extracted from the WorkerTaskData object, or null if there was an error
+     */
+    private AbstractTask getValidDocumentWorkerTask(final WorkerTask workerTask)
+    {
+        Objects.requireNonNull(workerTask);
+
+        try {
+            return application.getInputMessageProcessor().createTask(workerTask);
+        } catch (final InvalidTaskException ex) {
+            workerTask.setResponse(ex);
+            return null;
+        } catch (final TaskRejectedException ex) {
+            workerTask.setResponse(ex);
+            return null;
+        }
+    }
+
+    /**
+     * Loads the customization scripts for the specified task, raises its onProcessTask event, and then prepares the documents from
+     * it that should be added to the batch.
+     *
+     * @param bulkDocumentTask the task to be prepared
+     * @throws DocumentWorkerTransientException if a transient issue has occurs when processing any of the event handlers
+     * @throws InterruptedException if the thread is interrupted
+     */
+    private void prepareTask(final BulkDocumentTask bulkDocumentTask)
+        throws DocumentWorkerTransientException, InterruptedException
+    {
+        // Load the task's customization scripts and raise its onProcessTask event
+        final AbstractTask task = bulkDocumentTask.getDocumentWorkerTask();
+        task.loadScripts();
+        task.raiseProcessTaskEvent();
+
+        // Get the documents from the task that should be added to the batch
+        final List<Document> documentsToAdd = getDocumentsToAddToBatch(task);
+        bulkDocumentTask.setDocuments(documentsToAdd);
+
+        // Start retrieving the field values that the worker is going to read
+        prefetchFieldValues(documentsToAdd);
+
+        // Estimate how much the task will add to the batch
+        if (maxBatchBytes > 0) {
+            final byte[] taskData = bulkDocumentTask.getWorkerTask().getData();
+            final long taskDataSize = (taskData == null) ? 0 : taskData.length;
+            bulkDocumentTask.setEstimatedSize(taskDataSize + DocumentFunctions.estimateChangesSize(task.getDocument()));
+        }
+    }
+
+    /**
+     * Starts retrieving the referenced values of the fields that the worker has declared that it reads, so that they are available
+     * locally by the time that the worker processes the documents.
+     *
+     * @param documents the documents that are being added to the batch
+     */
+    private void prefetchFieldValues(final List<Document> documents)
+    {
+        if (prefetchFieldNames.isEmpty()) {
+            return;
+        }
+
+        final FieldValueCache fieldValueCache = application.getFieldValueCache();
+
+        for (final Document document : documents) {
+            for (final String fieldName : prefetchFieldNames) {
+                document.getField(fieldName).getValues().stream()
+                    .filter(FieldValue::isReference)
+                    .forEach(fieldValue -> fieldValueCache.prefetch(fieldValue.getReference(), fieldValuePrefetchExecutor));
+            }
+        }
+    }
+
+    @Nonnull
+    private static List<String> getPrefetchFieldNames(
+        final ApplicationImpl application,
+        final BulkDocumentWorker bulkDocumentWorker,
+        final ExecutorService fieldValuePrefetchExecutor
+    )
+    {
+        if (fieldValuePrefetchExecutor == null
+            || application.getFieldValueCache() == null
+            || !(bulkDocumentWorker instanceof PrefetchingBulkDocumentWorker)) {
+            return Collections.emptyList();
+        }
+
+        final Collection<String> fieldNames = ((PrefetchingBulkDocumentWorker) bulkDocumentWorker).getPrefetchFieldNames();
+
+        return new ArrayList<>(fieldNames);
+    }
+
+    /**
+     * Checks whether the specified number of additional tasks are likely to fit in the batch without exceeding its maximum size in
+     * bytes, based on the average size of the tasks already in the batch.
+     *
+     * @param additionalTasks the number of additional tasks
+     * @return true if the tasks are expected to fit in the batch
+     */
+    private boolean hasByteBudgetFor(final int additionalTasks)
+    {
+        if (maxBatchBytes <= 0) {
+            return true;
+        }
+
+        // Until the size of a task is known only allow for one at a time
+        if (bulkDocumentTasks.isEmpty()) {
+            return additionalTasks <= 1;
+        }
+
+        final long averageTaskBytes = documentBatchBytes / bulkDocumentTasks.size();
+
+        return documentBatchBytes + averageTaskBytes * additionalTasks <= maxBatchBytes;
+    }
+
+    /**
+     * Closes the batch so that no more documents are added to it, and stops any more tasks from being prefetched for it.
+     */
+    private void closeBatchImpl()
+    {
+        if (!isBatchClosed) {
+            isBatchClosed = true;
+            batchClosedTime = System.currentTimeMillis();
+        }
+        stopPrefetching();
+    }
+
+    private void recordBatch()
+    {
+        final int documentCount = documentBatch.size();
+        if (documentCount == 0) {
+            return;
+        }
+
+        // The batch timer was started when the first document was added to it
+        final long now = System.currentTimeMillis();
+        final long batchStartTime = batchEndTime - maxBatchTime;
+        final long closedTime = isBatchClosed ? batchClosedTime : now;
+
+        // The worker may process the documents as they are added, so the processing time is measured from when it started, less the
+        // time that was spent waiting for tasks
+        final long buildTime = closedTime - batchStartTime;
+        final long arrivalWaitTime = taskWaitTime - initialTaskWaitTime;
+        final long processingTime = now - processingStartTime - taskWaitTime;
+
+        batchSizeController.recordBatch(
+            maxBatchSize, maxBatchTime, documentCount, buildTime, arrivalWaitTime, processingTime);
+    }
+
+    /**
+     * Stops retrieving tasks in the background.
+     *
+     * @return the tasks which have been retrieved but not added to the batch
+     */
+    @Nonnull
+    private Queue<PreparedTask> stopPrefetching()
+    {
+        if (taskPrefetcher != null) {
+            taskPrefetcher.stop();
+        }
+        return (unprocessedTasks != null) ? unprocessedTasks : unusedPrefetchedTasks;
+    }
+
     /**
      * Returns the documents from the specified task that should be added to the batch. The documents are returned in a prepared state
      * (i.e. the onBeforeProcessDocument and onProcessDocument events have already been raised for them).
@@ -382,7 +855,7 @@ public final class BulkDocumentMessageProcessor
             final Document rootDocument = task.getDocument();
 
             // Cycle around all the documents in the task and try to add them to the list
-            final Iterable<Document> allDocuments = DocumentFunctions.documentNodes(rootDocument)::iterator;
+            final Iterable<Document> allDocuments = () -> DocumentTraversal.preOrder(rootDocument);
 
             for (final Document document : allDocuments) {
                 if (prepareToAddDocumentToBatch(task, document)) {
@@ -428,4 +901,216 @@ public final class BulkDocumentMessageProcessor
         // Return that the document can now be added to the batch
         return true;
     }
+
+    /**
+     * Retrieves and prepares tasks on a background thread so that they are ready to be added to the batch when they are needed.
+     * <p>
+     * Tasks are retrieved and prepared one at a time, and are handed back in the same order that they were retrieved in. The number of
+     * tasks which can be retrieved in advance is limited both by the configured prefetch limit and by the space remaining in the batch.
+     * When the prefetcher is stopped any tasks which have been retrieved but not taken are handed back so that they can be processed in
+     * a batch of their own.
+     */
+    private final class TaskPrefetcher implements Runnable
+    {
+        private final BlockingQueue<PreparedTask> preparedTasks;
+        private final Semaphore taskPermits;
+        private final AtomicBoolean isClaimed;
+        private final CountDownLatch completed;
+        private volatile long cutoffTime;
+        private int outstandingTasks;
+        private boolean isStopped;
+
+        /**
+         * The background thread, which is only interrupted when it is stopped while waiting for a task, and never while a task that
+         * has already been retrieved is being prepared. These fields are guarded by the prefetcher's monitor.
+         */
+        private Thread prefetchThread;
+        private boolean isWaiting;
+        private boolean isStopRequested;
+
+        public TaskPrefetcher(final long cutoffTime)
+        {
+            this.preparedTasks = new LinkedBlockingQueue<>();
+            this.taskPermits = new Semaphore(0);
+            this.isClaimed = new AtomicBoolean();
+            this.completed = new CountDownLatch(1);
+            this.cutoffTime = cutoffTime;
+            this.outstandingTasks = 0;
+            this.isStopped = false;
+            this.prefetchThread = null;
+            this.isWaiting = false;
+            this.isStopRequested = false;
+        }
+
+        public void start()
+        {
+            requestMoreTasks();
+            try {
+                batchPreparationExecutor.execute(this);
+            } catch (final RejectedExecutionException ex) {
+                // The worker is shutting down so there will be no more tasks added to the batch
+                isClaimed.set(true);
+                preparedTasks.add(PreparedTask.END);
+                completed.countDown();
+            }
+        }
+
+        public void setCutoffTime(final long cutoffTime)
+        {
+            this.cutoffTime = cutoffTime;
+        }
+
+        /**
+         * Allows more tasks to be retrieved if there is room for them in the batch.
+         */
+        public void requestMoreTasks()
+        {
+            while (outstandingTasks < maxBatchPrefetch
+                && documentBatch.size() + outstandingTasks < maxBatchSize
+                && hasByteBudgetFor(outstandingTasks + 1)) {
+                outstandingTasks++;
+                taskPermits.release();
+            }
+        }
+
+        /**
+         * Waits for the next task to be prepared.
+         *
+         * @return the next prepared task, or {@link PreparedTask#END} if there are no more tasks to be added to the batch
+         * @throws InterruptedException if the thread is interrupted while waiting
+         */
+        public PreparedTask take() throws InterruptedException
+        {
+            requestMoreTasks();
+            final PreparedTask preparedTask = preparedTasks.take();
+            outstandingTasks--;
+            return preparedTask;
+        }
+
+        /**
+         * Stops retrieving tasks and hands back any tasks which have been retrieved but not taken.
+         */
+        public void stop()
+        {
+            if (isStopped) {
+                return;
+            }
+            isStopped = true;
+
+            // Stop the background thread and wait for it to finish, unless it never started
+            requestStop();
+            if (!isClaimed.compareAndSet(false, true)) {
+                Uninterruptibles.awaitUninterruptibly(completed);
+            }
+
+            // Hand back the tasks which were retrieved but not added to the batch, keeping them in order
+            final List<PreparedTask> unusedTasks = new ArrayList<>();
+            preparedTasks.drainTo(unusedTasks);
+            for (final PreparedTask unusedTask : unusedTasks) {
+                if (unusedTask.bulkDocumentTask != null) {
+                    unusedPrefetchedTasks.add(unusedTask);
+                }
+            }
+        }
+
+        @Override
+        public void run()
+        {
+            // Check that the prefetcher hasn't been stopped before it even started
+            if (!isClaimed.compareAndSet(false, true)) {
+                return;
+            }
+
+            try {
+                prefetchTasks();
+            } finally {
+                preparedTasks.add(PreparedTask.END);
+                completed.countDown();
+            }
+        }
+
+        private void prefetchTasks()
+        {
+            for (;;) {
+                final BulkDocumentTask bulkDocumentTask;
+                if (!startWaiting()) {
+                    return;
+                }
+                try {
+                    bulkDocumentTask = waitForNextTask();
+                } finally {
+                    stopWaiting();
+                }
+
+                if (bulkDocumentTask == null) {
+                    return;
+                }
+
+                try {
+                    prepareTask(bulkDocumentTask);
+                } catch (final DocumentWorkerTransientException ex) {
+                    // Hand the failure back so that the task can be rejected when it is reached
+                    preparedTasks.add(new PreparedTask(bulkDocumentTask, ex, null));
+                    return;
+                } catch (final InterruptedException ex) {
+                    // As when the worker thread is interrupted while preparing a task, no response is set on the task
+                    return;
+                } catch (final RuntimeException ex) {
+                    preparedTasks.add(new PreparedTask(bulkDocumentTask, null, ex));
+                    return;
+                }
+
+                preparedTasks.add(new PreparedTask(bulkDocumentTask, null, null));
+            }
+        }
+
+        /**
+         * Waits until there is room for another task and then retrieves it, allowing for the cut-off time being extended while waiting.
+         *
+         * @return the next task, or null if there are no more tasks to be added to the batch
+         */
+        private BulkDocumentTask waitForNextTask()
+        {
+            try {
+                taskPermits.acquire();
+            } catch (final InterruptedException ex) {
+                return null;
+            }
+
+            BulkDocumentTask bulkDocumentTask;
+            long taskCutoffTime;
+            do {
+                taskCutoffTime = cutoffTime;
+                bulkDocumentTask = getNextBulkDocumentTask(taskCutoffTime);
+            } while (bulkDocumentTask == null && taskCutoffTime != cutoffTime && !Thread.currentThread().isInterrupted());
+
+            return bulkDocumentTask;
+        }
+
+        private synchronized boolean startWaiting()
+        {
+            if (isStopRequested) {
+                return false;
+            }
+            prefetchThread = Thread.currentThread();
+            isWaiting = true;
+            return true;
+        }
+
+        private synchronized void stopWaiting()
+        {
+            isWaiting = false;
+
+            // Clear any interrupt from stop() so that a task which was retrieved anyway is still fully prepared
+            Thread.interrupted();
+        }
+
+        private synchronized void requestStop()
+        {
+            isStopRequested = true;
+            if (isWaiting) {
+                prefetchThread.interrupt();
+            }
+        }
+    }
 }
@@ -18,19 +18,30 @@ package com.hpe.caf.worker.document;
 import com.hpe.caf.api.worker.WorkerTask;
 import com.hpe.caf.worker.document.model.Document;
 import com.hpe.caf.worker.document.tasks.AbstractTask;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Set;
 
 public final class BulkDocumentTask
 {
     private final WorkerTask workerTask;
     private final AbstractTask documentWorkerTask;
     private List<Document> documents;
+    private Set<Document> documentSet;
+    private long estimatedSize;
+    private final Set<Document> completedDocuments;
+    private boolean isResponseClaimed;
 
     public BulkDocumentTask(final WorkerTask workerTask, final AbstractTask documentWorkerTask)
     {
         this.workerTask = workerTask;
         this.documentWorkerTask = documentWorkerTask;
         this.documents = null;
+        this.documentSet = null;
+        this.estimatedSize = 0;
+        this.completedDocuments = Collections.newSetFromMap(new IdentityHashMap<>());
+        this.isResponseClaimed = false;
     }
 
     public WorkerTask getWorkerTask()
@@ -50,6 +61,53 @@ public final class BulkDocumentTask
 
     public void setDocuments(final List<Document> documents)
     {
+        // Index the documents by identity so that completed documents can be checked without searching the list
+        final Set<Document> documentSet = Collections.newSetFromMap(new IdentityHashMap<>(documents.size()));
+        documentSet.addAll(documents);
+
         this.documents = documents;
+        this.documentSet = documentSet;
+    }
+
+    public long getEstimatedSize()
+    {
+        return estimatedSize;
+    }
+
+    public void setEstimatedSize(final long estimatedSize)
+    {
+        this.estimatedSize = estimatedSize;
+    }
+
+    /**
+     * Records that the worker has finished processing the specified document.
+     *
+     * @param document one of the documents that was added to the batch from this task
+     * @return true if this call completed the last of the task's documents
+     * @throws IllegalArgumentException if the document was not added to the batch from this task
+     */
+    public synchronized boolean markDocumentCompleted(final Document document)
+    {
+        if (documentSet == null || !documentSet.contains(document)) {
+            throw new IllegalArgumentException("The document is not part of the batch");
+        }
+
+        return completedDocuments.add(document)
+            && completedDocuments.size() == documents.size();
+    }
+
+    /**
+     * Claims the right to set the response on this task. Only the first call returns true, so that the response is only set once even
+     * if the task is completed early.
+     *
+     * @return true if the caller should set the response on the task
+     */
+    public synchronized boolean claimResponse()
+    {
+        if (isResponseClaimed) {
+            return false;
+        }
+        isResponseClaimed = true;
+        return true;
     }
 }
@@ -15,34 +15,117 @@
  */
 package com.hpe.caf.worker.document;
 
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.hpe.caf.api.worker.BulkWorker;
 import com.hpe.caf.api.worker.BulkWorkerRuntime;
+import com.hpe.caf.worker.document.config.FieldValueCacheConfiguration;
 import com.hpe.caf.worker.document.extensibility.BulkDocumentWorker;
+import com.hpe.caf.worker.document.extensibility.PrefetchingBulkDocumentWorker;
 import com.hpe.caf.worker.document.impl.ApplicationImpl;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
  * This class allows implementations of the BulkDocumentWorker class can be used with the Worker Framework.
  */
 public final class BulkDocumentWorkerAdapter extends DocumentWorkerAdapter implements BulkWorker
 {
+    private static final Logger LOG = LoggerFactory.getLogger(BulkDocumentWorkerAdapter.class);
+
+    private static final int DEFAULT_PREFETCH_THREADS = 4;
+
     /**
      * This is the actual implementation of the worker.<p>
      * This class is adapting its interface so that it can be used with the bulk methods of the Worker Framework.
      */
     private final BulkDocumentWorker bulkDocumentWorker;
 
+    /**
+     * This is used to retrieve and prepare tasks in advance of them being added to a batch.<p>
+     * It is null if batch prefetching is not enabled.
+     */
+    private final ExecutorService batchPreparationExecutor;
+
+    /**
+     * This is used to retrieve the field values that the worker reads in advance of them being needed.<p>
+     * It is null unless the worker has declared the fields that it reads and the field value cache is enabled.
+     */
+    private final ExecutorService fieldValuePrefetchExecutor;
+
     public BulkDocumentWorkerAdapter(final ApplicationImpl application, final BulkDocumentWorker bulkDocumentWorker)
     {
         super(application, bulkDocumentWorker);
         this.bulkDocumentWorker = bulkDocumentWorker;
+        this.batchPreparationExecutor = createBatchPreparationExecutor(application);
+        this.fieldValuePrefetchExecutor = createFieldValuePrefetchExecutor(application, bulkDocumentWorker);
+
+        application.getBatchSizeController().registerMBean();
     }
 
     @Override
     public void processTasks(final BulkWorkerRuntime runtime) throws InterruptedException
     {
-        final BulkDocumentMessageProcessor messageProcessor
-            = new BulkDocumentMessageProcessor(application, bulkDocumentWorker, runtime);
+        final BulkDocumentMessageProcessor messageProcessor = new BulkDocumentMessageProcessor(
+            application, bulkDocumentWorker, runtime, batchPreparationExecutor, fieldValuePrefetchExecutor);
 
         messageProcessor.processTasks();
     }
+
+    @Override
+    public void shutdown()
+    {
+        if (batchPreparationExecutor != null) {
+            batchPreparationExecutor.shutdownNow();
+        }
+        if (fieldValuePrefetchExecutor != null) {
+            // Release any readers that are waiting for prefetches which were still queued
+            final List<Runnable> drainedPrefetches = fieldValuePrefetchExecutor.shutdownNow();
+            application.getFieldValueCache().cancelPrefetches(drainedPrefetches);
+        }
+        application.getBatchSizeController().unregisterMBean();
+        super.shutdown();
+    }
+
+    private static ExecutorService createBatchPreparationExecutor(final ApplicationImpl application)
+    {
+        if (application.getConfiguration().getMaxBatchPrefetch() <= 0) {
+            return null;
+        }
+
+        // Each batch being built uses at most one thread to prepare its tasks
+        final int threads = Math.max(application.getConfiguration().getThreads(), 1);
+
+        return Executors.newFixedThreadPool(
+            threads,
+            new ThreadFactoryBuilder().setNameFormat("batch-preparation-%d").setDaemon(true).build());
+    }
+
+    private static ExecutorService createFieldValuePrefetchExecutor(
+        final ApplicationImpl application,
+        final BulkDocumentWorker bulkDocumentWorker
+    )
+    {
+        if (!(bulkDocumentWorker instanceof PrefetchingBulkDocumentWorker)) {
+            return null;
+        }
+
+        if (application.getFieldValueCache() == null) {
+            LOG.warn("Field values will not be prefetched as the field value cache is not enabled");
+            return null;
+        }
+
+        final FieldValueCacheConfiguration cacheConfig = application.getConfiguration().getFieldValueCache();
+        final Integer configuredThreads = cacheConfig.getPrefetchThreads();
+        final int threads = (configuredThreads == null) ? DEFAULT_PREFETCH_THREADS : configuredThreads;
+        if (threads <= 0) {
+            return null;
+        }
+
+        return Executors.newFixedThreadPool(
+            threads,
+            new ThreadFactoryBuilder().setNameFormat("field-value-prefetch-%d").setDaemon(true).build());
+    }
 }
@@ -26,6 +26,13 @@ import com.hpe.caf.worker.document.impl.ApplicationImpl;
 import com.hpe.caf.worker.document.model.Document;
 import com.hpe.caf.worker.document.model.Subdocument;
 import com.hpe.caf.worker.document.tasks.AbstractTask;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
 
 /**
  * Uses a DocumentWorker implementation process an messages. Each instance processes just a single message.
@@ -49,6 +56,17 @@ public final class DocumentMessageProcessor implements Worker
      */
     private final AbstractTask documentWorkerTask;
 
+    /**
+     * Used to process sibling subdocuments concurrently, or null if they should be processed one at a time.
+     */
+    private final ForkJoinPool subdocumentPool;
+
+    /**
+     * Used to ensure that the customization script events for the task are raised one at a time when subdocuments are being processed
+     * concurrently.
+     */
+    private final Object scriptEventLock;
+
     /**
      * Constructs the DocumentMessageProcessor object, which is used to process a single worker message.
      *
@@ -64,10 +82,34 @@ public final class DocumentMessageProcessor implements Worker
         final WorkerTaskData workerTask
     )
         throws TaskRejectedException, InvalidTaskException
+    {
+        this(application, documentWorker, workerTask, null);
+    }
+
+    /**
+     * Constructs the DocumentMessageProcessor object, which is used to process a single worker message, allowing sibling subdocuments to
+     * be processed concurrently.
+     *
+     * @param application the global data for the worker
+     * @param documentWorker the actual implementation of the worker
+     * @param workerTask the task which the worker should perform
+     * @param subdocumentPool used to process sibling subdocuments concurrently, or null if they should be processed one at a time
+     * @throws TaskRejectedException if the task can't be handled right now but should be retried
+     * @throws InvalidTaskException if there is something wrong with the task which means that if will always fail
+     */
+    public DocumentMessageProcessor(
+        final ApplicationImpl application,
+        final DocumentWorker documentWorker,
+        final WorkerTaskData workerTask,
+        final ForkJoinPool subdocumentPool
+    )
+        throws TaskRejectedException, InvalidTaskException
     {
         this.application = application;
         this.documentWorker = documentWorker;
         this.documentWorkerTask = application.getInputMessageProcessor().createTask(workerTask);
+        this.subdocumentPool = subdocumentPool;
+        this.scriptEventLock = new Object();
     }
 
     @Override
@@ -93,6 +135,15 @@ public final class DocumentMessageProcessor implements Worker
             }
         } catch (final DocumentWorkerTransientException dwte) {
             throw new TaskRejectedException("Failed to process document", dwte);
+        } finally {
+            // The scripts are not called again once the task has been processed
+            documentWorkerTask.unloadScripts();
+        }
+
+        // Reject the task if any of its documents were marked as having failed transiently
+        final DocumentWorkerTransientException transientFailure = documentWorkerTask.getTransientFailure();
+        if (transientFailure != null) {
+            throw new TaskRejectedException("Failed to process document", transientFailure);
         }
 
         // Create a RESULT_SUCCESS for the document
@@ -136,7 +187,11 @@ public final class DocumentMessageProcessor implements Worker
             = application.getInputMessageProcessor().getProcessSubdocumentsSeparately();
 
         if (processSubdocumentsSeparately) {
-            processDocumentHierarchy(document);
+            if (subdocumentPool != null) {
+                processDocumentHierarchyConcurrently(document);
+            } else {
+                processDocumentHierarchy(document);
+            }
         } else {
             processDocument(document);
         }
@@ -158,24 +213,105 @@ public final class DocumentMessageProcessor implements Worker
         }
     }
 
+    /**
+     * Calls the implementation's {@link DocumentWorker#processDocument processDocument()} function for both the specified document and
+     * for all of the documents in its hierarchy, processing sibling subdocuments concurrently.
+     */
+    private void processDocumentHierarchyConcurrently(final Document document)
+        throws DocumentWorkerTransientException, InterruptedException
+    {
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        final ForkJoinTask<Void> hierarchyTask = subdocumentPool.submit(new DocumentHierarchyAction(document, failure));
+
+        try {
+            hierarchyTask.get();
+        } catch (final InterruptedException ex) {
+            // Stop any further documents from being processed
+            failure.compareAndSet(null, ex);
+            hierarchyTask.cancel(true);
+            throw ex;
+        } catch (final ExecutionException ex) {
+            // The original exception is recorded below
+        }
+
+        // Rethrow the first exception that occurred, as it would have been thrown if the documents had been processed sequentially
+        final Throwable firstFailure = failure.get();
+        if (firstFailure instanceof DocumentWorkerTransientException) {
+            throw (DocumentWorkerTransientException) firstFailure;
+        } else if (firstFailure instanceof InterruptedException) {
+            throw (InterruptedException) firstFailure;
+        } else if (firstFailure instanceof RuntimeException) {
+            throw (RuntimeException) firstFailure;
+        } else if (firstFailure instanceof Error) {
+            throw (Error) firstFailure;
+        } else if (firstFailure != null) {
+            throw new RuntimeException(firstFailure);
+        }
+    }
+
+    /**
+     * Processes a document and then its subdocuments, with the subdocuments being processed concurrently. The first exception thrown
+     * is recorded rather than being propagated, so that it can be rethrown unchanged on the original thread.
+     */
+    private final class DocumentHierarchyAction extends RecursiveAction
+    {
+        private static final long serialVersionUID = 1L;
+
+        private final Document document;
+        private final AtomicReference<Throwable> failure;
+
+        public DocumentHierarchyAction(final Document document, final AtomicReference<Throwable> failure)
+        {
+            this.document = document;
+            this.failure = failure;
+        }
+
+        @Override
+        protected void compute()
+        {
+            // Don't process any more documents once there has been a failure
+            if (failure.get() != null) {
+                return;
+            }
+
+            try {
+                processDocument(document);
+            } catch (final Throwable ex) {
+                failure.compareAndSet(null, ex);
+                return;
+            }
+
+            // The subdocuments are retrieved on this thread before being processed concurrently
+            final List<DocumentHierarchyAction> subdocumentActions = document.getSubdocuments().stream()
+                .map(subdocument -> new DocumentHierarchyAction(subdocument, failure))
+                .collect(Collectors.toList());
+
+            invokeAll(subdocumentActions);
+        }
+    }
+
     /**
      * Calls the customization scripts, and if none of them have set the cancellation flag then calls the implementation's
      * {@link DocumentWorker#processDocument processDocument()} function.
      */
     private void processDocument(final Document document) throws DocumentWorkerTransientException, InterruptedException
     {
-        // Raise the onBeforeProcessDocument event and check the cancellation flag
-        if (documentWorkerTask.raiseBeforeProcessDocumentEvent(document)) {
-            return;
-        }
+        synchronized (scriptEventLock) {
+            // Raise the onBeforeProcessDocument event and check the cancellation flag
+            if (documentWorkerTask.raiseBeforeProcessDocumentEvent(document)) {
+                return;
+            }
 
-        // Raise the onProcessDocument event
-        documentWorkerTask.raiseProcessDocumentEvent(document);
+            // Raise the onProcessDocument event
+            documentWorkerTask.raiseProcessDocumentEvent(document);
+        }
 
         // Proceed to process the document
         documentWorker.processDocument(document);
 
-        // Raise the onAfterProcessDocument event
-        documentWorkerTask.raiseAfterProcessDocumentEvent(document);
+        synchronized (scriptEventLock) {
+            // Raise the onAfterProcessDocument event
+            documentWorkerTask.raiseAfterProcessDocumentEvent(document);
+        }
     }
 }
@@ -23,9 +23,13 @@ import com.hpe.caf.api.worker.WorkerConfiguration;
 import com.hpe.caf.api.worker.WorkerFactory;
 import com.hpe.caf.api.worker.WorkerTaskData;
 import com.hpe.caf.worker.document.config.DocumentWorkerConfiguration;
+import com.hpe.caf.worker.document.extensibility.ConcurrentDocumentWorker;
 import com.hpe.caf.worker.document.extensibility.DocumentWorker;
 import com.hpe.caf.worker.document.impl.ApplicationImpl;
+import com.hpe.caf.worker.document.impl.FieldValueCache;
+import com.hpe.caf.worker.document.impl.FieldValueStore;
 import com.hpe.caf.worker.document.impl.HealthMonitorImpl;
+import java.util.concurrent.ForkJoinPool;
 import javax.annotation.Nonnull;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -58,6 +62,12 @@ public class DocumentWorkerAdapter implements WorkerFactory
      */
     private final DocumentWorkerConfiguration configuration;
 
+    /**
+     * This is used to process sibling subdocuments concurrently.<p>
+     * It is null unless the worker implementation has declared that it is thread-safe.
+     */
+    private final ForkJoinPool subdocumentPool;
+
     /**
      * Constructs the DocumentWorkerAdapter object, which adapts the DocumentWorker interface so that objects which implement it can be
      * used with the Worker Framework.
@@ -70,6 +80,17 @@ public class DocumentWorkerAdapter implements WorkerFactory
         this.application = application;
         this.documentWorker = documentWorker;
         this.configuration = application.getConfiguration();
+        this.subdocumentPool = createSubdocumentPool(documentWorker, configuration);
+
+        final FieldValueCache fieldValueCache = application.getFieldValueCache();
+        if (fieldValueCache != null) {
+            fieldValueCache.registerMBean();
+        }
+
+        final FieldValueStore fieldValueStore = application.getFieldValueStore();
+        if (fieldValueStore != null) {
+            fieldValueStore.registerMBean();
+        }
     }
 
     @Override
@@ -85,7 +106,7 @@ public class DocumentWorkerAdapter implements WorkerFactory
     public Worker getWorker(final WorkerTaskData workerTask)
         throws TaskRejectedException, InvalidTaskException
     {
-        return new DocumentMessageProcessor(application, documentWorker, workerTask);
+        return new DocumentMessageProcessor(application, documentWorker, workerTask, subdocumentPool);
     }
 
     @Nonnull
@@ -110,6 +131,10 @@ public class DocumentWorkerAdapter implements WorkerFactory
     @Override
     public void shutdown()
     {
+        if (subdocumentPool != null) {
+            subdocumentPool.shutdownNow();
+        }
+
         try {
             documentWorker.close();
         } catch (final RuntimeException ex) {
@@ -117,5 +142,32 @@ public class DocumentWorkerAdapter implements WorkerFactory
         } catch (final Exception ex) {
             LOG.warn("Error closing DocumentWorker during shutdown", ex);
         }
+
+        final FieldValueCache fieldValueCache = application.getFieldValueCache();
+        if (fieldValueCache != null) {
+            fieldValueCache.unregisterMBean();
+            fieldValueCache.close();
+        }
+
+        final FieldValueStore fieldValueStore = application.getFieldValueStore();
+        if (fieldValueStore != null) {
+            fieldValueStore.unregisterMBean();
+        }
+    }
+
+    private static ForkJoinPool createSubdocumentPool(
+        final DocumentWorker documentWorker,
+        final DocumentWorkerConfiguration configuration
+    )
+    {
+        if (!(documentWorker instanceof ConcurrentDocumentWorker)) {
+            return null;
+        }
+
+        final int parallelism = (configuration.getSubdocumentParallelism() > 0)
+            ? configuration.getSubdocumentParallelism()
+            : Runtime.getRuntime().availableProcessors();
+
+        return new ForkJoinPool(parallelism);
     }
 }
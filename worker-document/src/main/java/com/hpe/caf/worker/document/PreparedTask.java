@@ -0,0 +1,42 @@
+/*
+ * Copyright 2016-2019 Micro Focus or one of its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hpe.caf.worker.document;
+
+import com.hpe.caf.worker.document.exceptions.DocumentWorkerTransientException;
+
+/**
+ * A task which has been retrieved and prepared in advance of being added to a batch, or the exception which occurred while preparing
+ * it.
+ */
+final class PreparedTask
+{
+    public static final PreparedTask END = new PreparedTask(null, null, null);
+
+    public final BulkDocumentTask bulkDocumentTask;
+    public final DocumentWorkerTransientException transientException;
+    public final RuntimeException runtimeException;
+
+    public PreparedTask(
+        final BulkDocumentTask bulkDocumentTask,
+        final DocumentWorkerTransientException transientException,
+        final RuntimeException runtimeException
+    )
+    {
+        this.bulkDocumentTask = bulkDocumentTask;
+        this.transientException = transientException;
+        this.runtimeException = runtimeException;
+    }
+}
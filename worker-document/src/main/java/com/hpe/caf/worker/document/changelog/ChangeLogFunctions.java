@@ -71,7 +71,13 @@ public final class ChangeLogFunctions
             || (change.updateSubdocument != null && hasFailures(change.updateSubdocument.changes))));
     }
 
-    private static boolean hasFailures(final DocumentWorkerDocument document)
+    /**
+     * Checks whether the specified document or any of its subdocuments have any failures.
+     *
+     * @param document the document to be inspected
+     * @return true if the document or any of its subdocuments have failures
+     */
+    public static boolean hasFailures(final DocumentWorkerDocument document)
     {
         // Check that the document is not null
         if (document == null) {
@@ -0,0 +1,124 @@
+/*
+ * Copyright 2016-2019 Micro Focus or one of its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hpe.caf.worker.document.config;
+
+public final class BatchSizeAdaptationConfiguration
+{
+    /**
+     * Whether the batch size and batch time should be adjusted automatically based on the batches processed.
+     */
+    private Boolean enabled;
+
+    /**
+     * The smallest number of documents that the maximum batch size may be reduced to.
+     */
+    private Integer minBatchSize;
+
+    /**
+     * The shortest length of time (in milliseconds) that the maximum batch time may be reduced to.
+     */
+    private Long minBatchTime;
+
+    /**
+     * The length of time (in milliseconds) that processing a batch should take once it has been closed.
+     */
+    private Long targetProcessingTime;
+
+    /**
+     * The number of documents that the maximum batch size is increased by after a full batch.
+     */
+    private Integer batchSizeIncrement;
+
+    /**
+     * The number of milliseconds that the maximum batch time is increased by after a full batch.
+     */
+    private Long batchTimeIncrement;
+
+    /**
+     * The factor that the maximum batch size or batch time is multiplied by when it is reduced.
+     */
+    private Double decreaseFactor;
+
+    public Boolean getEnabled()
+    {
+        return enabled;
+    }
+
+    public void setEnabled(final Boolean enabled)
+    {
+        this.enabled = enabled;
+    }
+
+    public Integer getMinBatchSize()
+    {
+        return minBatchSize;
+    }
+
+    public void setMinBatchSize(final Integer minBatchSize)
+    {
+        this.minBatchSize = minBatchSize;
+    }
+
+    public Long getMinBatchTime()
+    {
+        return minBatchTime;
+    }
+
+    public void setMinBatchTime(final Long minBatchTime)
+    {
+        this.minBatchTime = minBatchTime;
+    }
+
+    public Long getTargetProcessingTime()
+    {
+        return targetProcessingTime;
+    }
+
+    public void setTargetProcessingTime(final Long targetProcessingTime)
+    {
+        this.targetProcessingTime = targetProcessingTime;
+    }
+
+    public Integer getBatchSizeIncrement()
+    {
+        return batchSizeIncrement;
+    }
+
+    public void setBatchSizeIncrement(final Integer batchSizeIncrement)
+    {
+        this.batchSizeIncrement = batchSizeIncrement;
+    }
+
+    public Long getBatchTimeIncrement()
+    {
+        return batchTimeIncrement;
+    }
+
+    public void setBatchTimeIncrement(final Long batchTimeIncrement)
+    {
+        this.batchTimeIncrement = batchTimeIncrement;
+    }
+
+    public Double getDecreaseFactor()
+    {
+        return decreaseFactor;
+    }
+
+    public void setDecreaseFactor(final Double decreaseFactor)
+    {
+        this.decreaseFactor = decreaseFactor;
+    }
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright 2016-2019 Micro Focus or one of its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hpe.caf.worker.document.config;
+
+public final class ChangeLogCompactionConfiguration
+{
+    /**
+     * The number of change log entries above which the change log is folded into the document (0 or null means no limit).
+     */
+    private Integer maxEntries;
+
+    /**
+     * The size (in bytes) of the response message above which the change log is folded into the document (0 or null means no limit).
+     */
+    private Long maxBytes;
+
+    /**
+     * Whether the names of the change log entries that have been folded into the document should be kept in the change log.
+     */
+    private Boolean retainEntryNames;
+
+    public Integer getMaxEntries()
+    {
+        return maxEntries;
+    }
+
+    public void setMaxEntries(final Integer maxEntries)
+    {
+        this.maxEntries = maxEntries;
+    }
+
+    public Long getMaxBytes()
+    {
+        return maxBytes;
+    }
+
+    public void setMaxBytes(final Long maxBytes)
+    {
+        this.maxBytes = maxBytes;
+    }
+
+    public Boolean getRetainEntryNames()
+    {
+        return retainEntryNames;
+    }
+
+    public void setRetainEntryNames(final Boolean retainEntryNames)
+    {
+        this.retainEntryNames = retainEntryNames;
+    }
+}
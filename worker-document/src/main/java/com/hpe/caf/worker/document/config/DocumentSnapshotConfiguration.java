@@ -0,0 +1,66 @@
+/*
+ * Copyright 2016-2019 Micro Focus or one of its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hpe.caf.worker.document.config;
+
+public final class DocumentSnapshotConfiguration
+{
+    /**
+     * The number of change log entries at which a snapshot of the document is written to the data store and sent in place of the
+     * document and its change log (0 or null disables writing snapshots).
+     */
+    private Integer minChangeLogEntries;
+
+    /**
+     * The maximum total size (in bytes) of the serialised snapshots to keep decoded in the local cache (0 disables the cache).
+     */
+    private Long maxCacheBytes;
+
+    /**
+     * Whether the snapshot that a task referred to is deleted from the data store when the response replaces it with a new snapshot
+     * or with the document itself.
+     */
+    private Boolean deleteSuperseded;
+
+    public Integer getMinChangeLogEntries()
+    {
+        return minChangeLogEntries;
+    }
+
+    public void setMinChangeLogEntries(final Integer minChangeLogEntries)
+    {
+        this.minChangeLogEntries = minChangeLogEntries;
+    }
+
+    public Long getMaxCacheBytes()
+    {
+        return maxCacheBytes;
+    }
+
+    public void setMaxCacheBytes(final Long maxCacheBytes)
+    {
+        this.maxCacheBytes = maxCacheBytes;
+    }
+
+    public Boolean getDeleteSuperseded()
+    {
+        return deleteSuperseded;
+    }
+
+    public void setDeleteSuperseded(final Boolean deleteSuperseded)
+    {
+        this.deleteSuperseded = deleteSuperseded;
+    }
+}
@@ -48,6 +48,51 @@ public class DocumentWorkerConfiguration extends WorkerConfiguration
      */
     private long maxBatchTime;
 
+    /**
+     * Maximum estimated size (in bytes) of a batch (0 means the batch is not limited by size in bytes).
+     */
+    @Min(0)
+    private long maxBatchBytes;
+
+    /**
+     * Maximum number of tasks to retrieve and prepare in advance of them being added to a batch (0 disables prefetching).
+     */
+    @Min(0)
+    private int maxBatchPrefetch;
+
+    /**
+     * Configuration for automatically adjusting the batch size and batch time
+     */
+    private BatchSizeAdaptationConfiguration batchSizeAdaptation;
+
+    /**
+     * Maximum number of subdocuments to process concurrently if the worker supports it (0 means the number of available processors).
+     */
+    @Min(0)
+    private int subdocumentParallelism;
+
+    /**
+     * Configuration for folding the change log into the document when it becomes too long
+     */
+    private ChangeLogCompactionConfiguration changeLogCompaction;
+
+    /**
+     * Configuration for writing document snapshots to the data store
+     */
+    private DocumentSnapshotConfiguration documentSnapshots;
+
+    /**
+     * Size (in bytes) above which new field values are stored in the data store when the response is built and passed on as references
+     * rather than being included in the response message (0 means field values are always included in the message).
+     */
+    @Min(0)
+    private long fieldValueOffloadThreshold;
+
+    /**
+     * Configuration for caching referenced field values
+     */
+    private FieldValueCacheConfiguration fieldValueCache;
+
     /**
      * Configuration for the input message processor
      */
@@ -113,6 +158,86 @@ public class DocumentWorkerConfiguration extends WorkerConfiguration
         this.maxBatchTime = maxBatchTime;
     }
 
+    public long getMaxBatchBytes()
+    {
+        return maxBatchBytes;
+    }
+
+    public void setMaxBatchBytes(final long maxBatchBytes)
+    {
+        this.maxBatchBytes = maxBatchBytes;
+    }
+
+    public int getMaxBatchPrefetch()
+    {
+        return maxBatchPrefetch;
+    }
+
+    public void setMaxBatchPrefetch(final int maxBatchPrefetch)
+    {
+        this.maxBatchPrefetch = maxBatchPrefetch;
+    }
+
+    public BatchSizeAdaptationConfiguration getBatchSizeAdaptation()
+    {
+        return batchSizeAdaptation;
+    }
+
+    public void setBatchSizeAdaptation(final BatchSizeAdaptationConfiguration batchSizeAdaptation)
+    {
+        this.batchSizeAdaptation = batchSizeAdaptation;
+    }
+
+    public int getSubdocumentParallelism()
+    {
+        return subdocumentParallelism;
+    }
+
+    public void setSubdocumentParallelism(final int subdocumentParallelism)
+    {
+        this.subdocumentParallelism = subdocumentParallelism;
+    }
+
+    public ChangeLogCompactionConfiguration getChangeLogCompaction()
+    {
+        return changeLogCompaction;
+    }
+
+    public void setChangeLogCompaction(final ChangeLogCompactionConfiguration changeLogCompaction)
+    {
+        this.changeLogCompaction = changeLogCompaction;
+    }
+
+    public DocumentSnapshotConfiguration getDocumentSnapshots()
+    {
+        return documentSnapshots;
+    }
+
+    public void setDocumentSnapshots(final DocumentSnapshotConfiguration documentSnapshots)
+    {
+        this.documentSnapshots = documentSnapshots;
+    }
+
+    public long getFieldValueOffloadThreshold()
+    {
+        return fieldValueOffloadThreshold;
+    }
+
+    public void setFieldValueOffloadThreshold(final long fieldValueOffloadThreshold)
+    {
+        this.fieldValueOffloadThreshold = fieldValueOffloadThreshold;
+    }
+
+    public FieldValueCacheConfiguration getFieldValueCache()
+    {
+        return fieldValueCache;
+    }
+
+    public void setFieldValueCache(final FieldValueCacheConfiguration fieldValueCache)
+    {
+        this.fieldValueCache = fieldValueCache;
+    }
+
     public InputMessageConfiguration getInputMessageProcessing()
     {
         return inputMessageProcessing;
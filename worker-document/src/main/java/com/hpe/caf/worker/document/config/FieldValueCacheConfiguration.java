@@ -0,0 +1,95 @@
+/*
+ * Copyright 2016-2019 Micro Focus or one of its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hpe.caf.worker.document.config;
+
+public final class FieldValueCacheConfiguration
+{
+    /**
+     * The maximum total size (in bytes) of the referenced field values to keep in memory (0 or null disables the cache).
+     */
+    private Long maxBytes;
+
+    /**
+     * The size (in bytes) of the largest field value that is cached; larger values are always read from the data store.
+     */
+    private Long maxValueBytes;
+
+    /**
+     * The directory that values evicted from memory are written to, so that they can be read back without going to the data store
+     * (null disables spilling values to disk).
+     */
+    private String spillDirectory;
+
+    /**
+     * The maximum total size (in bytes) of the values to keep in the spill directory.
+     */
+    private Long maxSpillBytes;
+
+    /**
+     * The number of threads used to retrieve field values in advance for bulk workers which declare the fields that they read.
+     */
+    private Integer prefetchThreads;
+
+    public Long getMaxBytes()
+    {
+        return maxBytes;
+    }
+
+    public void setMaxBytes(final Long maxBytes)
+    {
+        this.maxBytes = maxBytes;
+    }
+
+    public Long getMaxValueBytes()
+    {
+        return maxValueBytes;
+    }
+
+    public void setMaxValueBytes(final Long maxValueBytes)
+    {
+        this.maxValueBytes = maxValueBytes;
+    }
+
+    public String getSpillDirectory()
+    {
+        return spillDirectory;
+    }
+
+    public void setSpillDirectory(final String spillDirectory)
+    {
+        this.spillDirectory = spillDirectory;
+    }
+
+    public Long getMaxSpillBytes()
+    {
+        return maxSpillBytes;
+    }
+
+    public void setMaxSpillBytes(final Long maxSpillBytes)
+    {
+        this.maxSpillBytes = maxSpillBytes;
+    }
+
+    public Integer getPrefetchThreads()
+    {
+        return prefetchThreads;
+    }
+
+    public void setPrefetchThreads(final Integer prefetchThreads)
+    {
+        this.prefetchThreads = prefetchThreads;
+    }
+}
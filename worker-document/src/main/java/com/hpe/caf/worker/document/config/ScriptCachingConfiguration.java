@@ -27,6 +27,15 @@ public final class ScriptCachingConfiguration
      */
     private ScriptCacheConfiguration dynamicScriptCache;
 
+    /**
+     * The maximum number of global contexts to keep for reuse for each script (0, the default, disables reusing them).
+     * <p>
+     * Reusing a global only removes the variables that scripts defined in it. Changes that a script makes to the built-in objects
+     * (such as adding to {@code Array.prototype}), non-enumerable global properties, and properties which cannot be deleted are
+     * still there when the global is next used, so this should only be enabled for scripts which do not make such changes.
+     */
+    private Integer globalPoolSize;
+
     public ScriptCacheConfiguration getStaticScriptCache()
     {
         return staticScriptCache;
@@ -46,4 +55,14 @@ public final class ScriptCachingConfiguration
     {
         this.dynamicScriptCache = dynamicScriptCache;
     }
+
+    public Integer getGlobalPoolSize()
+    {
+        return globalPoolSize;
+    }
+
+    public void setGlobalPoolSize(final Integer globalPoolSize)
+    {
+        this.globalPoolSize = globalPoolSize;
+    }
 }
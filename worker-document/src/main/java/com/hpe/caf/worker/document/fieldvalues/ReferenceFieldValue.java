@@ -16,6 +16,7 @@
 package com.hpe.caf.worker.document.fieldvalues;
 
 import com.hpe.caf.worker.document.impl.ApplicationImpl;
+import com.hpe.caf.worker.document.impl.FieldValueCache;
 import com.hpe.caf.worker.document.model.Field;
 import com.hpe.caf.worker.document.util.DataStoreFunctions;
 import java.io.IOException;
@@ -57,6 +58,10 @@ public final class ReferenceFieldValue extends AbstractFieldValue
     @Override
     public InputStream openInputStream() throws IOException
     {
-        return DataStoreFunctions.openInputStream(application.getDataStore(), data);
+        final FieldValueCache fieldValueCache = application.getFieldValueCache();
+
+        return (fieldValueCache == null)
+            ? DataStoreFunctions.openInputStream(application.getDataStore(), data)
+            : fieldValueCache.openInputStream(data);
     }
 }
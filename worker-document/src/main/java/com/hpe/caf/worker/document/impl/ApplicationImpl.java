@@ -15,6 +15,8 @@
  */
 package com.hpe.caf.worker.document.impl;
 
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.hpe.caf.api.Codec;
 import com.hpe.caf.api.CodecException;
 import com.hpe.caf.api.ConfigurationException;
@@ -22,21 +24,49 @@ import com.hpe.caf.api.ConfigurationSource;
 import com.hpe.caf.api.worker.DataStore;
 import com.hpe.caf.api.worker.TaskFailedException;
 import com.hpe.caf.api.worker.WorkerException;
+import com.hpe.caf.worker.document.DocumentWorkerAction;
+import com.hpe.caf.worker.document.DocumentWorkerChangeLogEntry;
+import com.hpe.caf.worker.document.DocumentWorkerDocument;
+import com.hpe.caf.worker.document.DocumentWorkerDocumentTask;
+import com.hpe.caf.worker.document.DocumentWorkerFailure;
+import com.hpe.caf.worker.document.DocumentWorkerFieldChanges;
+import com.hpe.caf.worker.document.DocumentWorkerFieldEncoding;
+import com.hpe.caf.worker.document.DocumentWorkerFieldValue;
+import com.hpe.caf.worker.document.DocumentWorkerScript;
 import com.hpe.caf.worker.document.config.DocumentWorkerConfiguration;
+import com.hpe.caf.worker.document.config.FieldValueCacheConfiguration;
 import com.hpe.caf.worker.document.model.Application;
 import com.hpe.caf.worker.document.model.ServiceLocator;
+import com.hpe.caf.worker.document.output.ChangeLogBuilder;
+import com.hpe.caf.worker.document.output.ChangesJournal;
+import com.hpe.caf.worker.document.output.StreamingResultSerialiser;
 import com.hpe.caf.worker.document.scripting.JavaScriptManager;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Objects;
+import java.util.function.Consumer;
 import javax.annotation.Nonnull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 public class ApplicationImpl implements Application
 {
+    private static final Logger LOG = LoggerFactory.getLogger(ApplicationImpl.class);
+
     private final ServiceLocatorImpl serviceLocator;
     private final ConfigurationSource configSource;
     private final DataStore dataStore;
     private final Codec codec;
     private final DocumentWorkerConfiguration configuration;
     private final BatchSizeControllerImpl batchSizeController;
+    private final DocumentSnapshotStore documentSnapshotStore;
+    private final StreamingResultSerialiser streamingResultSerialiser;
+    private final FieldValueStore fieldValueStore;
+    private final FieldValueCache fieldValueCache;
     private final InputMessageProcessorImpl inputMessageProcessor;
     private final JavaScriptManager javaScriptManager;
     private final String successQueue;
@@ -51,6 +81,12 @@ public class ApplicationImpl implements Application
         this.codec = Objects.requireNonNull(codec);
         this.configuration = getConfiguration(configSource);
         this.batchSizeController = new BatchSizeControllerImpl(this, configuration);
+        this.documentSnapshotStore = new DocumentSnapshotStore(dataStore, codec, configuration.getDocumentSnapshots());
+        this.streamingResultSerialiser = createStreamingResultSerialiser(codec);
+        this.fieldValueStore = (configuration.getFieldValueOffloadThreshold() > 0)
+            ? new FieldValueStore(dataStore, configuration.getFieldValueOffloadThreshold())
+            : null;
+        this.fieldValueCache = createFieldValueCache(dataStore, configuration.getFieldValueCache());
         this.inputMessageProcessor = new InputMessageProcessorImpl(this, configuration.getInputMessageProcessing());
         this.javaScriptManager = new JavaScriptManager(configuration.getScriptCaching());
         this.successQueue = configuration.getOutputQueue();
@@ -76,6 +112,43 @@ public class ApplicationImpl implements Application
         return batchSizeController;
     }
 
+    @Nonnull
+    public DocumentSnapshotStore getDocumentSnapshotStore()
+    {
+        return documentSnapshotStore;
+    }
+
+    /**
+     * Returns the serialiser which writes document task results straight from the document model.
+     *
+     * @return the streaming serialiser, or null if the results must be serialised using the codec because the codec does not produce
+     * the same JSON
+     */
+    public StreamingResultSerialiser getStreamingResultSerialiser()
+    {
+        return streamingResultSerialiser;
+    }
+
+    /**
+     * Returns the store used for field values which are too large to be included in the response message.
+     *
+     * @return the field value store, or null if field values are always included in the message
+     */
+    public FieldValueStore getFieldValueStore()
+    {
+        return fieldValueStore;
+    }
+
+    /**
+     * Returns the cache used when reading referenced field values.
+     *
+     * @return the field value cache, or null if referenced field values are not cached
+     */
+    public FieldValueCache getFieldValueCache()
+    {
+        return fieldValueCache;
+    }
+
     @Nonnull
     @Override
     public InputMessageProcessorImpl getInputMessageProcessor()
@@ -162,6 +235,122 @@ public class ApplicationImpl implements Application
         }
     }
 
+    /**
+     * Creates a streaming result serialiser if it produces exactly the same output as the codec for a sample result, so that the
+     * messages sent are the same whichever way the result is serialised.
+     * <p>
+     * Document tasks are then also deserialised by the streaming result serialiser, so its mapper is configured to be as strict as
+     * the codec is when it is strictly decoding.
+     */
+    private static StreamingResultSerialiser createStreamingResultSerialiser(final Codec codec)
+    {
+        final ObjectMapper mapper = new ObjectMapper()
+            .enable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES,
+                    DeserializationFeature.FAIL_ON_NULL_FOR_PRIMITIVES,
+                    DeserializationFeature.FAIL_ON_READING_DUP_TREE_KEY);
+
+        final StreamingResultSerialiser serialiser = new StreamingResultSerialiser(mapper);
+
+        final DocumentWorkerDocumentTask sampleResult = createSampleResult();
+        final Consumer<ChangesJournal> sampleChangesRecorder = ApplicationImpl::recordSampleChanges;
+
+        final ChangeLogBuilder changeLogBuilder = new ChangeLogBuilder();
+        sampleChangesRecorder.accept(changeLogBuilder);
+
+        final DocumentWorkerChangeLogEntry changeLogEntry = new DocumentWorkerChangeLogEntry();
+        changeLogEntry.name = "sample:2";
+        changeLogEntry.changes = changeLogBuilder.getChanges();
+
+        final DocumentWorkerDocumentTask expectedResult = createSampleResult();
+        expectedResult.changeLog.add(changeLogEntry);
+
+        try {
+            final byte[] expected = codec.serialise(expectedResult);
+            final byte[] actual = serialiser.serialise(sampleResult, changeLogEntry.name, sampleChangesRecorder).getData();
+
+            if (Arrays.equals(expected, actual)) {
+                return serialiser;
+            }
+        } catch (final CodecException | IOException | RuntimeException ex) {
+            LOG.debug("Failed to compare streamed result with codec output", ex);
+        }
+
+        LOG.info("Codec {} does not produce plain JSON; document task results will not be streamed", codec.getClass().getName());
+        return null;
+    }
+
+    @Nonnull
+    private static DocumentWorkerDocumentTask createSampleResult()
+    {
+        final DocumentWorkerFieldValue stringValue = new DocumentWorkerFieldValue();
+        stringValue.data = "Sample \u00e9\"\\\n";
+
+        final DocumentWorkerFieldValue binaryValue = new DocumentWorkerFieldValue();
+        binaryValue.data = "AAEC";
+        binaryValue.encoding = DocumentWorkerFieldEncoding.base64;
+
+        final DocumentWorkerDocument document = new DocumentWorkerDocument();
+        document.reference = "sample";
+        document.fields = new HashMap<>();
+        document.fields.put("STRING", Collections.singletonList(stringValue));
+        document.fields.put("BINARY", Arrays.asList(binaryValue, stringValue));
+
+        final DocumentWorkerChangeLogEntry changeLogEntry = new DocumentWorkerChangeLogEntry();
+        changeLogEntry.name = "sample:1";
+
+        final DocumentWorkerScript script = new DocumentWorkerScript();
+        script.name = "sample.js";
+        script.script = "function onProcessTask() {}";
+
+        final DocumentWorkerDocumentTask result = new DocumentWorkerDocumentTask();
+        result.document = document;
+        result.changeLog = new ArrayList<>(Collections.singletonList(changeLogEntry));
+        result.customData = Collections.singletonMap("sample", "value");
+        result.scripts = Collections.singletonList(script);
+
+        return result;
+    }
+
+    private static void recordSampleChanges(final ChangesJournal journal)
+    {
+        final DocumentWorkerFieldValue value = new DocumentWorkerFieldValue();
+        value.data = "Value";
+
+        final DocumentWorkerFieldChanges addChanges = new DocumentWorkerFieldChanges();
+        addChanges.values = Collections.singletonList(value);
+
+        final DocumentWorkerFieldChanges replaceChanges = new DocumentWorkerFieldChanges();
+        replaceChanges.action = DocumentWorkerAction.replace;
+
+        final Map<String, DocumentWorkerFieldChanges> fieldChanges = new HashMap<>();
+        fieldChanges.put("ADDED", addChanges);
+        fieldChanges.put("REMOVED", replaceChanges);
+
+        final DocumentWorkerFailure failure = new DocumentWorkerFailure();
+        failure.failureId = "SAMPLE";
+        failure.failureMessage = "Sample failure";
+
+        final DocumentWorkerDocument subdocument = new DocumentWorkerDocument();
+        subdocument.reference = "new";
+
+        journal.setReference("updated");
+        journal.addFieldChanges(fieldChanges);
+        journal.addFailure(failure);
+        journal.updateSubdocument(1, "updated").setReference(null);
+        journal.updateSubdocument(0, null);
+        journal.removeSubdocument(0, "removed");
+        journal.addSubdocument(subdocument);
+    }
+
+    private static FieldValueCache createFieldValueCache(final DataStore dataStore, final FieldValueCacheConfiguration config)
+    {
+        final Long maxBytes = (config == null) ? null : config.getMaxBytes();
+
+        return (maxBytes == null || maxBytes <= 0)
+            ? null
+            : new FieldValueCache(dataStore, config);
+    }
+
     private static String getFailureQueue(final DocumentWorkerConfiguration configuration)
     {
         final String failureQueue = configuration.getFailureQueue();
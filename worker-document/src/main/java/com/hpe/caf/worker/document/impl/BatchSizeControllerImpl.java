@@ -15,25 +15,90 @@
  */
 package com.hpe.caf.worker.document.impl;
 
+import com.hpe.caf.worker.document.config.BatchSizeAdaptationConfiguration;
 import com.hpe.caf.worker.document.config.DocumentWorkerConfiguration;
 import com.hpe.caf.worker.document.model.BatchSizeController;
+import com.hpe.caf.worker.document.util.BooleanFunctions;
+import java.lang.management.ManagementFactory;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
-public final class BatchSizeControllerImpl extends DocumentWorkerObjectImpl implements BatchSizeController
+import static com.hpe.caf.worker.document.util.ObjectFunctions.coalesce;
+
+public final class BatchSizeControllerImpl extends DocumentWorkerObjectImpl implements BatchSizeController, BatchSizeControllerMXBean
 {
+    private static final Logger LOG = LoggerFactory.getLogger(BatchSizeControllerImpl.class);
+
+    private static final String MBEAN_NAME = "com.hpe.caf.worker.document:type=BatchSizeController";
+
     private static final int DEFAULT_MAXIMUM_BATCH_SIZE = 100;
 
     private static final long DEFAULT_MAXIMUM_BATCH_TIME = 180000;
 
-    private int maxBatchSize;
+    private static final int DEFAULT_MINIMUM_BATCH_SIZE = 1;
+
+    private static final long DEFAULT_MINIMUM_BATCH_TIME = 1000;
+
+    private static final long DEFAULT_TARGET_PROCESSING_TIME = 5000;
+
+    private static final int DEFAULT_BATCH_SIZE_INCREMENT = 1;
+
+    private static final long DEFAULT_BATCH_TIME_INCREMENT = 1000;
+
+    private static final double DEFAULT_DECREASE_FACTOR = 0.5;
+
+    private final boolean isAdaptive;
+    private final int minBatchSize;
+    private final long minBatchTime;
+    private final long targetProcessingTime;
+    private final int batchSizeIncrement;
+    private final long batchTimeIncrement;
+    private final double decreaseFactor;
+
+    private volatile int batchSizeCeiling;
+    private volatile long batchTimeCeiling;
 
-    private long maxBatchTime;
+    private volatile int maxBatchSize;
+    private volatile long maxBatchTime;
+
+    private volatile long maxBatchBytes;
+
+    private volatile long batchCount;
+    private volatile int lastBatchSize;
+    private volatile double lastBatchFillRatio;
+    private volatile long lastBatchProcessingTime;
+    private volatile long batchSizeIncreaseCount;
+    private volatile long batchSizeDecreaseCount;
+    private volatile long batchTimeIncreaseCount;
+    private volatile long batchTimeDecreaseCount;
 
     public BatchSizeControllerImpl(final ApplicationImpl application, final DocumentWorkerConfiguration configuration)
     {
         super(application);
 
+        final BatchSizeAdaptationConfiguration adaptationConfig = coalesce(
+            configuration.getBatchSizeAdaptation(), new BatchSizeAdaptationConfiguration());
+
+        this.isAdaptive = BooleanFunctions.valueOf(adaptationConfig.getEnabled(), false);
+        this.minBatchSize = Math.max(coalesce(adaptationConfig.getMinBatchSize(), DEFAULT_MINIMUM_BATCH_SIZE), 1);
+        this.minBatchTime = Math.max(coalesce(adaptationConfig.getMinBatchTime(), DEFAULT_MINIMUM_BATCH_TIME), 1);
+        this.targetProcessingTime = coalesce(adaptationConfig.getTargetProcessingTime(), DEFAULT_TARGET_PROCESSING_TIME);
+        this.batchSizeIncrement = Math.max(coalesce(adaptationConfig.getBatchSizeIncrement(), DEFAULT_BATCH_SIZE_INCREMENT), 1);
+        this.batchTimeIncrement = Math.max(coalesce(adaptationConfig.getBatchTimeIncrement(), DEFAULT_BATCH_TIME_INCREMENT), 1);
+        this.decreaseFactor = getDecreaseFactor(adaptationConfig.getDecreaseFactor());
+
         setMaximumBatchSize(configuration.getMaxBatchSize());
         setMaximumBatchTime(configuration.getMaxBatchTime());
+        setMaximumBatchBytes(configuration.getMaxBatchBytes());
+    }
+
+    @Override
+    public boolean isAdaptive()
+    {
+        return isAdaptive;
     }
 
     @Override
@@ -49,14 +114,198 @@ public final class BatchSizeControllerImpl extends DocumentWorkerObjectImpl impl
     }
 
     @Override
-    public void setMaximumBatchSize(final int maxBatchSize)
+    public long getMaximumBatchBytes()
+    {
+        return maxBatchBytes;
+    }
+
+    @Override
+    public synchronized void setMaximumBatchSize(final int maxBatchSize)
+    {
+        this.batchSizeCeiling = (maxBatchSize > 0) ? maxBatchSize : DEFAULT_MAXIMUM_BATCH_SIZE;
+        this.maxBatchSize = batchSizeCeiling;
+    }
+
+    @Override
+    public synchronized void setMaximumBatchTime(final long maxBatchTime)
+    {
+        this.batchTimeCeiling = (maxBatchTime > 0) ? maxBatchTime : DEFAULT_MAXIMUM_BATCH_TIME;
+        this.maxBatchTime = batchTimeCeiling;
+    }
+
+    @Override
+    public void setMaximumBatchBytes(final long maxBatchBytes)
+    {
+        this.maxBatchBytes = (maxBatchBytes > 0) ? maxBatchBytes : 0;
+    }
+
+    @Override
+    public long getBatchCount()
+    {
+        return batchCount;
+    }
+
+    @Override
+    public int getLastBatchSize()
     {
-        this.maxBatchSize = (maxBatchSize > 0) ? maxBatchSize : DEFAULT_MAXIMUM_BATCH_SIZE;
+        return lastBatchSize;
     }
 
     @Override
-    public void setMaximumBatchTime(final long maxBatchTime)
+    public double getLastBatchFillRatio()
+    {
+        return lastBatchFillRatio;
+    }
+
+    @Override
+    public long getLastBatchProcessingTime()
+    {
+        return lastBatchProcessingTime;
+    }
+
+    @Override
+    public long getBatchSizeIncreaseCount()
+    {
+        return batchSizeIncreaseCount;
+    }
+
+    @Override
+    public long getBatchSizeDecreaseCount()
+    {
+        return batchSizeDecreaseCount;
+    }
+
+    @Override
+    public long getBatchTimeIncreaseCount()
+    {
+        return batchTimeIncreaseCount;
+    }
+
+    @Override
+    public long getBatchTimeDecreaseCount()
+    {
+        return batchTimeDecreaseCount;
+    }
+
+    /**
+     * Records the outcome of a batch and, if adaptive batching is enabled, adjusts the limits to be used for subsequent batches.
+     * <p>
+     * The limits are adjusted using additive-increase / multiplicative-decrease. If processing the batch took longer than the target
+     * time then the batch size is reduced, otherwise it is increased if the batch was full. The batch time is increased if the batch
+     * was full, and it is reduced if the batch was less than half full when the time limit was reached, but only if most of that time
+     * was spent waiting for tasks to arrive rather than in the worker, as otherwise it is the worker that is slow rather than the tasks
+     * that are sparse.
+     *
+     * @param batchSizeLimit the maximum batch size that was in effect for the batch
+     * @param batchTimeLimit the maximum batch time that was in effect for the batch
+     * @param documentCount the number of documents that were added to the batch
+     * @param buildTime the number of milliseconds between the first document being added and the batch being closed
+     * @param arrivalWaitTime the number of milliseconds of the build time that were spent waiting for more tasks
+     * @param processingTime the number of milliseconds that the worker spent processing the batch, not counting the time that it spent
+     * waiting for tasks
+     */
+    public synchronized void recordBatch(
+        final int batchSizeLimit,
+        final long batchTimeLimit,
+        final int documentCount,
+        final long buildTime,
+        final long arrivalWaitTime,
+        final long processingTime
+    )
+    {
+        // An empty batch says nothing about the throughput
+        if (documentCount == 0) {
+            return;
+        }
+
+        final boolean isFull = documentCount >= batchSizeLimit;
+        final double fillRatio = (double) documentCount / batchSizeLimit;
+
+        batchCount++;
+        lastBatchSize = documentCount;
+        lastBatchFillRatio = fillRatio;
+        lastBatchProcessingTime = processingTime;
+
+        if (!isAdaptive) {
+            return;
+        }
+
+        // Adjust the batch size based on how long it took to process
+        final int lowestBatchSize = Math.min(minBatchSize, batchSizeCeiling);
+        if (processingTime > targetProcessingTime) {
+            final int newBatchSize = Math.max((int) (maxBatchSize * decreaseFactor), lowestBatchSize);
+            if (newBatchSize < maxBatchSize) {
+                LOG.debug("Batch took {} ms to process; reducing maximum batch size from {} to {}",
+                          processingTime, maxBatchSize, newBatchSize);
+                maxBatchSize = newBatchSize;
+                batchSizeDecreaseCount++;
+            }
+        } else if (isFull) {
+            final int newBatchSize = (int) Math.min((long) maxBatchSize + batchSizeIncrement, batchSizeCeiling);
+            if (newBatchSize > maxBatchSize) {
+                LOG.debug("Batch was full; increasing maximum batch size from {} to {}", maxBatchSize, newBatchSize);
+                maxBatchSize = newBatchSize;
+                batchSizeIncreaseCount++;
+            }
+        }
+
+        // Adjust the batch time based on how full the batch was when it was closed
+        final long lowestBatchTime = Math.min(minBatchTime, batchTimeCeiling);
+        if (isFull) {
+            final long newBatchTime = Math.min(maxBatchTime + batchTimeIncrement, batchTimeCeiling);
+            if (newBatchTime > maxBatchTime) {
+                LOG.debug("Batch was full; increasing maximum batch time from {} ms to {} ms", maxBatchTime, newBatchTime);
+                maxBatchTime = newBatchTime;
+                batchTimeIncreaseCount++;
+            }
+        } else if (buildTime >= batchTimeLimit && fillRatio < 0.5 && arrivalWaitTime * 2 >= buildTime) {
+            final long newBatchTime = Math.max((long) (maxBatchTime * decreaseFactor), lowestBatchTime);
+            if (newBatchTime < maxBatchTime) {
+                LOG.debug("Batch was only {}% full after {} ms; reducing maximum batch time to {} ms",
+                          Math.round(fillRatio * 100), buildTime, newBatchTime);
+                maxBatchTime = newBatchTime;
+                batchTimeDecreaseCount++;
+            }
+        }
+    }
+
+    /**
+     * Registers this object with the platform MBean server so that its decisions can be monitored.
+     */
+    public void registerMBean()
+    {
+        try {
+            final MBeanServer mbeanServer = ManagementFactory.getPlatformMBeanServer();
+            final ObjectName objectName = new ObjectName(MBEAN_NAME);
+            if (mbeanServer.isRegistered(objectName)) {
+                mbeanServer.unregisterMBean(objectName);
+            }
+            mbeanServer.registerMBean(this, objectName);
+        } catch (final JMException ex) {
+            LOG.warn("Failed to register batch size controller metrics", ex);
+        }
+    }
+
+    /**
+     * Removes the batch size controller metrics from the platform MBean server.
+     */
+    public void unregisterMBean()
+    {
+        try {
+            final MBeanServer mbeanServer = ManagementFactory.getPlatformMBeanServer();
+            final ObjectName objectName = new ObjectName(MBEAN_NAME);
+            if (mbeanServer.isRegistered(objectName)) {
+                mbeanServer.unregisterMBean(objectName);
+            }
+        } catch (final JMException ex) {
+            LOG.warn("Failed to unregister batch size controller metrics", ex);
+        }
+    }
+
+    private static double getDecreaseFactor(final Double decreaseFactor)
     {
-        this.maxBatchTime = (maxBatchTime > 0) ? maxBatchTime : DEFAULT_MAXIMUM_BATCH_TIME;
+        return (decreaseFactor != null && decreaseFactor > 0 && decreaseFactor < 1)
+            ? decreaseFactor
+            : DEFAULT_DECREASE_FACTOR;
     }
 }
@@ -15,6 +15,7 @@
  */
 package com.hpe.caf.worker.document.impl;
 
+import com.hpe.caf.worker.document.exceptions.DocumentWorkerTransientException;
 import com.hpe.caf.worker.document.model.Document;
 import com.hpe.caf.worker.document.model.Failures;
 import com.hpe.caf.worker.document.model.Field;
@@ -107,6 +108,12 @@ public class DocumentImpl extends DocumentWorkerObjectImpl implements Document
         failures.add(failureId, failureMessage);
     }
 
+    @Override
+    public final void markTransientFailure(final DocumentWorkerTransientException failure)
+    {
+        documentTask.recordTransientFailure(Objects.requireNonNull(failure));
+    }
+
     @Override
     public Document getParentDocument()
     {
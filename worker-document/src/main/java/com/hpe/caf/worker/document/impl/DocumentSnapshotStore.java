@@ -0,0 +1,198 @@
+/*
+ * Copyright 2016-2019 Micro Focus or one of its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hpe.caf.worker.document.impl;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.Hashing;
+import com.hpe.caf.api.Codec;
+import com.hpe.caf.api.CodecException;
+import com.hpe.caf.api.DecodeMethod;
+import com.hpe.caf.api.worker.DataStore;
+import com.hpe.caf.api.worker.DataStoreException;
+import com.hpe.caf.worker.document.DocumentWorkerDocument;
+import com.hpe.caf.worker.document.config.DocumentSnapshotConfiguration;
+import com.hpe.caf.worker.document.views.ReadOnlyDocument;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Objects;
+import javax.annotation.Nonnull;
+import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Writes snapshots of effective documents to the data store, and reads them back through a local cache.
+ * <p>
+ * The data store chooses the storage reference, so it cannot be derived from the content of the snapshot. Instead, the digest of
+ * each snapshot written is cached locally, so that the same snapshot is not stored twice by this process (for example when a task is
+ * retried); other worker instances will still store their own copy. The decoded snapshots are cached by their storage reference so that
+ * retries and later tasks which refer to the same snapshot do not need to retrieve and decode it again.
+ * <p>
+ * Snapshots are only deleted if the store is configured to delete superseded snapshots. In that case each snapshot written belongs to
+ * a single response, so they are not shared between identical documents.
+ */
+public final class DocumentSnapshotStore
+{
+    private static final Logger LOG = LoggerFactory.getLogger(DocumentSnapshotStore.class);
+
+    private static final long DEFAULT_MAX_CACHE_BYTES = 64L * 1024 * 1024;
+    private static final long DIGEST_CACHE_SIZE = 1000;
+
+    private final DataStore dataStore;
+    private final Codec codec;
+    private final int minChangeLogEntries;
+    private final boolean deleteSuperseded;
+
+    /**
+     * The snapshots which have been read or written, keyed by their storage reference. Snapshots are only written for documents with
+     * long change logs, so they are weighed by their serialised size rather than simply being counted.
+     */
+    private final Cache<String, CachedSnapshot> snapshotsByReference;
+
+    /**
+     * The storage references of the snapshots which have been written, keyed by the digest of their content.
+     */
+    private final Cache<String, String> referencesByDigest;
+
+    public DocumentSnapshotStore(final DataStore dataStore, final Codec codec, final DocumentSnapshotConfiguration config)
+    {
+        this.dataStore = Objects.requireNonNull(dataStore);
+        this.codec = Objects.requireNonNull(codec);
+
+        final Integer configuredMinChangeLogEntries = (config == null) ? null : config.getMinChangeLogEntries();
+        this.minChangeLogEntries = (configuredMinChangeLogEntries == null) ? 0 : Math.max(configuredMinChangeLogEntries, 0);
+
+        this.deleteSuperseded = (config != null) && Boolean.TRUE.equals(config.getDeleteSuperseded());
+
+        final Long configuredMaxCacheBytes = (config == null) ? null : config.getMaxCacheBytes();
+        final long maxCacheBytes = (configuredMaxCacheBytes == null) ? DEFAULT_MAX_CACHE_BYTES : configuredMaxCacheBytes;
+        this.snapshotsByReference = CacheBuilder.newBuilder()
+            .concurrencyLevel(1)
+            .maximumWeight(maxCacheBytes)
+            .weigher((final String reference, final CachedSnapshot snapshot) -> snapshot.size)
+            .build();
+        this.referencesByDigest = CacheBuilder.newBuilder().maximumSize(DIGEST_CACHE_SIZE).build();
+    }
+
+    /**
+     * Checks whether a snapshot should be written for a document with a change log of the specified length.
+     *
+     * @param changeLogLength the number of entries in the document's change log
+     * @return true if a snapshot should be written
+     */
+    public boolean shouldWriteSnapshot(final int changeLogLength)
+    {
+        return minChangeLogEntries > 0 && changeLogLength >= minChangeLogEntries;
+    }
+
+    /**
+     * Writes a snapshot of the specified document to the data store, unless an identical snapshot has already been written by this
+     * process and superseded snapshots are not being deleted.
+     *
+     * @param document the document to write
+     * @return the storage reference of the snapshot
+     * @throws DataStoreException if the snapshot could not be stored
+     */
+    @Nonnull
+    public String writeSnapshot(final DocumentWorkerDocument document) throws DataStoreException
+    {
+        final byte[] data;
+        try {
+            data = codec.serialise(document);
+        } catch (final CodecException ex) {
+            throw new DataStoreException("Failed to serialise document snapshot", ex);
+        }
+
+        final String digest = Hashing.sha256().hashBytes(data).toString();
+
+        final String existingReference = deleteSuperseded ? null : referencesByDigest.getIfPresent(digest);
+        if (existingReference != null) {
+            return existingReference;
+        }
+
+        final String reference = dataStore.store(data, null);
+        if (!deleteSuperseded) {
+            referencesByDigest.put(digest, reference);
+        }
+        snapshotsByReference.put(reference, new CachedSnapshot(ReadOnlyDocument.create(document), data.length));
+
+        return reference;
+    }
+
+    /**
+     * Deletes a snapshot which is no longer referred to by the response being sent, if the store is configured to delete superseded
+     * snapshots. Failures are logged rather than reported, since the response does not depend on the snapshot.
+     *
+     * @param reference the storage reference of the superseded snapshot
+     */
+    public void deleteSupersededSnapshot(final String reference)
+    {
+        if (!deleteSuperseded) {
+            return;
+        }
+
+        snapshotsByReference.invalidate(reference);
+
+        try {
+            dataStore.delete(reference);
+        } catch (final DataStoreException ex) {
+            LOG.warn("Failed to delete superseded document snapshot {}", reference, ex);
+        }
+    }
+
+    /**
+     * Reads the snapshot with the specified storage reference, from the local cache if it is present there.
+     *
+     * @param reference the storage reference of the snapshot
+     * @return the document that the snapshot contains
+     * @throws DataStoreException if the snapshot could not be retrieved
+     * @throws CodecException if the snapshot could not be decoded
+     */
+    @Nonnull
+    public ReadOnlyDocument readSnapshot(final String reference) throws DataStoreException, CodecException
+    {
+        final CachedSnapshot cachedSnapshot = snapshotsByReference.getIfPresent(reference);
+        if (cachedSnapshot != null) {
+            return cachedSnapshot.document;
+        }
+
+        final byte[] data;
+        try (final InputStream stream = dataStore.retrieve(reference)) {
+            data = IOUtils.toByteArray(stream);
+        } catch (final IOException ex) {
+            throw new DataStoreException("Failed to read document snapshot " + reference, ex);
+        }
+
+        final DocumentWorkerDocument document = codec.deserialise(data, DocumentWorkerDocument.class, DecodeMethod.STRICT);
+        final ReadOnlyDocument snapshot = ReadOnlyDocument.create(document);
+        snapshotsByReference.put(reference, new CachedSnapshot(snapshot, data.length));
+
+        return snapshot;
+    }
+
+    private static final class CachedSnapshot
+    {
+        public final ReadOnlyDocument document;
+        public final int size;
+
+        public CachedSnapshot(final ReadOnlyDocument document, final int size)
+        {
+            this.document = document;
+            this.size = size;
+        }
+    }
+}
@@ -15,6 +15,7 @@
  */
 package com.hpe.caf.worker.document.impl;
 
+import com.hpe.caf.api.worker.DataStoreException;
 import com.hpe.caf.worker.document.DocumentWorkerAction;
 import com.hpe.caf.worker.document.DocumentWorkerFieldChanges;
 import com.hpe.caf.worker.document.DocumentWorkerFieldEncoding;
@@ -24,9 +25,14 @@ import com.hpe.caf.worker.document.model.Field;
 import com.hpe.caf.worker.document.model.FieldValues;
 import com.hpe.caf.worker.document.views.ReadOnlyFieldValue;
 import com.hpe.caf.worker.document.views.ReadOnlyFieldValues;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.stream.Collectors;
 import javax.annotation.Nonnull;
@@ -42,6 +48,8 @@ public final class FieldImpl extends DocumentWorkerObjectImpl implements Field
 
     private final DocumentWorkerFieldChanges fieldChanges;
 
+    private final Map<DocumentWorkerFieldValue, DocumentWorkerFieldValue> offloadedValues;
+
     public FieldImpl(final ApplicationImpl application, final DocumentImpl document, final String fieldName)
     {
         super(application);
@@ -49,6 +57,7 @@ public final class FieldImpl extends DocumentWorkerObjectImpl implements Field
         this.fieldName = Objects.requireNonNull(fieldName);
         this.initialFieldValues = getInitialFieldValues(document, fieldName);
         this.fieldChanges = createFieldChanges();
+        this.offloadedValues = new IdentityHashMap<>();
     }
 
     @Override
@@ -70,6 +79,21 @@ public final class FieldImpl extends DocumentWorkerObjectImpl implements Field
         fieldChanges.values.add(fieldValue);
     }
 
+    @Override
+    public void add(final InputStream data) throws IOException
+    {
+        Objects.requireNonNull(data);
+
+        final String reference;
+        try {
+            reference = application.getDataStore().store(data, null);
+        } catch (final DataStoreException ex) {
+            throw new IOException("Failed to store field value", ex);
+        }
+
+        addReference(reference);
+    }
+
     @Override
     public void addReference(final String dataRef)
     {
@@ -87,6 +111,13 @@ public final class FieldImpl extends DocumentWorkerObjectImpl implements Field
         fieldChanges.values.clear();
     }
 
+    @Nonnull
+    @Override
+    public OutputStream openOutputStream()
+    {
+        return new FieldValueOutputStream(application, this);
+    }
+
     @Nonnull
     @Override
     public Document getDocument()
@@ -133,8 +164,7 @@ public final class FieldImpl extends DocumentWorkerObjectImpl implements Field
     @Override
     public boolean hasChanges()
     {
-        return (fieldChanges.action == DocumentWorkerAction.replace)
-            || (!fieldChanges.values.isEmpty());
+        return getChanges() != null;
     }
 
     @Override
@@ -159,6 +189,22 @@ public final class FieldImpl extends DocumentWorkerObjectImpl implements Field
         add(data);
     }
 
+    @Override
+    public void set(final InputStream data) throws IOException
+    {
+        // Store the data before clearing the field so that the field is left unchanged if it cannot be stored
+        Objects.requireNonNull(data);
+
+        final String reference;
+        try {
+            reference = application.getDataStore().store(data, null);
+        } catch (final DataStoreException ex) {
+            throw new IOException("Failed to store field value", ex);
+        }
+
+        setReference(reference);
+    }
+
     @Override
     public void setReference(final String dataRef)
     {
@@ -175,14 +221,97 @@ public final class FieldImpl extends DocumentWorkerObjectImpl implements Field
 
     /**
      * Returns the changes made to the field, or null if no changes have been made.
+     * <p>
+     * The changes are compared with the initial values of the field, so replacing the values with the same values is not treated as a
+     * change, and replacing them with the same values followed by some new ones is treated as adding the new ones.
      *
      * @return the changes made to the field, or null if no changes have been made
      */
     public DocumentWorkerFieldChanges getChanges()
     {
-        return hasChanges()
-            ? fieldChanges
-            : null;
+        final List<DocumentWorkerFieldValue> values = fieldChanges.values;
+
+        if (fieldChanges.action == DocumentWorkerAction.add) {
+            return values.isEmpty() ? null : fieldChanges;
+        }
+
+        if (initialFieldValues.isEmpty()) {
+            return values.isEmpty() ? null : fieldChanges;
+        }
+
+        // Check whether the initial values have been put back at the start of the field
+        final int initialCount = initialFieldValues.size();
+        if (values.size() < initialCount) {
+            return fieldChanges;
+        }
+
+        for (int i = 0; i < initialCount; i++) {
+            if (!isSameValue(initialFieldValues.get(i), values.get(i))) {
+                return fieldChanges;
+            }
+        }
+
+        if (values.size() == initialCount) {
+            return null;
+        }
+
+        final DocumentWorkerFieldChanges addedValues = new DocumentWorkerFieldChanges();
+        addedValues.action = DocumentWorkerAction.add;
+        addedValues.values = new ArrayList<>(values.subList(initialCount, values.size()));
+
+        return addedValues;
+    }
+
+    private static boolean isSameValue(final ReadOnlyFieldValue initialValue, final DocumentWorkerFieldValue value)
+    {
+        final ReadOnlyFieldValue newValue = ReadOnlyFieldValue.create(value);
+
+        return initialValue.getEncoding() == newValue.getEncoding()
+            && initialValue.getData().equals(newValue.getData());
+    }
+
+    /**
+     * Returns a copy of the specified changes with any values which are too large to be included in the message replaced by
+     * references to copies of them in the data store. The field itself is left unchanged, and each value is only stored once even if
+     * the changes are recorded more than once.
+     *
+     * @param fieldValueStore the store to use for the large values
+     * @param changes the changes returned by {@link #getChanges()}
+     * @return the changes to include in the message
+     */
+    @Nonnull
+    DocumentWorkerFieldChanges offloadLargeValues(
+        final FieldValueStore fieldValueStore,
+        final DocumentWorkerFieldChanges changes
+    )
+    {
+        final List<DocumentWorkerFieldValue> values = changes.values;
+        if (values.stream().noneMatch(fieldValueStore::exceedsThreshold)) {
+            return changes;
+        }
+
+        final DocumentWorkerFieldChanges offloadedChanges = new DocumentWorkerFieldChanges();
+        offloadedChanges.action = changes.action;
+        offloadedChanges.values = new ArrayList<>(values.size());
+
+        for (final DocumentWorkerFieldValue value : values) {
+            offloadedChanges.values.add(fieldValueStore.exceedsThreshold(value)
+                ? offloadedValues.computeIfAbsent(value, largeValue -> tryStore(fieldValueStore, largeValue))
+                : value);
+        }
+
+        return offloadedChanges;
+    }
+
+    @Nonnull
+    private static DocumentWorkerFieldValue tryStore(
+        final FieldValueStore fieldValueStore,
+        final DocumentWorkerFieldValue value
+    )
+    {
+        final DocumentWorkerFieldValue storedValue = fieldValueStore.tryStore(value);
+
+        return (storedValue != null) ? storedValue : value;
     }
 
     @Nonnull
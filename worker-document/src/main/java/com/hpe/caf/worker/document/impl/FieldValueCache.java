@@ -0,0 +1,489 @@
+/*
+ * Copyright 2016-2019 Micro Focus or one of its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hpe.caf.worker.document.impl;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalCause;
+import com.google.common.cache.RemovalNotification;
+import com.hpe.caf.api.worker.DataStore;
+import com.hpe.caf.worker.document.config.FieldValueCacheConfiguration;
+import com.hpe.caf.worker.document.util.DataStoreFunctions;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collection;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import javax.annotation.Nonnull;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A read-through cache of referenced field values, which is shared by all of the documents processed by the worker.
+ * <p>
+ * The cache is bounded by the total size of the values that it holds, and values which are larger than a configured size are never
+ * cached. If a spill directory is configured then values evicted from memory are written to it, so that they can be read back
+ * without going to the data store again.
+ */
+public final class FieldValueCache implements FieldValueCacheMXBean
+{
+    private static final Logger LOG = LoggerFactory.getLogger(FieldValueCache.class);
+
+    private static final String MBEAN_NAME = "com.hpe.caf.worker.document:type=FieldValueCache";
+
+    private static final long DEFAULT_MAX_VALUE_BYTES = 1024 * 1024;
+
+    private static final long DEFAULT_MAX_SPILL_BYTES = 1024L * 1024 * 1024;
+
+    private final DataStore dataStore;
+    private final long maxBytes;
+    private final long maxValueBytes;
+
+    private final Cache<String, byte[]> memoryCache;
+
+    /**
+     * The directory that evicted values are written to, or null if values are not spilled to disk.
+     */
+    private final Path spillDirectory;
+
+    private final Cache<String, SpilledValue> spillCache;
+
+    /**
+     * The values which are currently being retrieved in advance, which readers wait for rather than retrieving them again.
+     */
+    private final ConcurrentMap<String, CompletableFuture<Void>> pendingPrefetches;
+
+    private final AtomicLong cachedBytes;
+    private final AtomicLong spilledBytes;
+    private final LongAdder hitCount;
+    private final LongAdder spillHitCount;
+    private final LongAdder missCount;
+    private final LongAdder uncachedCount;
+    private final LongAdder evictionCount;
+    private final LongAdder spillCount;
+    private final LongAdder prefetchCount;
+
+    public FieldValueCache(final DataStore dataStore, final FieldValueCacheConfiguration config)
+    {
+        this.dataStore = Objects.requireNonNull(dataStore);
+        this.maxBytes = config.getMaxBytes();
+        if (maxBytes <= 0) {
+            throw new IllegalArgumentException("The maximum cache size must be positive");
+        }
+
+        final Long configuredMaxValueBytes = config.getMaxValueBytes();
+        this.maxValueBytes = Math.min(
+            (configuredMaxValueBytes == null) ? DEFAULT_MAX_VALUE_BYTES : configuredMaxValueBytes,
+            Math.min(maxBytes, Integer.MAX_VALUE - 1));
+
+        // The caches are not segmented, as each segment would only get a share of the maximum weight, and values which were larger
+        // than that share would be evicted as soon as they were added
+        this.memoryCache = CacheBuilder.newBuilder()
+            .concurrencyLevel(1)
+            .maximumWeight(maxBytes)
+            .weigher((final String reference, final byte[] data) -> data.length)
+            .removalListener(this::onMemoryRemoval)
+            .build();
+
+        this.spillDirectory = createSpillDirectory(config.getSpillDirectory());
+
+        final Long configuredMaxSpillBytes = config.getMaxSpillBytes();
+        this.spillCache = (spillDirectory == null)
+            ? null
+            : CacheBuilder.newBuilder()
+                .concurrencyLevel(1)
+                .maximumWeight((configuredMaxSpillBytes == null) ? DEFAULT_MAX_SPILL_BYTES : configuredMaxSpillBytes)
+                .weigher((final String reference, final SpilledValue value) -> value.size)
+                .removalListener(this::onSpillRemoval)
+                .build();
+
+        this.pendingPrefetches = new ConcurrentHashMap<>();
+        this.cachedBytes = new AtomicLong();
+        this.spilledBytes = new AtomicLong();
+        this.hitCount = new LongAdder();
+        this.spillHitCount = new LongAdder();
+        this.missCount = new LongAdder();
+        this.uncachedCount = new LongAdder();
+        this.evictionCount = new LongAdder();
+        this.spillCount = new LongAdder();
+        this.prefetchCount = new LongAdder();
+    }
+
+    /**
+     * Opens a stream for reading the referenced value, from the cache if it is there or else from the data store.
+     *
+     * @param reference the reference to the value in the data store
+     * @return a new InputStream which can be used for reading the value
+     * @throws IOException if the value cannot be opened for reading
+     */
+    @Nonnull
+    public InputStream openInputStream(final String reference) throws IOException
+    {
+        // Wait for the value if it is already being retrieved in advance
+        final CompletableFuture<Void> pendingPrefetch = pendingPrefetches.get(reference);
+        if (pendingPrefetch != null) {
+            pendingPrefetch.join();
+        }
+
+        final byte[] cachedData = memoryCache.getIfPresent(reference);
+        if (cachedData != null) {
+            hitCount.increment();
+            return new ByteArrayInputStream(cachedData);
+        }
+
+        final byte[] spilledData = readSpilledValue(reference);
+        if (spilledData != null) {
+            spillHitCount.increment();
+            cacheValue(reference, spilledData);
+            return new ByteArrayInputStream(spilledData);
+        }
+
+        missCount.increment();
+        final InputStream stream = DataStoreFunctions.openInputStream(dataStore, reference);
+        try {
+            // Read just enough of the value to tell whether it is small enough to cache
+            final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+            IOUtils.copyLarge(stream, buffer, 0, maxValueBytes + 1);
+
+            if (buffer.size() > maxValueBytes) {
+                uncachedCount.increment();
+                return new SequenceInputStream(new ByteArrayInputStream(buffer.toByteArray()), stream);
+            }
+
+            stream.close();
+
+            final byte[] data = buffer.toByteArray();
+            cacheValue(reference, data);
+            return new ByteArrayInputStream(data);
+        } catch (final IOException | RuntimeException ex) {
+            IOUtils.closeQuietly(stream);
+            throw ex;
+        }
+    }
+
+    /**
+     * Retrieves the referenced value into the cache in the background, unless it is already cached or being retrieved.
+     *
+     * @param reference the reference to the value in the data store
+     * @param executor the executor to retrieve the value on
+     */
+    public void prefetch(final String reference, final Executor executor)
+    {
+        if (memoryCache.getIfPresent(reference) != null) {
+            return;
+        }
+
+        final CompletableFuture<Void> prefetch = new CompletableFuture<>();
+        if (pendingPrefetches.putIfAbsent(reference, prefetch) != null) {
+            return;
+        }
+
+        final PrefetchTask prefetchTask = new PrefetchTask(reference, prefetch);
+
+        try {
+            executor.execute(prefetchTask);
+        } catch (final RejectedExecutionException ex) {
+            prefetchTask.cancel();
+        }
+    }
+
+    /**
+     * Releases any readers waiting for prefetches which will now never be run, so that they retrieve the values themselves instead.
+     * This should be called with the tasks which were returned from {@link java.util.concurrent.ExecutorService#shutdownNow()} when
+     * the prefetch executor is shut down.
+     *
+     * @param drainedTasks the tasks which were removed from the prefetch executor's queue without being run
+     */
+    public void cancelPrefetches(final Collection<Runnable> drainedTasks)
+    {
+        for (final Runnable drainedTask : drainedTasks) {
+            if (drainedTask instanceof PrefetchTask) {
+                ((PrefetchTask) drainedTask).cancel();
+            }
+        }
+    }
+
+    /**
+     * Discards the cached values, including any which have been spilled to disk.
+     */
+    public void close()
+    {
+        memoryCache.invalidateAll();
+        if (spillCache != null) {
+            spillCache.invalidateAll();
+        }
+    }
+
+    @Override
+    public long getMaximumBytes()
+    {
+        return maxBytes;
+    }
+
+    @Override
+    public long getMaximumValueBytes()
+    {
+        return maxValueBytes;
+    }
+
+    @Override
+    public long getCachedBytes()
+    {
+        return cachedBytes.get();
+    }
+
+    @Override
+    public long getSpilledBytes()
+    {
+        return spilledBytes.get();
+    }
+
+    @Override
+    public long getHitCount()
+    {
+        return hitCount.sum();
+    }
+
+    @Override
+    public long getSpillHitCount()
+    {
+        return spillHitCount.sum();
+    }
+
+    @Override
+    public long getMissCount()
+    {
+        return missCount.sum();
+    }
+
+    @Override
+    public long getUncachedCount()
+    {
+        return uncachedCount.sum();
+    }
+
+    @Override
+    public long getEvictionCount()
+    {
+        return evictionCount.sum();
+    }
+
+    @Override
+    public long getSpillCount()
+    {
+        return spillCount.sum();
+    }
+
+    @Override
+    public long getPrefetchCount()
+    {
+        return prefetchCount.sum();
+    }
+
+    /**
+     * Registers this object with the platform MBean server so that the effectiveness of the cache can be monitored.
+     */
+    public void registerMBean()
+    {
+        try {
+            final MBeanServer mbeanServer = ManagementFactory.getPlatformMBeanServer();
+            final ObjectName objectName = new ObjectName(MBEAN_NAME);
+            if (mbeanServer.isRegistered(objectName)) {
+                mbeanServer.unregisterMBean(objectName);
+            }
+            mbeanServer.registerMBean(this, objectName);
+        } catch (final JMException ex) {
+            LOG.warn("Failed to register field value cache metrics", ex);
+        }
+    }
+
+    /**
+     * Removes the field value cache metrics from the platform MBean server.
+     */
+    public void unregisterMBean()
+    {
+        try {
+            final MBeanServer mbeanServer = ManagementFactory.getPlatformMBeanServer();
+            final ObjectName objectName = new ObjectName(MBEAN_NAME);
+            if (mbeanServer.isRegistered(objectName)) {
+                mbeanServer.unregisterMBean(objectName);
+            }
+        } catch (final JMException ex) {
+            LOG.warn("Failed to unregister field value cache metrics", ex);
+        }
+    }
+
+    private void prefetchValue(final String reference)
+    {
+        if (memoryCache.getIfPresent(reference) != null) {
+            return;
+        }
+
+        try (final InputStream stream = DataStoreFunctions.openInputStream(dataStore, reference)) {
+            final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+            IOUtils.copyLarge(stream, buffer, 0, maxValueBytes + 1);
+
+            // Values which are too large to cache are left to be read when they are needed
+            if (buffer.size() <= maxValueBytes) {
+                cacheValue(reference, buffer.toByteArray());
+                prefetchCount.increment();
+            }
+        } catch (final IOException | RuntimeException ex) {
+            LOG.debug("Failed to prefetch field value {}", reference, ex);
+        }
+    }
+
+    private void cacheValue(final String reference, final byte[] data)
+    {
+        cachedBytes.addAndGet(data.length);
+        memoryCache.put(reference, data);
+    }
+
+    private void onMemoryRemoval(final RemovalNotification<String, byte[]> notification)
+    {
+        final byte[] data = notification.getValue();
+        cachedBytes.addAndGet(-data.length);
+
+        if (notification.getCause() == RemovalCause.SIZE) {
+            evictionCount.increment();
+            if (spillCache != null) {
+                spillValue(notification.getKey(), data);
+            }
+        }
+    }
+
+    private void spillValue(final String reference, final byte[] data)
+    {
+        try {
+            final Path path = Files.createTempFile(spillDirectory, "field-value-", ".bin");
+            Files.write(path, data);
+
+            spilledBytes.addAndGet(data.length);
+            spillCache.put(reference, new SpilledValue(path, data.length));
+            spillCount.increment();
+        } catch (final IOException ex) {
+            LOG.warn("Failed to spill cached field value to disk", ex);
+        }
+    }
+
+    private byte[] readSpilledValue(final String reference)
+    {
+        if (spillCache == null) {
+            return null;
+        }
+
+        final SpilledValue spilledValue = spillCache.getIfPresent(reference);
+        if (spilledValue == null) {
+            return null;
+        }
+
+        // The value is moved back into memory, so the spilled copy is no longer needed
+        try {
+            return Files.readAllBytes(spilledValue.path);
+        } catch (final IOException ex) {
+            LOG.debug("Failed to read spilled field value", ex);
+            return null;
+        } finally {
+            spillCache.invalidate(reference);
+        }
+    }
+
+    private void onSpillRemoval(final RemovalNotification<String, SpilledValue> notification)
+    {
+        final SpilledValue spilledValue = notification.getValue();
+        spilledBytes.addAndGet(-spilledValue.size);
+
+        try {
+            Files.deleteIfExists(spilledValue.path);
+        } catch (final IOException ex) {
+            LOG.warn("Failed to delete spilled field value {}", spilledValue.path, ex);
+        }
+    }
+
+    private static Path createSpillDirectory(final String spillDirectory)
+    {
+        if (spillDirectory == null || spillDirectory.isEmpty()) {
+            return null;
+        }
+
+        try {
+            return Files.createDirectories(Paths.get(spillDirectory));
+        } catch (final IOException ex) {
+            LOG.warn("Failed to create field value spill directory {}; values will not be spilled to disk", spillDirectory, ex);
+            return null;
+        }
+    }
+
+    private final class PrefetchTask implements Runnable
+    {
+        private final String reference;
+        private final CompletableFuture<Void> prefetch;
+
+        public PrefetchTask(final String reference, final CompletableFuture<Void> prefetch)
+        {
+            this.reference = reference;
+            this.prefetch = prefetch;
+        }
+
+        @Override
+        public void run()
+        {
+            try {
+                prefetchValue(reference);
+            } finally {
+                cancel();
+            }
+        }
+
+        /**
+         * Stops readers from waiting for this prefetch.
+         */
+        public void cancel()
+        {
+            pendingPrefetches.remove(reference, prefetch);
+            prefetch.complete(null);
+        }
+    }
+
+    private static final class SpilledValue
+    {
+        public final Path path;
+        public final int size;
+
+        public SpilledValue(final Path path, final int size)
+        {
+            this.path = path;
+            this.size = size;
+        }
+    }
+}
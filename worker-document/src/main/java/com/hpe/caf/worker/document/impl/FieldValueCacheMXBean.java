@@ -0,0 +1,44 @@
+/*
+ * Copyright 2016-2019 Micro Focus or one of its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hpe.caf.worker.document.impl;
+
+/**
+ * Exposes the effectiveness of the referenced field value cache for monitoring.
+ */
+public interface FieldValueCacheMXBean
+{
+    long getMaximumBytes();
+
+    long getMaximumValueBytes();
+
+    long getCachedBytes();
+
+    long getSpilledBytes();
+
+    long getHitCount();
+
+    long getSpillHitCount();
+
+    long getMissCount();
+
+    long getUncachedCount();
+
+    long getEvictionCount();
+
+    long getSpillCount();
+
+    long getPrefetchCount();
+}
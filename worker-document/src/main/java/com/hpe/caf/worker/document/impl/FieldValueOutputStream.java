@@ -0,0 +1,100 @@
+/*
+ * Copyright 2016-2019 Micro Focus or one of its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hpe.caf.worker.document.impl;
+
+import com.google.common.io.FileBackedOutputStream;
+import com.hpe.caf.api.worker.DataStoreException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * A stream for writing a new field value, which stores the value in the data store and adds a reference to it to the field when it is
+ * closed.
+ * <p>
+ * The data written is buffered in memory up to a limit, after which it is written to a temporary file, so that large values are not
+ * held in memory.
+ */
+final class FieldValueOutputStream extends OutputStream
+{
+    private static final int MEMORY_THRESHOLD = 64 * 1024;
+
+    private final ApplicationImpl application;
+    private final FieldImpl field;
+    private final FileBackedOutputStream buffer;
+    private boolean isClosed;
+
+    public FieldValueOutputStream(final ApplicationImpl application, final FieldImpl field)
+    {
+        this.application = application;
+        this.field = field;
+        this.buffer = new FileBackedOutputStream(MEMORY_THRESHOLD, true);
+        this.isClosed = false;
+    }
+
+    @Override
+    public void write(final int b) throws IOException
+    {
+        ensureOpen();
+        buffer.write(b);
+    }
+
+    @Override
+    public void write(final byte[] b, final int off, final int len) throws IOException
+    {
+        ensureOpen();
+        buffer.write(b, off, len);
+    }
+
+    @Override
+    public void flush() throws IOException
+    {
+        ensureOpen();
+        buffer.flush();
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        if (isClosed) {
+            return;
+        }
+        isClosed = true;
+
+        try {
+            buffer.close();
+
+            final String reference;
+            try (final InputStream data = buffer.asByteSource().openStream()) {
+                reference = application.getDataStore().store(data, null);
+            } catch (final DataStoreException ex) {
+                throw new IOException("Failed to store field value", ex);
+            }
+
+            field.addReference(reference);
+        } finally {
+            // Delete the temporary file if one was used
+            buffer.reset();
+        }
+    }
+
+    private void ensureOpen() throws IOException
+    {
+        if (isClosed) {
+            throw new IOException("Stream closed");
+        }
+    }
+}
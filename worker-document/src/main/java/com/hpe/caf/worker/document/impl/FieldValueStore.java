@@ -0,0 +1,179 @@
+/*
+ * Copyright 2016-2019 Micro Focus or one of its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hpe.caf.worker.document.impl;
+
+import com.hpe.caf.api.worker.DataStore;
+import com.hpe.caf.api.worker.DataStoreException;
+import com.hpe.caf.worker.document.DocumentWorkerFieldEncoding;
+import com.hpe.caf.worker.document.DocumentWorkerFieldValue;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.Objects;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import org.apache.commons.codec.binary.Base64;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Stores field values which are too large to be included in the response message in the data store, so that they can be passed on
+ * as references instead. Values are only offloaded when the response is built, so the document model always holds them inline.
+ */
+public final class FieldValueStore implements FieldValueStoreMXBean
+{
+    private static final Logger LOG = LoggerFactory.getLogger(FieldValueStore.class);
+
+    private static final String MBEAN_NAME = "com.hpe.caf.worker.document:type=FieldValueStore";
+
+    private final DataStore dataStore;
+    private final long threshold;
+    private final LongAdder storedCount;
+    private final LongAdder storedBytes;
+    private final LongAdder failedCount;
+
+    public FieldValueStore(final DataStore dataStore, final long threshold)
+    {
+        if (threshold <= 0) {
+            throw new IllegalArgumentException("The threshold must be positive");
+        }
+
+        this.dataStore = Objects.requireNonNull(dataStore);
+        this.threshold = threshold;
+        this.storedCount = new LongAdder();
+        this.storedBytes = new LongAdder();
+        this.failedCount = new LongAdder();
+    }
+
+    /**
+     * Checks whether a field value should be stored rather than included in the message.
+     * <p>
+     * String values are measured by the length of their UTF-8 encoding, and binary values by the length of their base64 encoding,
+     * since that is what would be included in the message. The length of a string can be used to quickly rule out most values
+     * without encoding them, since each character is encoded using at most three bytes.
+     *
+     * @param fieldValue the field value
+     * @return true if the value is included inline and is larger than the threshold
+     */
+    public boolean exceedsThreshold(final DocumentWorkerFieldValue fieldValue)
+    {
+        final String data = fieldValue.data;
+        if (data == null || data.length() <= threshold / 3) {
+            return false;
+        }
+
+        final DocumentWorkerFieldEncoding encoding = fieldValue.encoding;
+        if (encoding == DocumentWorkerFieldEncoding.storage_ref) {
+            return false;
+        }
+
+        final long size = (encoding == DocumentWorkerFieldEncoding.base64)
+            ? data.length()
+            : data.getBytes(StandardCharsets.UTF_8).length;
+
+        return size > threshold;
+    }
+
+    /**
+     * Stores the field value in the data store.
+     *
+     * @param fieldValue the field value to store
+     * @return a {@code storage_ref} field value referencing the stored value, or null if it could not be stored, in which case it
+     * should be included in the message instead
+     */
+    public DocumentWorkerFieldValue tryStore(final DocumentWorkerFieldValue fieldValue)
+    {
+        final byte[] data = (fieldValue.encoding == DocumentWorkerFieldEncoding.base64)
+            ? Base64.decodeBase64(fieldValue.data)
+            : fieldValue.data.getBytes(StandardCharsets.UTF_8);
+
+        final String reference;
+        try {
+            reference = dataStore.store(data, null);
+        } catch (final DataStoreException ex) {
+            LOG.warn("Failed to store field value of {} bytes; including it in the message instead", data.length, ex);
+            failedCount.increment();
+            return null;
+        }
+
+        storedCount.increment();
+        storedBytes.add(data.length);
+
+        final DocumentWorkerFieldValue storedValue = new DocumentWorkerFieldValue();
+        storedValue.data = reference;
+        storedValue.encoding = DocumentWorkerFieldEncoding.storage_ref;
+
+        return storedValue;
+    }
+
+    @Override
+    public long getThreshold()
+    {
+        return threshold;
+    }
+
+    @Override
+    public long getStoredCount()
+    {
+        return storedCount.sum();
+    }
+
+    @Override
+    public long getStoredBytes()
+    {
+        return storedBytes.sum();
+    }
+
+    @Override
+    public long getFailedCount()
+    {
+        return failedCount.sum();
+    }
+
+    /**
+     * Registers this object with the platform MBean server so that the values being stored can be monitored.
+     */
+    public void registerMBean()
+    {
+        try {
+            final MBeanServer mbeanServer = ManagementFactory.getPlatformMBeanServer();
+            final ObjectName objectName = new ObjectName(MBEAN_NAME);
+            if (mbeanServer.isRegistered(objectName)) {
+                mbeanServer.unregisterMBean(objectName);
+            }
+            mbeanServer.registerMBean(this, objectName);
+        } catch (final JMException ex) {
+            LOG.warn("Failed to register field value store metrics", ex);
+        }
+    }
+
+    /**
+     * Removes the field value store metrics from the platform MBean server.
+     */
+    public void unregisterMBean()
+    {
+        try {
+            final MBeanServer mbeanServer = ManagementFactory.getPlatformMBeanServer();
+            final ObjectName objectName = new ObjectName(MBEAN_NAME);
+            if (mbeanServer.isRegistered(objectName)) {
+                mbeanServer.unregisterMBean(objectName);
+            }
+        } catch (final JMException ex) {
+            LOG.warn("Failed to unregister field value store metrics", ex);
+        }
+    }
+}
@@ -102,6 +102,7 @@ public final class FieldsImpl extends DocumentWorkerObjectImpl implements Fields
      */
     public void recordChanges(final ChangesJournal journal)
     {
+        final FieldValueStore fieldValueStore = application.getFieldValueStore();
         final Map<String, DocumentWorkerFieldChanges> changes = new HashMap<>();
 
         for (final FieldImpl field : fields.values()) {
@@ -109,7 +110,10 @@ public final class FieldsImpl extends DocumentWorkerObjectImpl implements Fields
             final DocumentWorkerFieldChanges fieldChanges = field.getChanges();
 
             if (fieldChanges != null) {
-                changes.put(field.getName(), fieldChanges);
+                // Large values are only stored once it is known that they are actually being changed
+                changes.put(field.getName(), (fieldValueStore == null)
+                            ? fieldChanges
+                            : field.offloadLargeValues(fieldValueStore, fieldChanges));
             }
         }
 
@@ -18,6 +18,7 @@ package com.hpe.caf.worker.document.impl;
 import com.hpe.caf.api.Codec;
 import com.hpe.caf.api.CodecException;
 import com.hpe.caf.api.DecodeMethod;
+import com.hpe.caf.api.worker.DataStoreException;
 import com.hpe.caf.api.worker.InvalidTaskException;
 import com.hpe.caf.api.worker.TaskRejectedException;
 import com.hpe.caf.api.worker.WorkerTaskData;
@@ -28,10 +29,14 @@ import com.hpe.caf.worker.document.config.InputMessageConfiguration;
 import com.hpe.caf.worker.document.exceptions.InvalidChangeLogException;
 import com.hpe.caf.worker.document.exceptions.InvalidScriptException;
 import com.hpe.caf.worker.document.model.InputMessageProcessor;
+import com.hpe.caf.worker.document.output.RawDocumentTaskSections;
+import com.hpe.caf.worker.document.output.StreamingResultSerialiser;
 import com.hpe.caf.worker.document.tasks.AbstractTask;
 import com.hpe.caf.worker.document.tasks.DocumentTask;
 import com.hpe.caf.worker.document.tasks.FieldEnrichmentTask;
 import com.hpe.caf.worker.document.util.BooleanFunctions;
+import com.hpe.caf.worker.document.views.ReadOnlyDocument;
+import java.io.IOException;
 import java.util.Set;
 import javax.annotation.Nonnull;
 import javax.validation.ConstraintViolation;
@@ -134,10 +139,22 @@ public class InputMessageProcessorImpl extends DocumentWorkerObjectImpl implemen
             return FieldEnrichmentTask.create(application, workerTask, documentWorkerTask);
         } else if (documentTasksAccepted && DocumentWorkerConstants.DOCUMENT_TASK_NAME.equals(classifier)) {
             final byte[] data = validateVersionAndData(workerTask, DocumentWorkerConstants.DOCUMENT_TASK_API_VER);
-            final DocumentWorkerDocumentTask documentWorkerDocumentTask
-                = TaskValidator.deserialiseAndValidateTask(codec, DocumentWorkerDocumentTask.class, data);
+            final StreamingResultSerialiser streamingResultSerialiser = application.getStreamingResultSerialiser();
+            final DocumentWorkerDocumentTask documentWorkerDocumentTask;
+            final RawDocumentTaskSections rawSections;
+            if (streamingResultSerialiser == null) {
+                documentWorkerDocumentTask = TaskValidator.deserialiseAndValidateTask(codec, DocumentWorkerDocumentTask.class, data);
+                rawSections = null;
+            } else {
+                // The sections which can be copied into the result as they are get located while the task is being deserialised
+                final StreamingResultSerialiser.DeserialisedTask deserialisedTask
+                    = TaskValidator.deserialiseAndValidateTask(streamingResultSerialiser, data);
+                documentWorkerDocumentTask = deserialisedTask.getTask();
+                rawSections = deserialisedTask.getRawSections();
+            }
+            final ReadOnlyDocument baseDocument = getBaseDocument(documentWorkerDocumentTask);
             try {
-                return DocumentTask.create(application, workerTask, documentWorkerDocumentTask);
+                return DocumentTask.create(application, workerTask, documentWorkerDocumentTask, baseDocument, rawSections);
             } catch (final InvalidChangeLogException ex) {
                 throw new InvalidTaskException("Invalid change log", ex);
             } catch (InvalidScriptException ex) {
@@ -148,6 +165,32 @@ public class InputMessageProcessorImpl extends DocumentWorkerObjectImpl implemen
         }
     }
 
+    /**
+     * Returns the document that the change log in the specified task should be applied to, which is read from the data store if the
+     * task refers to a document snapshot.
+     */
+    @Nonnull
+    private ReadOnlyDocument getBaseDocument(final DocumentWorkerDocumentTask documentTask)
+        throws InvalidTaskException, TaskRejectedException
+    {
+        final String snapshotReference = documentTask.documentSnapshot;
+        if (snapshotReference == null) {
+            return ReadOnlyDocument.create(documentTask.document);
+        }
+
+        if (documentTask.document != null) {
+            throw new InvalidTaskException("Invalid input message: both document and documentSnapshot specified");
+        }
+
+        try {
+            return application.getDocumentSnapshotStore().readSnapshot(snapshotReference);
+        } catch (final DataStoreException ex) {
+            throw new TaskRejectedException("Failed to retrieve document snapshot " + snapshotReference, ex);
+        } catch (final CodecException ex) {
+            throw new InvalidTaskException("Invalid document snapshot " + snapshotReference, ex);
+        }
+    }
+
     @Nonnull
     private static byte[] validateVersionAndData(final WorkerTaskData workerTask, final int workerApiVersion)
         throws InvalidTaskException, TaskRejectedException
@@ -189,6 +232,36 @@ public class InputMessageProcessorImpl extends DocumentWorkerObjectImpl implemen
                 throw new InvalidTaskException("Invalid input message", e);
             }
 
+            validateTask(taskType, documentWorkerTask);
+
+            return documentWorkerTask;
+        }
+
+        /**
+         * Deserialise the given data into a document task using the streaming result serialiser, and validate that any constraints
+         * specified have been met.
+         */
+        @Nonnull
+        public static StreamingResultSerialiser.DeserialisedTask deserialiseAndValidateTask(
+            final StreamingResultSerialiser streamingResultSerialiser,
+            final byte[] data
+        ) throws InvalidTaskException
+        {
+            final StreamingResultSerialiser.DeserialisedTask deserialisedTask;
+            try {
+                deserialisedTask = streamingResultSerialiser.deserialiseTask(data);
+            } catch (final IOException e) {
+                throw new InvalidTaskException("Invalid input message", e);
+            }
+
+            validateTask(DocumentWorkerDocumentTask.class, deserialisedTask.getTask());
+
+            return deserialisedTask;
+        }
+
+        private static <T> void validateTask(final Class<T> taskType, final T documentWorkerTask)
+            throws InvalidTaskException
+        {
             if (documentWorkerTask == null) {
                 throw new InvalidTaskException("Invalid input message: no result from deserialisation");
             }
@@ -198,8 +271,6 @@ public class InputMessageProcessorImpl extends DocumentWorkerObjectImpl implemen
                 LOG.error("Task of type {} failed validation due to: {}", taskType.getSimpleName(), violations);
                 throw new InvalidTaskException("Task failed validation");
             }
-
-            return documentWorkerTask;
         }
     }
 }
@@ -20,6 +20,8 @@ import com.hpe.caf.worker.document.exceptions.InvalidScriptException;
 import com.hpe.caf.worker.document.model.Script;
 import com.hpe.caf.worker.document.model.Task;
 import com.hpe.caf.worker.document.scripting.JavaScriptManager;
+import com.hpe.caf.worker.document.scripting.ScriptFunction;
+import com.hpe.caf.worker.document.scripting.events.ScriptEvent;
 import com.hpe.caf.worker.document.scripting.specs.AbstractScriptSpec;
 import com.hpe.caf.worker.document.scripting.specs.InlineScriptSpec;
 import com.hpe.caf.worker.document.scripting.specs.StorageRefScriptSpec;
@@ -33,10 +35,11 @@ import javax.annotation.Nonnull;
 import javax.script.Bindings;
 import javax.script.CompiledScript;
 import javax.script.ScriptException;
-import jdk.nashorn.api.scripting.JSObject;
 
 public final class ScriptImpl extends DocumentWorkerObjectImpl implements Script
 {
+    private static final ScriptEvent[] EVENTS = ScriptEvent.values();
+
     private final AbstractTask task;
 
     private int lastKnownIndex;
@@ -45,6 +48,12 @@ public final class ScriptImpl extends DocumentWorkerObjectImpl implements Script
     private boolean isInstalled;
     private Bindings loadedScriptBindings;
 
+    /**
+     * The event handlers of the loaded script. These are read by the threads that process the documents, which may not be the thread
+     * that loaded the script, so they are published together through a volatile field.
+     */
+    private volatile EventHandlers eventHandlers;
+
     public ScriptImpl(
         final ApplicationImpl application,
         final AbstractTask task
@@ -57,6 +66,7 @@ public final class ScriptImpl extends DocumentWorkerObjectImpl implements Script
         this.scriptSpec = null;
         this.isInstalled = false;
         this.loadedScriptBindings = null;
+        this.eventHandlers = EventHandlers.NONE;
     }
 
     public ScriptImpl(
@@ -147,8 +157,8 @@ public final class ScriptImpl extends DocumentWorkerObjectImpl implements Script
         // Get the object code for the script
         final CompiledScript scriptObjectCode = javaScriptManager.getObjectCode(name, scriptSpec);
 
-        // Create a new global context for the script to run in
-        final Bindings newGlobal = javaScriptManager.createNewGlobal();
+        // Get a global context for the script to run in (this may be one that was previously used for the same script)
+        final Bindings newGlobal = javaScriptManager.acquireGlobal(name, scriptSpec);
 
         // Add a reference to this script object into the script's global context
         newGlobal.put("thisScript", this);
@@ -166,6 +176,9 @@ public final class ScriptImpl extends DocumentWorkerObjectImpl implements Script
             loadedScriptBindings = null;
             throw ex;
         }
+
+        // Look up the event handlers now so that they don't have to be looked up each time an event is raised
+        resolveEventHandlers(javaScriptManager, newGlobal);
     }
 
     @Override
@@ -216,7 +229,45 @@ public final class ScriptImpl extends DocumentWorkerObjectImpl implements Script
     @Override
     public void unload()
     {
+        // The global context is not returned to the pool here as one of the script's own event handlers may still be running in it
+        unloadImpl();
+    }
+
+    /**
+     * Unloads the script and returns its global context so that it can be reused the next time the script is loaded. This must only
+     * be called once the task has been completed and none of the script's event handlers can still be running.
+     */
+    void unloadAndRelease()
+    {
+        final Bindings bindings = loadedScriptBindings;
+        if (bindings == null) {
+            return;
+        }
+
+        unloadImpl();
+
+        application.getJavaScriptManager().releaseGlobal(name, scriptSpec, bindings);
+    }
+
+    private void unloadImpl()
+    {
+        if (loadedScriptBindings == null) {
+            return;
+        }
+
         loadedScriptBindings = null;
+        eventHandlers = EventHandlers.NONE;
+        task.getScripts().eventHandlersChanged();
+    }
+
+    /**
+     * Returns the set of events which this script has handlers for.
+     *
+     * @return the combined masks of the events which the script handles, or 0 if the script is not loaded
+     */
+    public int getEventHandlerMask()
+    {
+        return eventHandlers.mask;
     }
 
     /**
@@ -227,28 +278,34 @@ public final class ScriptImpl extends DocumentWorkerObjectImpl implements Script
      * @param event the event to raise
      * @param args the arguments to be passed to the event
      */
-    public void raiseEvent(final String event, final Object... args)
+    public void raiseEvent(final ScriptEvent event, final Object... args)
     {
-        // Check that the script is loaded
-        final Bindings bindings = loadedScriptBindings;
-        if (bindings == null) {
+        // Check that the script is loaded and has a handler for the event
+        final ScriptFunction eventHandler = eventHandlers.handlers[event.ordinal()];
+        if (eventHandler == null) {
             return;
         }
 
-        // Check if there is a JavaScript function event handler for the event
-        final Object eventHandler = bindings.get(event);
-        if (!(eventHandler instanceof JSObject)) {
-            return;
-        }
+        // Call the JavaScript function with the specified arguments
+        // The script engine wraps checked exceptions in a RuntimeException
+        eventHandler.call(args);
+    }
 
-        final JSObject jsEventHandler = (JSObject) eventHandler;
-        if (!jsEventHandler.isFunction()) {
-            return;
+    private void resolveEventHandlers(final JavaScriptManager javaScriptManager, final Bindings bindings)
+    {
+        final ScriptFunction[] handlers = new ScriptFunction[EVENTS.length];
+        int mask = 0;
+
+        for (final ScriptEvent event : EVENTS) {
+            final ScriptFunction eventHandler = javaScriptManager.getFunction(bindings, event.getHandlerName());
+            if (eventHandler != null) {
+                handlers[event.ordinal()] = eventHandler;
+                mask |= event.getMask();
+            }
         }
 
-        // Call the JavaScript function with the specified arguments
-        // Nashorn automatically wraps checked exceptions in a RuntimeException
-        jsEventHandler.call(null, args);
+        eventHandlers = new EventHandlers(handlers, mask);
+        task.getScripts().eventHandlersChanged();
     }
 
     public boolean shouldIncludeInResponse()
@@ -262,4 +319,18 @@ public final class ScriptImpl extends DocumentWorkerObjectImpl implements Script
             ? null
             : scriptSpec.toDocumentWorkerScript(name);
     }
+
+    private static final class EventHandlers
+    {
+        public static final EventHandlers NONE = new EventHandlers(new ScriptFunction[EVENTS.length], 0);
+
+        public final ScriptFunction[] handlers;
+        public final int mask;
+
+        public EventHandlers(final ScriptFunction[] handlers, final int mask)
+        {
+            this.handlers = handlers;
+            this.mask = mask;
+        }
+    }
 }
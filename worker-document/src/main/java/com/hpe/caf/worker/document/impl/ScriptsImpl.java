@@ -20,13 +20,13 @@ import com.hpe.caf.worker.document.exceptions.InvalidScriptException;
 import com.hpe.caf.worker.document.model.Script;
 import com.hpe.caf.worker.document.model.Scripts;
 import com.hpe.caf.worker.document.model.Task;
+import com.hpe.caf.worker.document.scripting.events.ScriptEvent;
 import com.hpe.caf.worker.document.tasks.AbstractTask;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Objects;
 import java.util.function.BooleanSupplier;
-import java.util.function.Consumer;
 import java.util.stream.Stream;
 import javax.annotation.Nonnull;
 import javax.script.ScriptException;
@@ -37,6 +37,12 @@ public final class ScriptsImpl extends DocumentWorkerObjectImpl implements Scrip
 
     private final ArrayList<ScriptImpl> scripts;
 
+    /**
+     * The combined masks of the events which any of the loaded scripts have handlers for. This is volatile as it is read by the threads
+     * that process the documents.
+     */
+    private volatile int eventHandlerMask;
+
     public ScriptsImpl(
         final ApplicationImpl application,
         final AbstractTask task
@@ -45,6 +51,7 @@ public final class ScriptsImpl extends DocumentWorkerObjectImpl implements Scrip
         super(application);
         this.task = Objects.requireNonNull(task);
         this.scripts = createEmptyScriptList();
+        this.eventHandlerMask = 0;
     }
 
     public ScriptsImpl(
@@ -56,6 +63,7 @@ public final class ScriptsImpl extends DocumentWorkerObjectImpl implements Scrip
         super(application);
         this.task = Objects.requireNonNull(task);
         this.scripts = createScriptList(application, task, scripts);
+        this.eventHandlerMask = 0;
     }
 
     @Nonnull
@@ -163,6 +171,26 @@ public final class ScriptsImpl extends DocumentWorkerObjectImpl implements Scrip
         }
     }
 
+    /**
+     * Checks whether any of the loaded scripts have a handler for the specified event.
+     *
+     * @param event the event to check for
+     * @return true if raising the event would call at least one event handler
+     */
+    public boolean hasEventHandlers(final ScriptEvent event)
+    {
+        return (eventHandlerMask & event.getMask()) != 0;
+    }
+
+    /**
+     * Unloads all of the scripts and returns their global contexts so that they can be reused by later tasks. This must only be
+     * called once the task has been completed.
+     */
+    public void unloadAll()
+    {
+        scripts.forEach(ScriptImpl::unloadAndRelease);
+    }
+
     /**
      * Raises the specified event in all loaded scripts.
      *
@@ -170,9 +198,9 @@ public final class ScriptsImpl extends DocumentWorkerObjectImpl implements Scrip
      * @param useReverseOrder controls the order in which the loaded scripts are called
      * @param args the arguments to be passed to the specified event
      */
-    public void raiseEvent(final String event, final boolean useReverseOrder, final Object... args)
+    public void raiseEvent(final ScriptEvent event, final boolean useReverseOrder, final Object... args)
     {
-        raiseEventUntil(event, useReverseOrder, () -> false, args);
+        raiseEventUntil(event, useReverseOrder, null, args);
     }
 
     /**
@@ -180,22 +208,40 @@ public final class ScriptsImpl extends DocumentWorkerObjectImpl implements Scrip
      *
      * @param event the event to be raised
      * @param useReverseOrder controls the order in which the loaded scripts are called
-     * @param condition a condition which causes the event to stop being raised in the remaining scripts
+     * @param condition a condition which causes the event to stop being raised in the remaining scripts, or null to raise the event
+     * in all of the loaded scripts
      * @param args the arguments to be passed to the specified event
      */
-    public void raiseEventUntil(final String event, final boolean useReverseOrder, final BooleanSupplier condition, final Object... args)
+    public void raiseEventUntil(
+        final ScriptEvent event,
+        final boolean useReverseOrder,
+        final BooleanSupplier condition,
+        final Object... args
+    )
     {
-        final Consumer<ScriptImpl> raiseEventAction = script -> {
-            script.raiseEvent(event, args);
-        };
+        if (!hasEventHandlers(event)) {
+            return;
+        }
 
         if (useReverseOrder) {
-            reverseForEachScriptUntil(raiseEventAction, condition);
+            reverseRaiseEventUntil(event, condition, args);
         } else {
-            forEachScriptUntil(raiseEventAction, condition);
+            forwardRaiseEventUntil(event, condition, args);
         }
     }
 
+    /**
+     * Recalculates which events the loaded scripts have handlers for. This is called by the scripts when they are loaded or unloaded.
+     */
+    void eventHandlersChanged()
+    {
+        int mask = 0;
+        for (final ScriptImpl script : scripts) {
+            mask |= script.getEventHandlerMask();
+        }
+        eventHandlerMask = mask;
+    }
+
     @Nonnull
     private static ArrayList<ScriptImpl> createEmptyScriptList()
     {
@@ -225,14 +271,16 @@ public final class ScriptsImpl extends DocumentWorkerObjectImpl implements Scrip
     }
 
     /**
-     * Performs the specified action for each script in the list without throwing an exception if the specified action causes new scripts
-     * to be added to the list. If new scripts are added to the list during the iteration then the action will be performed on them if
-     * they are added beyond the cursor position and will not be performed on them if they are added before the cursor position.
+     * Raises the event in each script in the list without throwing an exception if the event handlers cause new scripts to be added to
+     * the list. If new scripts are added to the list during the iteration then the event will be raised in them if they are added beyond
+     * the cursor position and will not be raised in them if they are added before the cursor position.
      *
-     * @param action the action to be performed for each script
-     * @param condition a condition which is checked after the action is performed and if true causes the iteration to end immediately
+     * @param event the event to be raised
+     * @param condition a condition which is checked after the event is raised in each script and if true causes the iteration to end
+     * immediately; may be null
+     * @param args the arguments to be passed to the event
      */
-    private void forEachScriptUntil(final Consumer<ScriptImpl> action, final BooleanSupplier condition)
+    private void forwardRaiseEventUntil(final ScriptEvent event, final BooleanSupplier condition, final Object[] args)
     {
         int i = 0;
 
@@ -240,11 +288,11 @@ public final class ScriptsImpl extends DocumentWorkerObjectImpl implements Scrip
             // Get the script
             final ScriptImpl script = scripts.get(i);
 
-            // Perform the action
-            action.accept(script);
+            // Raise the event
+            script.raiseEvent(event, args);
 
             // Check the condition
-            if (condition.getAsBoolean()) {
+            if (condition != null && condition.getAsBoolean()) {
                 return;
             }
 
@@ -254,10 +302,10 @@ public final class ScriptsImpl extends DocumentWorkerObjectImpl implements Scrip
     }
 
     /**
-     * This is the same as the {@link #forEachScriptUntil} method except that the iteration happens in reverse, i.e. from the end of the
-     * list to the start of the list.
+     * This is the same as the {@link #forwardRaiseEventUntil} method except that the iteration happens in reverse, i.e. from the end of
+     * the list to the start of the list.
      */
-    private void reverseForEachScriptUntil(final Consumer<ScriptImpl> action, final BooleanSupplier condition)
+    private void reverseRaiseEventUntil(final ScriptEvent event, final BooleanSupplier condition, final Object[] args)
     {
         int i = scripts.size() - 1;
 
@@ -265,11 +313,11 @@ public final class ScriptsImpl extends DocumentWorkerObjectImpl implements Scrip
             // Get the script
             final ScriptImpl script = scripts.get(i);
 
-            // Perform the action
-            action.accept(script);
+            // Raise the event
+            script.raiseEvent(event, args);
 
             // Check the condition
-            if (condition.getAsBoolean()) {
+            if (condition != null && condition.getAsBoolean()) {
                 return;
             }
 
@@ -24,16 +24,23 @@ public final class SubdocumentImpl extends DocumentImpl implements Subdocument
 {
     private final SubdocumentsImpl parent;
 
+    /**
+     * The position of this subdocument in the parent's collection, counting any deleted subdocuments.
+     */
+    private final int position;
+
     private boolean isDeleted;
 
     public SubdocumentImpl(
         final ApplicationImpl application,
         final SubdocumentsImpl parent,
+        final int position,
         final ReadOnlyDocument document
     )
     {
         super(application, parent.getDocument().getTask(), document);
         this.parent = parent;
+        this.position = position;
         this.isDeleted = false;
     }
 
@@ -54,7 +61,10 @@ public final class SubdocumentImpl extends DocumentImpl implements Subdocument
     @Override
     public void delete()
     {
-        isDeleted = true;
+        if (!isDeleted) {
+            isDeleted = true;
+            parent.subdocumentDeleted(position);
+        }
     }
 
     @Override
@@ -66,7 +76,10 @@ public final class SubdocumentImpl extends DocumentImpl implements Subdocument
     @Override
     public void reset()
     {
-        isDeleted = false;
+        if (isDeleted) {
+            isDeleted = false;
+            parent.subdocumentRestored(position);
+        }
         super.reset();
     }
 
@@ -0,0 +1,141 @@
+/*
+ * Copyright 2016-2019 Micro Focus or one of its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hpe.caf.worker.document.impl;
+
+import java.util.Arrays;
+
+/**
+ * Tracks which of the positions in a subdocument collection have been deleted, so that the live subdocuments can be counted and
+ * located by index without examining each of the subdocuments in turn.
+ * <p>
+ * The deletion flags are held in a Fenwick tree, which is only allocated once a subdocument has been deleted. Until then every
+ * position is live and indexes map directly to positions.
+ */
+final class SubdocumentPositionIndex
+{
+    private static final int MIN_CAPACITY = 16;
+
+    /**
+     * The total number of positions, including deleted positions.
+     */
+    private int size;
+
+    private int deletedCount;
+
+    /**
+     * A Fenwick tree over the deletion flags, using 1-based indexes, or null if no positions have been deleted yet.
+     */
+    private int[] tree;
+
+    public SubdocumentPositionIndex(final int initialSize)
+    {
+        this.size = initialSize;
+        this.deletedCount = 0;
+        this.tree = null;
+    }
+
+    /**
+     * Adds a new live position to the end of the index.
+     *
+     * @return the position added
+     */
+    public synchronized int append()
+    {
+        final int position = size++;
+
+        if (tree != null) {
+            if (size >= tree.length) {
+                tree = Arrays.copyOf(tree, tree.length * 2);
+            }
+
+            // The new node covers the positions ending at this one; it is not itself deleted
+            tree[size] = prefixSum(size - 1) - prefixSum(size - Integer.lowestOneBit(size));
+        }
+
+        return position;
+    }
+
+    public synchronized void markDeleted(final int position)
+    {
+        if (tree == null) {
+            tree = new int[Math.max(Integer.highestOneBit(size) * 2, MIN_CAPACITY)];
+        }
+
+        update(position, 1);
+        deletedCount++;
+    }
+
+    public synchronized void markRestored(final int position)
+    {
+        update(position, -1);
+        deletedCount--;
+    }
+
+    public synchronized int getLiveCount()
+    {
+        return size - deletedCount;
+    }
+
+    /**
+     * Finds the position of the live entry at the specified index.
+     *
+     * @param index the index of the entry, ignoring deleted positions
+     * @return the position of the entry, or -1 if the index is out of range
+     */
+    public synchronized int findPosition(final int index)
+    {
+        if (index < 0 || index >= size - deletedCount) {
+            return -1;
+        }
+
+        if (tree == null) {
+            return index;
+        }
+
+        // Find the largest 1-based position with fewer than (index + 1) live entries up to and including it
+        int position = 0;
+        int remaining = index + 1;
+        for (int step = Integer.highestOneBit(size); step > 0; step >>= 1) {
+            final int next = position + step;
+            if (next <= size) {
+                final int live = step - tree[next];
+                if (live < remaining) {
+                    position = next;
+                    remaining -= live;
+                }
+            }
+        }
+
+        // The entry is at the following 1-based position, which is this 0-based position
+        return position;
+    }
+
+    private void update(final int position, final int delta)
+    {
+        for (int i = position + 1; i <= size; i += Integer.lowestOneBit(i)) {
+            tree[i] += delta;
+        }
+    }
+
+    private int prefixSum(int i)
+    {
+        int sum = 0;
+        for (; i > 0; i -= Integer.lowestOneBit(i)) {
+            sum += tree[i];
+        }
+        return sum;
+    }
+}
@@ -40,6 +40,8 @@ public final class SubdocumentsImpl extends DocumentWorkerObjectImpl implements
 
     private final ArrayList<SubdocumentImpl> newSubdocuments;
 
+    private final SubdocumentPositionIndex positionIndex;
+
     public SubdocumentsImpl(
         final ApplicationImpl application,
         final DocumentImpl document,
@@ -51,6 +53,7 @@ public final class SubdocumentsImpl extends DocumentWorkerObjectImpl implements
         this.originalSubdocuments = Objects.requireNonNull(originalSubdocuments);
         this.subdocuments = new SubdocumentImpl[originalSubdocuments.size()];
         this.newSubdocuments = new ArrayList<>();
+        this.positionIndex = new SubdocumentPositionIndex(originalSubdocuments.size());
     }
 
     @Nonnull
@@ -58,7 +61,8 @@ public final class SubdocumentsImpl extends DocumentWorkerObjectImpl implements
     public Subdocument add(final String reference)
     {
         final ReadOnlyDocument initialState = ReadOnlyDocument.create(reference);
-        final SubdocumentImpl subdocument = new SubdocumentImpl(application, this, initialState);
+        final int position = positionIndex.append();
+        final SubdocumentImpl subdocument = new SubdocumentImpl(application, this, position, initialState);
 
         newSubdocuments.add(subdocument);
 
@@ -68,11 +72,8 @@ public final class SubdocumentsImpl extends DocumentWorkerObjectImpl implements
     /**
      * {@inheritDoc}
      * <p>
-     * Note: Currently this collection does not store which subdocuments are deleted. For this reason the implementation of this method
-     * must work through each of the subdocuments and check their status rather than being able to directly go to the correct subdocument.
-     * It's easy to imagine that this would not be appropriate if there were a large number of subdocuments. If that were ever to be the
-     * case then we would have to implement a callback from the SubdocumentImpl class to create visibility here with regard to which
-     * documents have been deleted.
+     * Note: The subdocuments notify this collection when they are deleted or restored, so the subdocument can be located using the
+     * position index rather than by working through each of the subdocuments and checking their status.
      *
      * @param index index of the subdocument to return
      * @return the subdocument at the specified position
@@ -81,25 +82,13 @@ public final class SubdocumentsImpl extends DocumentWorkerObjectImpl implements
     @Override
     public Subdocument get(final int index)
     {
-        if (index < 0) {
-            throw new IndexOutOfBoundsException();
-        }
-
-        Integer pos = findValidIndexFrom(-subdocuments.length);
-
-        for (int i = 0;; i++) {
-            if (pos == null) {
-                throw new IndexOutOfBoundsException();
-            }
-
-            if (i >= index) {
-                break;
-            }
+        final int position = positionIndex.findPosition(index);
 
-            pos = findValidIndexFrom(pos + 1);
+        if (position < 0) {
+            throw new IndexOutOfBoundsException();
         }
 
-        return retrieveSubdocument(pos);
+        return retrieveSubdocument(position - subdocuments.length);
     }
 
     @Nonnull
@@ -112,8 +101,7 @@ public final class SubdocumentsImpl extends DocumentWorkerObjectImpl implements
     @Override
     public boolean isEmpty()
     {
-        return Arrays.stream(subdocuments).allMatch(subdocument -> subdocument != null && subdocument.isDeleted())
-            && newSubdocuments.stream().allMatch(subdocument -> subdocument.isDeleted());
+        return positionIndex.getLiveCount() == 0;
     }
 
     @Nonnull
@@ -154,8 +142,8 @@ public final class SubdocumentsImpl extends DocumentWorkerObjectImpl implements
                 throw new NoSuchElementException();
             }
 
-            // Move the cursor on
-            pos++;
+            // Move the cursor on past the subdocument being returned
+            pos = index + 1;
 
             // Return the current subdocument
             return retrieveSubdocument(index);
@@ -165,10 +153,7 @@ public final class SubdocumentsImpl extends DocumentWorkerObjectImpl implements
     @Override
     public int size()
     {
-        final long totalCount = Arrays.stream(subdocuments).filter(subdocument -> subdocument == null || !subdocument.isDeleted()).count()
-            + newSubdocuments.stream().filter(subdocument -> !subdocument.isDeleted()).count();
-
-        return (int) totalCount;
+        return positionIndex.getLiveCount();
     }
 
     @Nonnull
@@ -223,6 +208,16 @@ public final class SubdocumentsImpl extends DocumentWorkerObjectImpl implements
             .forEach(journal::addSubdocument);
     }
 
+    void subdocumentDeleted(final int position)
+    {
+        positionIndex.markDeleted(position);
+    }
+
+    void subdocumentRestored(final int position)
+    {
+        positionIndex.markRestored(position);
+    }
+
     private Integer findValidIndexFrom(int pos)
     {
         for (; pos < 0; pos++) {
@@ -252,7 +247,7 @@ public final class SubdocumentsImpl extends DocumentWorkerObjectImpl implements
 
             if (subdocument == null) {
                 final ReadOnlyDocument initialState = originalSubdocuments.get(index);
-                subdocument = new SubdocumentImpl(application, this, initialState);
+                subdocument = new SubdocumentImpl(application, this, index, initialState);
                 subdocuments[index] = subdocument;
             }
 
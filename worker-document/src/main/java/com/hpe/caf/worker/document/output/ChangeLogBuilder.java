@@ -35,10 +35,30 @@ public class ChangeLogBuilder implements ChangesJournal
     private final ArrayList<Supplier<DocumentWorkerChange>> changeSuppliers;
     private final ArrayList<Integer> failureChangeIndexes;
 
+    private final FailureTracker failureTracker;
+
     public ChangeLogBuilder()
+    {
+        this((FailureTracker) null);
+    }
+
+    private ChangeLogBuilder(final FailureTracker parentFailureTracker)
     {
         this.changeSuppliers = new ArrayList<>();
         this.failureChangeIndexes = new ArrayList<>();
+        this.failureTracker = new FailureTracker(parentFailureTracker);
+    }
+
+    /**
+     * Checks whether the changes recorded collectively add up to any new failures on the document or any of its subdocuments.
+     * <p>
+     * This is tracked as the changes are recorded, so it does not require the changes to be inspected again.
+     *
+     * @return true if the changes would cause new failures to be applied
+     */
+    public boolean hasFailures()
+    {
+        return failureTracker.hasFailures();
     }
 
     @Override
@@ -117,6 +137,8 @@ public class ChangeLogBuilder implements ChangesJournal
 
         failureChangeIndexes.add(changeSuppliers.size());
         changeSuppliers.add(() -> change);
+
+        failureTracker.failureAdded();
     }
 
     @Override
@@ -148,6 +170,8 @@ public class ChangeLogBuilder implements ChangesJournal
 
         failureChangeIndexes.add(changeSuppliers.size());
         changeSuppliers.add(() -> change);
+
+        failureTracker.failuresSet(!failures.isEmpty());
     }
 
     @Override
@@ -157,12 +181,14 @@ public class ChangeLogBuilder implements ChangesJournal
         change.addSubdocument = subdocument;
 
         changeSuppliers.add(() -> change);
+
+        failureTracker.subdocumentAdded(subdocument);
     }
 
     @Override
     public ChangesJournal updateSubdocument(final int index, final String reference)
     {
-        final ChangeLogBuilder changeLogBuilder = new ChangeLogBuilder();
+        final ChangeLogBuilder changeLogBuilder = new ChangeLogBuilder(failureTracker);
 
         changeSuppliers.add(() -> {
             final List<DocumentWorkerChange> changes = changeLogBuilder.getChanges();
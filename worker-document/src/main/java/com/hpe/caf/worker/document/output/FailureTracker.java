@@ -0,0 +1,93 @@
+/*
+ * Copyright 2016-2019 Micro Focus or one of its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hpe.caf.worker.document.output;
+
+import com.hpe.caf.worker.document.DocumentWorkerDocument;
+import com.hpe.caf.worker.document.changelog.ChangeLogFunctions;
+
+/**
+ * Tracks whether the changes being recorded by a {@link ChangesJournal} add up to new failures on the document or any of its
+ * subdocuments, so that this can be determined without inspecting the changes again once they have all been recorded.
+ */
+final class FailureTracker
+{
+    /**
+     * The tracker for the parent document's changes, if this tracker is for a subdocument's changes.
+     */
+    private final FailureTracker parent;
+
+    /**
+     * Whether the changes recorded so far leave the document itself with new failures.
+     */
+    private boolean hasDirectFailures;
+
+    /**
+     * The number of subdocuments added or updated by the changes recorded so far which have new failures.
+     */
+    private int subdocumentsWithFailures;
+
+    private boolean hasFailures;
+
+    public FailureTracker(final FailureTracker parent)
+    {
+        this.parent = parent;
+        this.hasDirectFailures = false;
+        this.subdocumentsWithFailures = 0;
+        this.hasFailures = false;
+    }
+
+    public boolean hasFailures()
+    {
+        return hasFailures;
+    }
+
+    public void failureAdded()
+    {
+        hasDirectFailures = true;
+        updateFailureState();
+    }
+
+    public void failuresSet(final boolean hasAnyFailures)
+    {
+        hasDirectFailures = hasAnyFailures;
+        updateFailureState();
+    }
+
+    public void subdocumentAdded(final DocumentWorkerDocument subdocument)
+    {
+        if (ChangeLogFunctions.hasFailures(subdocument)) {
+            subdocumentsWithFailures++;
+            updateFailureState();
+        }
+    }
+
+    /**
+     * Recalculates whether there are new failures, and passes any change in that on to the parent document's tracker.
+     */
+    private void updateFailureState()
+    {
+        final boolean newHasFailures = hasDirectFailures || subdocumentsWithFailures > 0;
+
+        if (newHasFailures != hasFailures) {
+            hasFailures = newHasFailures;
+
+            if (parent != null) {
+                parent.subdocumentsWithFailures += newHasFailures ? 1 : -1;
+                parent.updateFailureState();
+            }
+        }
+    }
+}
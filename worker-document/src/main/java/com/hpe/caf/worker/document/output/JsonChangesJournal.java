@@ -0,0 +1,349 @@
+/*
+ * Copyright 2016-2019 Micro Focus or one of its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hpe.caf.worker.document.output;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.hpe.caf.worker.document.DocumentWorkerAction;
+import com.hpe.caf.worker.document.DocumentWorkerDocument;
+import com.hpe.caf.worker.document.DocumentWorkerFailure;
+import com.hpe.caf.worker.document.DocumentWorkerFieldChanges;
+import com.hpe.caf.worker.document.DocumentWorkerFieldValue;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import javax.annotation.Nonnull;
+
+/**
+ * A journal which writes the changes straight to a JSON generator as they are recorded, rather than building up change objects to
+ * be serialised later.
+ * <p>
+ * The changes are written as a {@code "changes"} array field of the JSON object that the generator is currently positioned in. The
+ * field is only written if there are changes, and the array is left open until {@link #close()} is called. Changes to a subdocument
+ * are written as an {@code updateSubdocument} change, which is only written if the subdocument has changes, so only one subdocument
+ * journal may be written to at a time.
+ * <p>
+ * Unlike the {@link ChangeLogBuilder}, changes which have already been written cannot be revisited, so this journal does not support
+ * setting the failures after failures have already been added.
+ */
+public final class JsonChangesJournal implements ChangesJournal
+{
+    private final JsonGenerator generator;
+
+    /**
+     * The journal for the parent document's changes, if this journal is for a subdocument's changes.
+     */
+    private final JsonChangesJournal parent;
+
+    private final int index;
+    private final String reference;
+
+    private final FailureTracker failureTracker;
+
+    /**
+     * Whether the changes array has been started.
+     */
+    private boolean isStarted;
+
+    /**
+     * The subdocument journal which currently has its changes array open, if any.
+     */
+    private JsonChangesJournal openSubdocumentJournal;
+
+    private boolean hasAddedFailures;
+    private boolean hasSetFailures;
+
+    public JsonChangesJournal(final JsonGenerator generator)
+    {
+        this(Objects.requireNonNull(generator), null, 0, null);
+    }
+
+    private JsonChangesJournal(final JsonGenerator generator, final JsonChangesJournal parent, final int index, final String reference)
+    {
+        this.generator = generator;
+        this.parent = parent;
+        this.index = index;
+        this.reference = reference;
+        this.failureTracker = new FailureTracker(parent == null ? null : parent.failureTracker);
+        this.isStarted = false;
+        this.openSubdocumentJournal = null;
+        this.hasAddedFailures = false;
+        this.hasSetFailures = false;
+    }
+
+    /**
+     * Checks whether the changes recorded collectively add up to any new failures on the document or any of its subdocuments.
+     *
+     * @return true if the changes would cause new failures to be applied
+     */
+    public boolean hasFailures()
+    {
+        return failureTracker.hasFailures();
+    }
+
+    /**
+     * Checks whether any changes have been written.
+     *
+     * @return true if the changes array has been written
+     */
+    public boolean hasChanges()
+    {
+        return isStarted;
+    }
+
+    @Override
+    public void setReference(final String reference)
+    {
+        try {
+            startChange("setReference");
+            generator.writeStartObject();
+            if (reference != null) {
+                generator.writeStringField("value", reference);
+            }
+            generator.writeEndObject();
+            endChange();
+        } catch (final IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    @Override
+    public void addFieldChanges(final Map<String, DocumentWorkerFieldChanges> fieldChangesMap)
+    {
+        // Just return if there are no changes
+        if (fieldChangesMap == null || fieldChangesMap.isEmpty()) {
+            return;
+        }
+
+        // Split out the fields between those to be added, removed, and updated
+        final Map<String, List<DocumentWorkerFieldValue>> addFields = new HashMap<>();
+        final Map<String, List<DocumentWorkerFieldValue>> setFields = new HashMap<>();
+        final List<String> removeFields = new ArrayList<>();
+
+        for (final Map.Entry<String, DocumentWorkerFieldChanges> fieldChangesEntry : fieldChangesMap.entrySet()) {
+            final String fieldName = fieldChangesEntry.getKey();
+            final DocumentWorkerFieldChanges fieldChanges = fieldChangesEntry.getValue();
+            final List<DocumentWorkerFieldValue> values = fieldChanges.values;
+            final boolean hasValues = (values != null) && (!values.isEmpty());
+
+            if (fieldChanges.action == DocumentWorkerAction.replace) {
+                if (hasValues) {
+                    setFields.put(fieldName, values);
+                } else {
+                    removeFields.add(fieldName);
+                }
+            } else if (hasValues) {
+                addFields.put(fieldName, values);
+            }
+        }
+
+        // Write change objects for each type of field change, in the same order as the ChangeLogBuilder
+        try {
+            if (!removeFields.isEmpty()) {
+                startChange("removeFields");
+                generator.writeStartArray();
+                for (final String fieldName : removeFields) {
+                    generator.writeString(fieldName);
+                }
+                generator.writeEndArray();
+                endChange();
+            }
+
+            if (!addFields.isEmpty()) {
+                startChange("addFields");
+                writeFieldValuesMap(addFields);
+                endChange();
+            }
+
+            if (!setFields.isEmpty()) {
+                startChange("setFields");
+                writeFieldValuesMap(setFields);
+                endChange();
+            }
+        } catch (final IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    @Override
+    public void addFailure(final DocumentWorkerFailure failure)
+    {
+        try {
+            startChange("addFailure");
+            generator.writeObject(failure);
+            endChange();
+        } catch (final IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+
+        hasAddedFailures = true;
+        failureTracker.failureAdded();
+    }
+
+    @Override
+    public void addFailures(final Iterable<DocumentWorkerFailure> failures)
+    {
+        if (failures != null) {
+            for (final DocumentWorkerFailure failure : failures) {
+                addFailure(failure);
+            }
+        }
+    }
+
+    @Override
+    public void setFailures(final List<DocumentWorkerFailure> failures)
+    {
+        Objects.requireNonNull(failures);
+
+        if (hasAddedFailures || hasSetFailures) {
+            throw new IllegalStateException("The failures cannot be set after failure changes have already been written");
+        }
+
+        try {
+            startChange("setFailures");
+            generator.writeObject(failures);
+            endChange();
+        } catch (final IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+
+        hasSetFailures = true;
+        failureTracker.failuresSet(!failures.isEmpty());
+    }
+
+    @Override
+    public void addSubdocument(final DocumentWorkerDocument subdocument)
+    {
+        try {
+            startChange("addSubdocument");
+            generator.writeObject(subdocument);
+            endChange();
+        } catch (final IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+
+        failureTracker.subdocumentAdded(subdocument);
+    }
+
+    @Nonnull
+    @Override
+    public ChangesJournal updateSubdocument(final int index, final String reference)
+    {
+        // Nothing is written until the subdocument journal has a change to write
+        return new JsonChangesJournal(generator, this, index, reference);
+    }
+
+    @Override
+    public void removeSubdocument(final int index, final String reference)
+    {
+        try {
+            startChange("removeSubdocument");
+            generator.writeStartObject();
+            generator.writeNumberField("index", index);
+            if (reference != null) {
+                generator.writeStringField("reference", reference);
+            }
+            generator.writeEndObject();
+            endChange();
+        } catch (final IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    /**
+     * Finishes the changes array, if any changes have been written.
+     * <p>
+     * This must be called on the journal that was passed the generator once all of the changes have been recorded.
+     *
+     * @throws IOException if the generator fails to write the end of the array
+     */
+    public void close() throws IOException
+    {
+        if (isStarted) {
+            closeSubdocumentJournal();
+            generator.writeEndArray();
+        }
+    }
+
+    /**
+     * Starts the changes array if it has not already been started, and then starts a change object.
+     */
+    private void startChange(final String changeName) throws IOException
+    {
+        ensureStarted();
+        closeSubdocumentJournal();
+
+        generator.writeStartObject();
+        generator.writeFieldName(changeName);
+    }
+
+    private void endChange() throws IOException
+    {
+        generator.writeEndObject();
+    }
+
+    private void ensureStarted() throws IOException
+    {
+        if (isStarted) {
+            return;
+        }
+
+        if (parent == null) {
+            generator.writeArrayFieldStart("changes");
+        } else {
+            parent.startChange("updateSubdocument");
+            generator.writeStartObject();
+            generator.writeNumberField("index", index);
+            if (reference != null) {
+                generator.writeStringField("reference", reference);
+            }
+            generator.writeArrayFieldStart("changes");
+            parent.openSubdocumentJournal = this;
+        }
+
+        isStarted = true;
+    }
+
+    private void closeSubdocumentJournal() throws IOException
+    {
+        final JsonChangesJournal subdocumentJournal = openSubdocumentJournal;
+        if (subdocumentJournal == null) {
+            return;
+        }
+
+        subdocumentJournal.closeSubdocumentJournal();
+
+        // Close the changes array, the updateSubdocument object, and the change object
+        generator.writeEndArray();
+        generator.writeEndObject();
+        endChange();
+
+        openSubdocumentJournal = null;
+    }
+
+    private void writeFieldValuesMap(final Map<String, List<DocumentWorkerFieldValue>> fieldValuesMap) throws IOException
+    {
+        generator.writeStartObject();
+        for (final Map.Entry<String, List<DocumentWorkerFieldValue>> entry : fieldValuesMap.entrySet()) {
+            generator.writeFieldName(entry.getKey());
+            generator.writeObject(entry.getValue());
+        }
+        generator.writeEndObject();
+    }
+}
@@ -0,0 +1,249 @@
+/*
+ * Copyright 2016-2019 Micro Focus or one of its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hpe.caf.worker.document.output;
+
+import com.fasterxml.jackson.core.JsonLocation;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.SerializableString;
+import com.fasterxml.jackson.core.util.JsonParserDelegate;
+import java.io.IOException;
+import java.util.Objects;
+
+/**
+ * Records where the document and the change log entries are in the serialised form of a document task, so that they can be copied
+ * into the response as they are if they have not been changed, rather than being serialised again.
+ */
+public final class RawDocumentTaskSections
+{
+    private final RawJsonValue document;
+    private final RawJsonValue changeLogEntries;
+
+    private RawDocumentTaskSections(final RawJsonValue document, final RawJsonValue changeLogEntries)
+    {
+        this.document = document;
+        this.changeLogEntries = changeLogEntries;
+    }
+
+    /**
+     * Returns the serialised document.
+     *
+     * @return the document exactly as it was in the task, or null if the task did not include a document
+     */
+    public SerializableString getDocument()
+    {
+        return document;
+    }
+
+    /**
+     * Checks whether the task included any change log entries.
+     *
+     * @return true if the change log was not empty
+     */
+    public boolean hasChangeLogEntries()
+    {
+        return !changeLogEntries.isEmpty();
+    }
+
+    /**
+     * Returns the change log entries, separated by commas but without the brackets that surround them.
+     *
+     * @return the change log entries exactly as they were in the task
+     */
+    public SerializableString getChangeLogEntries()
+    {
+        return changeLogEntries;
+    }
+
+    /**
+     * A parser which records where the document and the change log entries are as the tokens are read from it, so that the sections
+     * can be located while the task is being deserialised rather than by parsing it a second time.
+     * <p>
+     * All of the tokens must be read through {@link #nextToken()} for the locations to be tracked, so the other methods which move
+     * the parser on are implemented in terms of it rather than being passed straight to the underlying parser.
+     */
+    static final class Recorder extends JsonParserDelegate
+    {
+        private final byte[] data;
+        private int depth;
+        private String fieldName;
+        private Section section;
+        private boolean failed;
+        private int documentStart;
+        private RawJsonValue document;
+        private int changeLogStart;
+        private int changeLogEnd;
+
+        public Recorder(final JsonParser parser, final byte[] data)
+        {
+            super(parser);
+            this.data = Objects.requireNonNull(data);
+            this.section = Section.NONE;
+            this.changeLogStart = -1;
+        }
+
+        /**
+         * Returns the sections of the task that has been read.
+         *
+         * @return the sections of the task, or null if they could not be located
+         */
+        public RawDocumentTaskSections getSections()
+        {
+            if (failed || depth != 0 || section != Section.NONE) {
+                return null;
+            }
+
+            final RawJsonValue changeLogEntries = (changeLogStart < 0)
+                ? new RawJsonValue(data, 0, 0)
+                : createValue(data, changeLogStart, changeLogEnd);
+
+            return (changeLogEntries == null)
+                ? null
+                : new RawDocumentTaskSections(document, changeLogEntries);
+        }
+
+        @Override
+        public JsonToken nextToken() throws IOException
+        {
+            final JsonToken token = super.nextToken();
+            if (token == null || failed) {
+                return token;
+            }
+
+            if (token.isStructEnd()) {
+                depth--;
+                recordEnd();
+            } else {
+                recordToken(token);
+                if (token.isStructStart()) {
+                    depth++;
+                }
+            }
+
+            return token;
+        }
+
+        @Override
+        public JsonToken nextValue() throws IOException
+        {
+            final JsonToken token = nextToken();
+
+            return (token == JsonToken.FIELD_NAME)
+                ? nextToken()
+                : token;
+        }
+
+        @Override
+        public JsonParser skipChildren() throws IOException
+        {
+            final JsonToken currentToken = getCurrentToken();
+            if (currentToken == null || !currentToken.isStructStart()) {
+                return this;
+            }
+
+            int open = 1;
+            while (open > 0) {
+                final JsonToken token = nextToken();
+                if (token == null) {
+                    break;
+                } else if (token.isStructStart()) {
+                    open++;
+                } else if (token.isStructEnd()) {
+                    open--;
+                }
+            }
+
+            return this;
+        }
+
+        /**
+         * Records the location of a token which is not the end of an object or an array; the depth is that of the token itself.
+         */
+        private void recordToken(final JsonToken token) throws IOException
+        {
+            if (depth == 1) {
+                if (token == JsonToken.FIELD_NAME) {
+                    fieldName = getCurrentName();
+                } else if ("document".equals(fieldName)) {
+                    if (token == JsonToken.START_OBJECT) {
+                        section = Section.DOCUMENT;
+                        documentStart = getByteOffset(getTokenLocation());
+                    } else if (token == JsonToken.VALUE_NULL) {
+                        document = null;
+                    } else {
+                        failed = true;
+                    }
+                } else if ("changeLog".equals(fieldName)) {
+                    if (token == JsonToken.START_ARRAY) {
+                        section = Section.CHANGE_LOG;
+                        changeLogStart = -1;
+                    } else if (token == JsonToken.VALUE_NULL) {
+                        changeLogStart = -1;
+                    } else {
+                        failed = true;
+                    }
+                }
+            } else if (depth == 2 && section == Section.CHANGE_LOG) {
+                if (token != JsonToken.START_OBJECT) {
+                    failed = true;
+                } else if (changeLogStart < 0) {
+                    changeLogStart = getByteOffset(getTokenLocation());
+                    failed = changeLogStart < 0;
+                }
+            }
+        }
+
+        /**
+         * Records the location of the end of an object or an array; the depth is that of the token which started it.
+         */
+        private void recordEnd()
+        {
+            if (depth == 1 && section == Section.DOCUMENT) {
+                section = Section.NONE;
+                document = createValue(data, documentStart, getByteOffset(getCurrentLocation()));
+                failed = document == null;
+            } else if (depth == 1 && section == Section.CHANGE_LOG) {
+                section = Section.NONE;
+            } else if (depth == 2 && section == Section.CHANGE_LOG) {
+                changeLogEnd = getByteOffset(getCurrentLocation());
+            }
+        }
+
+        private enum Section
+        {
+            NONE,
+            DOCUMENT,
+            CHANGE_LOG
+        }
+    }
+
+    private static RawJsonValue createValue(final byte[] data, final int start, final int end)
+    {
+        return (start < 0 || end <= start || end > data.length)
+            ? null
+            : new RawJsonValue(data, start, end - start);
+    }
+
+    /**
+     * Returns the byte offset of the location, or -1 if it is not known (for example because the input is not UTF-8 encoded).
+     */
+    private static int getByteOffset(final JsonLocation location)
+    {
+        final long byteOffset = location.getByteOffset();
+
+        return (byteOffset < 0 || byteOffset > Integer.MAX_VALUE) ? -1 : (int) byteOffset;
+    }
+}
@@ -0,0 +1,154 @@
+/*
+ * Copyright 2016-2019 Micro Focus or one of its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hpe.caf.worker.document.output;
+
+import com.fasterxml.jackson.core.SerializableString;
+import com.fasterxml.jackson.core.io.SerializedString;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * A section of UTF-8 encoded JSON which is written to the output exactly as it is, rather than being decoded and encoded again.
+ */
+final class RawJsonValue implements SerializableString
+{
+    private final byte[] data;
+    private final int offset;
+    private final int length;
+
+    private SerializedString serializedString;
+
+    public RawJsonValue(final byte[] data, final int offset, final int length)
+    {
+        this.data = data;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    public boolean isEmpty()
+    {
+        return length == 0;
+    }
+
+    @Override
+    public String getValue()
+    {
+        return getSerializedString().getValue();
+    }
+
+    @Override
+    public int charLength()
+    {
+        return getSerializedString().charLength();
+    }
+
+    @Override
+    public char[] asQuotedChars()
+    {
+        return getSerializedString().asQuotedChars();
+    }
+
+    @Override
+    public byte[] asUnquotedUTF8()
+    {
+        return Arrays.copyOfRange(data, offset, offset + length);
+    }
+
+    @Override
+    public byte[] asQuotedUTF8()
+    {
+        return getSerializedString().asQuotedUTF8();
+    }
+
+    @Override
+    public int appendQuotedUTF8(final byte[] buffer, final int offset)
+    {
+        return getSerializedString().appendQuotedUTF8(buffer, offset);
+    }
+
+    @Override
+    public int appendQuoted(final char[] buffer, final int offset)
+    {
+        return getSerializedString().appendQuoted(buffer, offset);
+    }
+
+    @Override
+    public int appendUnquotedUTF8(final byte[] buffer, final int offset)
+    {
+        if (offset + length > buffer.length) {
+            return -1;
+        }
+
+        System.arraycopy(data, this.offset, buffer, offset, length);
+        return length;
+    }
+
+    @Override
+    public int appendUnquoted(final char[] buffer, final int offset)
+    {
+        return getSerializedString().appendUnquoted(buffer, offset);
+    }
+
+    @Override
+    public int writeQuotedUTF8(final OutputStream out) throws IOException
+    {
+        return getSerializedString().writeQuotedUTF8(out);
+    }
+
+    @Override
+    public int writeUnquotedUTF8(final OutputStream out) throws IOException
+    {
+        out.write(data, offset, length);
+        return length;
+    }
+
+    @Override
+    public int putQuotedUTF8(final ByteBuffer buffer) throws IOException
+    {
+        return getSerializedString().putQuotedUTF8(buffer);
+    }
+
+    @Override
+    public int putUnquotedUTF8(final ByteBuffer buffer) throws IOException
+    {
+        if (length > buffer.remaining()) {
+            return -1;
+        }
+
+        buffer.put(data, offset, length);
+        return length;
+    }
+
+    @Override
+    public String toString()
+    {
+        return getValue();
+    }
+
+    /**
+     * Returns the section decoded as a string, which is only needed if it is written to a character-based output.
+     */
+    private SerializedString getSerializedString()
+    {
+        if (serializedString == null) {
+            serializedString = new SerializedString(new String(data, offset, length, StandardCharsets.UTF_8));
+        }
+        return serializedString;
+    }
+}
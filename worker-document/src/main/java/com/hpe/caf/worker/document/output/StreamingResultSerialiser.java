@@ -0,0 +1,241 @@
+/*
+ * Copyright 2016-2019 Micro Focus or one of its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hpe.caf.worker.document.output;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.hpe.caf.worker.document.DocumentWorkerChangeLogEntry;
+import com.hpe.caf.worker.document.DocumentWorkerDocumentTask;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Objects;
+import java.util.function.Consumer;
+import javax.annotation.Nonnull;
+
+/**
+ * Serialises document task results to JSON, writing the new change log entry straight from the document model using a
+ * {@link JsonChangesJournal} rather than first building up the change objects.
+ * <p>
+ * The JSON is written to a per-thread buffer which is reused between results, unless it has grown unusually large. If the sections
+ * of the original task that are passed on unchanged have been located then they are copied into the result as they are.
+ */
+public final class StreamingResultSerialiser
+{
+    private static final int INITIAL_BUFFER_SIZE = 8 * 1024;
+
+    private static final int MAX_RETAINED_BUFFER_SIZE = 1024 * 1024;
+
+    private static final ThreadLocal<ByteArrayOutputStream> BUFFERS
+        = ThreadLocal.withInitial(() -> new ByteArrayOutputStream(INITIAL_BUFFER_SIZE));
+
+    private final ObjectMapper mapper;
+
+    public StreamingResultSerialiser(final ObjectMapper mapper)
+    {
+        this.mapper = Objects.requireNonNull(mapper);
+    }
+
+    /**
+     * Deserialises a document task, locating the sections of it which can be copied into its result as they are while it is being
+     * read.
+     *
+     * @param data the JSON-encoded document task
+     * @return the deserialised task and its sections
+     * @throws IOException if the task cannot be deserialised
+     */
+    @Nonnull
+    public DeserialisedTask deserialiseTask(final byte[] data) throws IOException
+    {
+        Objects.requireNonNull(data);
+
+        try (final RawDocumentTaskSections.Recorder parser
+            = new RawDocumentTaskSections.Recorder(mapper.getFactory().createParser(data), data)) {
+            final DocumentWorkerDocumentTask task = mapper.readValue(parser, DocumentWorkerDocumentTask.class);
+            return new DeserialisedTask(task, parser.getSections());
+        }
+    }
+
+    /**
+     * Serialises the result, adding a new change log entry to the end of its change log.
+     *
+     * @param result the result to serialise; its change log should not already include the new entry
+     * @param changeLogEntryName the name of the new change log entry
+     * @param changesRecorder records the changes for the new change log entry in the journal that it is passed
+     * @return the serialised result
+     * @throws IOException if the result cannot be serialised
+     */
+    @Nonnull
+    public SerialisedResult serialise(
+        final DocumentWorkerDocumentTask result,
+        final String changeLogEntryName,
+        final Consumer<ChangesJournal> changesRecorder
+    ) throws IOException
+    {
+        return serialise(result, null, changeLogEntryName, changesRecorder);
+    }
+
+    /**
+     * Serialises the result, adding a new change log entry to the end of its change log.
+     *
+     * @param result the result to serialise; its change log should not already include the new entry
+     * @param rawSections the sections of the original task to use in place of the document and change log of the result, or null if
+     * the document and change log of the result should be serialised
+     * @param changeLogEntryName the name of the new change log entry
+     * @param changesRecorder records the changes for the new change log entry in the journal that it is passed
+     * @return the serialised result
+     * @throws IOException if the result cannot be serialised
+     */
+    @Nonnull
+    public SerialisedResult serialise(
+        final DocumentWorkerDocumentTask result,
+        final RawDocumentTaskSections rawSections,
+        final String changeLogEntryName,
+        final Consumer<ChangesJournal> changesRecorder
+    ) throws IOException
+    {
+        final ByteArrayOutputStream buffer = BUFFERS.get();
+        buffer.reset();
+
+        final boolean hasFailures;
+        try (final JsonGenerator generator = mapper.getFactory().createGenerator(buffer)) {
+            generator.writeStartObject();
+
+            if (rawSections != null) {
+                if (rawSections.getDocument() != null) {
+                    generator.writeFieldName("document");
+                    generator.writeRawValue(rawSections.getDocument());
+                }
+            } else if (result.document != null) {
+                generator.writeFieldName("document");
+                generator.writeObject(result.document);
+            }
+
+            if (result.documentSnapshot != null) {
+                generator.writeStringField("documentSnapshot", result.documentSnapshot);
+            }
+
+            generator.writeArrayFieldStart("changeLog");
+            if (rawSections != null) {
+                if (rawSections.hasChangeLogEntries()) {
+                    generator.writeRawValue(rawSections.getChangeLogEntries());
+                }
+            } else if (result.changeLog != null) {
+                for (final DocumentWorkerChangeLogEntry changeLogEntry : result.changeLog) {
+                    generator.writeObject(changeLogEntry);
+                }
+            }
+
+            generator.writeStartObject();
+            if (changeLogEntryName != null) {
+                generator.writeStringField("name", changeLogEntryName);
+            }
+
+            final JsonChangesJournal journal = new JsonChangesJournal(generator);
+            changesRecorder.accept(journal);
+            journal.close();
+            hasFailures = journal.hasFailures();
+
+            generator.writeEndObject();
+            generator.writeEndArray();
+
+            if (result.customData != null) {
+                generator.writeFieldName("customData");
+                generator.writeObject(result.customData);
+            }
+
+            if (result.scripts != null) {
+                generator.writeFieldName("scripts");
+                generator.writeObject(result.scripts);
+            }
+
+            generator.writeEndObject();
+        }
+
+        final byte[] data = buffer.toByteArray();
+
+        // Don't hold on to the buffer if it has grown unusually large
+        if (buffer.size() > MAX_RETAINED_BUFFER_SIZE) {
+            BUFFERS.remove();
+        }
+
+        return new SerialisedResult(data, hasFailures);
+    }
+
+    public static final class DeserialisedTask
+    {
+        private final DocumentWorkerDocumentTask task;
+        private final RawDocumentTaskSections rawSections;
+
+        private DeserialisedTask(final DocumentWorkerDocumentTask task, final RawDocumentTaskSections rawSections)
+        {
+            this.task = task;
+            this.rawSections = rawSections;
+        }
+
+        /**
+         * Returns the deserialised task.
+         *
+         * @return the document task, or null if the data was a JSON null
+         */
+        public DocumentWorkerDocumentTask getTask()
+        {
+            return task;
+        }
+
+        /**
+         * Returns the sections of the task which can be copied into its result as they are.
+         *
+         * @return the sections of the task, or null if they could not be located
+         */
+        public RawDocumentTaskSections getRawSections()
+        {
+            return rawSections;
+        }
+    }
+
+    public static final class SerialisedResult
+    {
+        private final byte[] data;
+        private final boolean hasFailures;
+
+        private SerialisedResult(final byte[] data, final boolean hasFailures)
+        {
+            this.data = data;
+            this.hasFailures = hasFailures;
+        }
+
+        /**
+         * Returns the serialised result.
+         *
+         * @return the JSON-encoded result
+         */
+        @Nonnull
+        public byte[] getData()
+        {
+            return data;
+        }
+
+        /**
+         * Checks whether the changes written to the new change log entry add up to any new failures.
+         *
+         * @return true if the changes would cause new failures to be applied
+         */
+        public boolean hasFailures()
+        {
+            return hasFailures;
+        }
+    }
+}
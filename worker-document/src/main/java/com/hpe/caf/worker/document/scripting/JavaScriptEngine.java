@@ -22,20 +22,43 @@ import javax.script.Compilable;
 import javax.script.CompiledScript;
 import javax.script.ScriptContext;
 import javax.script.ScriptEngine;
-import javax.script.ScriptEngineManager;
 import javax.script.ScriptException;
+import javax.script.SimpleScriptContext;
 
 public final class JavaScriptEngine implements ObjectCodeProvider
 {
+    /**
+     * Deletes the enumerable properties of the global that the script is run in, which are the ones created by the scripts that have
+     * been loaded into it. Properties which cannot be deleted, such as those declared using {@code var}, are set to undefined.
+     */
+    private static final String RESET_GLOBAL_SCRIPT
+        = "(function (global) {\n"
+        + "    for (var key in global) {\n"
+        + "        if (!delete global[key]) {\n"
+        + "            global[key] = undefined;\n"
+        + "        }\n"
+        + "    }\n"
+        + "})(this);";
+
+    private final ScriptEngineProvider scriptEngineProvider;
     private final ScriptEngine scriptEngine;
-    private final Bindings scriptEngineBindings;
-    private final Object scriptEngineBindingsLock;
+    private final CompilationContext compilationContext;
+    private final CompiledScript resetGlobalScript;
 
-    public JavaScriptEngine()
+    public JavaScriptEngine(final ScriptEngineProvider scriptEngineProvider)
     {
-        this.scriptEngine = new ScriptEngineManager().getEngineByName("nashorn");
-        this.scriptEngineBindings = scriptEngine.getBindings(ScriptContext.ENGINE_SCOPE);
-        this.scriptEngineBindingsLock = new Object();
+        this.scriptEngineProvider = scriptEngineProvider;
+        this.scriptEngine = scriptEngineProvider.createScriptEngine();
+        if (!(scriptEngine instanceof Compilable)) {
+            throw new RuntimeException("The script engine does not support compiling scripts: " + scriptEngine.getClass().getName());
+        }
+        this.compilationContext = new CompilationContext(scriptEngine.getContext());
+        scriptEngine.setContext(compilationContext);
+        try {
+            this.resetGlobalScript = ((Compilable) scriptEngine).compile(RESET_GLOBAL_SCRIPT);
+        } catch (final ScriptException ex) {
+            throw new RuntimeException(ex);
+        }
     }
 
     @Nonnull
@@ -44,29 +67,98 @@ public final class JavaScriptEngine implements ObjectCodeProvider
         return scriptEngine.createBindings();
     }
 
+    /**
+     * Looks up a function which a script has defined in the specified global.
+     *
+     * @param global a global created by {@link #createNewGlobal()} which a script has been run in
+     * @param name the name of the function
+     * @return the function, or null if the global does not contain a function with the specified name
+     */
+    public ScriptFunction getFunction(final Bindings global, final String name)
+    {
+        return scriptEngineProvider.getFunction(scriptEngine, global, name);
+    }
+
+    /**
+     * Removes the variables and functions that scripts have defined in the specified global, so that it can be reused.
+     *
+     * @param global a global created by {@link #createNewGlobal()}
+     * @throws ScriptException if the global could not be reset
+     */
+    public void resetGlobal(final Bindings global) throws ScriptException
+    {
+        resetGlobalScript.eval(global);
+    }
+
     @Nonnull
     @Override
     public CompiledScript getObjectCode(final String name, final AbstractScriptSpec scriptSpec) throws ScriptException
     {
-        // Synchronize compilations so that the correct filename is set whilst the compilation is occurring
-        synchronized (scriptEngineBindingsLock) {
+        // Set the name of the script to be compiled
+        // The script engine reads it from its context, so it is held per thread so that scripts can be compiled concurrently
+        compilationContext.setScriptName(name);
 
-            // Set the name of the script to be compiled
-            // Unfortunately it seems that it has to be put into the script engine context
-            if (name != null) {
-                scriptEngineBindings.put(ScriptEngine.FILENAME, name);
+        try {
+            // Compile the script
+            return scriptSpec.compile((Compilable) scriptEngine);
+
+        } finally {
+            // Reset the script name
+            compilationContext.setScriptName(null);
+        }
+    }
+
+    /**
+     * The default context of the script engine, which is the same as the context that the engine was created with except that the
+     * script filename attribute is specific to the current thread.
+     */
+    private static final class CompilationContext extends SimpleScriptContext
+    {
+        private final ThreadLocal<String> scriptName;
+
+        public CompilationContext(final ScriptContext originalContext)
+        {
+            this.scriptName = new ThreadLocal<>();
+            setBindings(originalContext.getBindings(ENGINE_SCOPE), ENGINE_SCOPE);
+            setBindings(originalContext.getBindings(GLOBAL_SCOPE), GLOBAL_SCOPE);
+            setReader(originalContext.getReader());
+            setWriter(originalContext.getWriter());
+            setErrorWriter(originalContext.getErrorWriter());
+        }
+
+        public void setScriptName(final String name)
+        {
+            if (name == null) {
+                scriptName.remove();
+            } else {
+                scriptName.set(name);
             }
+        }
 
-            try {
-                // Compile the script
-                return scriptSpec.compile((Compilable) scriptEngine);
+        @Override
+        public Object getAttribute(final String name)
+        {
+            if (ScriptEngine.FILENAME.equals(name)) {
+                final String currentScriptName = scriptName.get();
+                if (currentScriptName != null) {
+                    return currentScriptName;
+                }
+            }
 
-            } finally {
-                // Reset the script name
-                if (name != null) {
-                    scriptEngineBindings.remove(ScriptEngine.FILENAME);
+            return super.getAttribute(name);
+        }
+
+        @Override
+        public Object getAttribute(final String name, final int scope)
+        {
+            if (scope == ENGINE_SCOPE && ScriptEngine.FILENAME.equals(name)) {
+                final String currentScriptName = scriptName.get();
+                if (currentScriptName != null) {
+                    return currentScriptName;
                 }
             }
+
+            return super.getAttribute(name, scope);
         }
     }
 }
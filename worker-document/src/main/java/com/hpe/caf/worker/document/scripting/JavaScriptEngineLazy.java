@@ -18,6 +18,7 @@ package com.hpe.caf.worker.document.scripting;
 import com.google.common.base.Supplier;
 import com.google.common.base.Suppliers;
 import com.hpe.caf.worker.document.scripting.specs.AbstractScriptSpec;
+import java.util.Objects;
 import javax.annotation.Nonnull;
 import javax.script.Bindings;
 import javax.script.CompiledScript;
@@ -27,9 +28,10 @@ public final class JavaScriptEngineLazy implements ObjectCodeProvider
 {
     private final Supplier<JavaScriptEngine> scriptEngine;
 
-    public JavaScriptEngineLazy()
+    public JavaScriptEngineLazy(final ScriptEngineProvider scriptEngineProvider)
     {
-        this.scriptEngine = Suppliers.memoize(JavaScriptEngine::new);
+        Objects.requireNonNull(scriptEngineProvider);
+        this.scriptEngine = Suppliers.memoize(() -> new JavaScriptEngine(scriptEngineProvider));
     }
 
     @Nonnull
@@ -38,6 +40,16 @@ public final class JavaScriptEngineLazy implements ObjectCodeProvider
         return scriptEngine.get().createNewGlobal();
     }
 
+    public ScriptFunction getFunction(final Bindings global, final String name)
+    {
+        return scriptEngine.get().getFunction(global, name);
+    }
+
+    public void resetGlobal(final Bindings global) throws ScriptException
+    {
+        scriptEngine.get().resetGlobal(global);
+    }
+
     @Nonnull
     @Override
     public CompiledScript getObjectCode(final String name, final AbstractScriptSpec scriptSpec) throws ScriptException
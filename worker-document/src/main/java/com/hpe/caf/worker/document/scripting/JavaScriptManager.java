@@ -18,6 +18,7 @@ package com.hpe.caf.worker.document.scripting;
 import com.hpe.caf.worker.document.config.ScriptCacheConfiguration;
 import com.hpe.caf.worker.document.config.ScriptCachingConfiguration;
 import com.hpe.caf.worker.document.scripting.specs.AbstractScriptSpec;
+import com.hpe.caf.worker.document.util.ServiceFunctions;
 import javax.annotation.Nonnull;
 import javax.script.Bindings;
 import javax.script.CompiledScript;
@@ -28,14 +29,21 @@ public final class JavaScriptManager implements ObjectCodeProvider
     private static final long DEFAULT_SCRIPT_CACHE_SIZE = 50;
     private static final long DEFAULT_STATIC_SCRIPT_CACHE_DURATION = 30 * 60;   // 30 minutes
     private static final long DEFAULT_DYNAMIC_SCRIPT_CACHE_DURATION = 30 * 60;  // 30 minutes
+    private static final int DEFAULT_GLOBAL_POOL_SIZE = 0;
 
     private final JavaScriptEngineLazy scriptEngine;
     private final ScriptCache staticScriptCache;
     private final ScriptCache dynamicScriptCache;
+    private final ScriptGlobalPool globalPool;
 
     public JavaScriptManager(final ScriptCachingConfiguration scriptCachingConfig)
     {
-        final JavaScriptEngineLazy javaScriptEngine = new JavaScriptEngineLazy();
+        this(scriptCachingConfig, loadScriptEngineProvider());
+    }
+
+    public JavaScriptManager(final ScriptCachingConfiguration scriptCachingConfig, final ScriptEngineProvider scriptEngineProvider)
+    {
+        final JavaScriptEngineLazy javaScriptEngine = new JavaScriptEngineLazy(scriptEngineProvider);
 
         this.scriptEngine = javaScriptEngine;
         this.staticScriptCache = new ScriptCache(
@@ -46,6 +54,11 @@ public final class JavaScriptManager implements ObjectCodeProvider
             (scriptCachingConfig == null) ? null : scriptCachingConfig.getDynamicScriptCache(),
             getDefaultDynamicScriptCacheConfig(),
             javaScriptEngine);
+        this.globalPool = new ScriptGlobalPool(
+            javaScriptEngine,
+            getGlobalPoolSize(scriptCachingConfig),
+            DEFAULT_SCRIPT_CACHE_SIZE,
+            DEFAULT_STATIC_SCRIPT_CACHE_DURATION);
     }
 
     @Nonnull
@@ -54,6 +67,44 @@ public final class JavaScriptManager implements ObjectCodeProvider
         return scriptEngine.createNewGlobal();
     }
 
+    /**
+     * Looks up a function which a script has defined in the specified global, such as one of its event handlers.
+     *
+     * @param global a global context which a script has been loaded into
+     * @param name the name of the function
+     * @return the function, or null if the global does not contain a function with the specified name
+     */
+    public ScriptFunction getFunction(final Bindings global, final String name)
+    {
+        return scriptEngine.getFunction(global, name);
+    }
+
+    /**
+     * Returns a global context to load the specified script into, reusing one that the same script was previously loaded into if one
+     * is available.
+     *
+     * @param name the name of the script
+     * @param scriptSpec the script which is to be loaded
+     * @return a global context which does not contain any script-defined variables
+     */
+    @Nonnull
+    public Bindings acquireGlobal(final String name, final AbstractScriptSpec scriptSpec)
+    {
+        return globalPool.acquire(new ScriptCacheKey(name, scriptSpec));
+    }
+
+    /**
+     * Returns a global context that was acquired using {@link #acquireGlobal} so that it can be reused.
+     *
+     * @param name the name of the script that was loaded into the global
+     * @param scriptSpec the script that was loaded into the global
+     * @param global the global context which is no longer being used
+     */
+    public void releaseGlobal(final String name, final AbstractScriptSpec scriptSpec, final Bindings global)
+    {
+        globalPool.release(new ScriptCacheKey(name, scriptSpec), global);
+    }
+
     @Nonnull
     @Override
     public CompiledScript getObjectCode(final String name, final AbstractScriptSpec scriptSpec) throws ScriptException
@@ -67,6 +118,23 @@ public final class JavaScriptManager implements ObjectCodeProvider
         return scriptCache.getObjectCode(name, scriptSpec);
     }
 
+    @Nonnull
+    private static ScriptEngineProvider loadScriptEngineProvider()
+    {
+        final ScriptEngineProvider scriptEngineProvider = ServiceFunctions.loadService(ScriptEngineProvider.class);
+
+        return (scriptEngineProvider == null)
+            ? new NashornScriptEngineProvider()
+            : scriptEngineProvider;
+    }
+
+    private static int getGlobalPoolSize(final ScriptCachingConfiguration scriptCachingConfig)
+    {
+        final Integer globalPoolSize = (scriptCachingConfig == null) ? null : scriptCachingConfig.getGlobalPoolSize();
+
+        return (globalPoolSize == null) ? DEFAULT_GLOBAL_POOL_SIZE : globalPoolSize;
+    }
+
     @Nonnull
     private static ScriptCacheConfiguration getDefaultStaticScriptCacheConfig()
     {
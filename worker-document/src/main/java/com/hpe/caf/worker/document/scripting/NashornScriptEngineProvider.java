@@ -0,0 +1,52 @@
+/*
+ * Copyright 2016-2019 Micro Focus or one of its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hpe.caf.worker.document.scripting;
+
+import javax.annotation.Nonnull;
+import javax.script.Bindings;
+import javax.script.ScriptEngine;
+import javax.script.ScriptEngineManager;
+import jdk.nashorn.api.scripting.JSObject;
+
+/**
+ * Supplies the Nashorn engine which is included in the JDK. This is used if no other {@link ScriptEngineProvider} is registered.
+ */
+public final class NashornScriptEngineProvider implements ScriptEngineProvider
+{
+    @Nonnull
+    @Override
+    public ScriptEngine createScriptEngine()
+    {
+        return new ScriptEngineManager().getEngineByName("nashorn");
+    }
+
+    @Override
+    public ScriptFunction getFunction(final ScriptEngine scriptEngine, final Bindings global, final String name)
+    {
+        final Object function = global.get(name);
+        if (!(function instanceof JSObject)) {
+            return null;
+        }
+
+        final JSObject jsFunction = (JSObject) function;
+        if (!jsFunction.isFunction()) {
+            return null;
+        }
+
+        // Nashorn automatically wraps checked exceptions in a RuntimeException
+        return args -> jsFunction.call(null, args);
+    }
+}
@@ -67,8 +67,9 @@ public final class ScriptCache implements ObjectCodeProvider
     {
         Objects.requireNonNull(defaultConfig);
 
-        final CacheBuilder cacheBuilder = CacheBuilder.newBuilder()
-            .concurrencyLevel(1);
+        // The cache is left with its default concurrency level so that different scripts can be compiled at the same time.
+        // Concurrent requests for the same script wait for the single compilation of it that is already in progress.
+        final CacheBuilder cacheBuilder = CacheBuilder.newBuilder();
 
         if (config == null) {
             setMaximumSize(cacheBuilder, defaultConfig.getMaximumSize());
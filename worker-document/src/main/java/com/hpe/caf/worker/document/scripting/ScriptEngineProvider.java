@@ -0,0 +1,52 @@
+/*
+ * Copyright 2016-2019 Micro Focus or one of its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hpe.caf.worker.document.scripting;
+
+import javax.annotation.Nonnull;
+import javax.script.Bindings;
+import javax.script.ScriptEngine;
+
+/**
+ * Supplies the JavaScript engine which is used to run customization scripts.
+ * <p>
+ * An implementation can be made available by registering it in {@code META-INF/services}. If no implementation is registered then
+ * the Nashorn engine which is included in the JDK is used.
+ */
+public interface ScriptEngineProvider
+{
+    /**
+     * Creates the script engine which is used to compile the scripts and to create the global contexts that they run in. It is only
+     * called once, the first time that a script is loaded.
+     * <p>
+     * The engine must implement {@link javax.script.Compilable}, and it must read the name of the script being compiled from the
+     * {@link ScriptEngine#FILENAME} attribute of its current context. Scripts are compiled concurrently, and globals are created
+     * concurrently, but each global context is only used by one thread at a time.
+     *
+     * @return a new script engine
+     */
+    @Nonnull
+    ScriptEngine createScriptEngine();
+
+    /**
+     * Looks up a function which a script has defined in its global context.
+     *
+     * @param scriptEngine the engine that was returned by {@link #createScriptEngine()}
+     * @param global a global context which was created by the engine, and which a script has been run in
+     * @param name the name of the function
+     * @return the function, or null if the global does not contain a function with the specified name
+     */
+    ScriptFunction getFunction(ScriptEngine scriptEngine, Bindings global, String name);
+}
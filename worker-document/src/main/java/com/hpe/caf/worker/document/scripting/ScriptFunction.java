@@ -0,0 +1,33 @@
+/*
+ * Copyright 2016-2019 Micro Focus or one of its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hpe.caf.worker.document.scripting;
+
+/**
+ * A function defined by a customization script, such as one of its event handlers.
+ */
+@FunctionalInterface
+public interface ScriptFunction
+{
+    /**
+     * Calls the function.
+     * <p>
+     * If the function throws a checked exception then this will be wrapped in a {@code RuntimeException}.
+     *
+     * @param args the arguments to pass to the function
+     * @return the value returned by the function
+     */
+    Object call(Object... args);
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright 2016-2019 Micro Focus or one of its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hpe.caf.worker.document.scripting;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.Nonnull;
+import javax.script.Bindings;
+import javax.script.ScriptException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps the global contexts that scripts have been loaded into so that they can be reused when the same script is loaded again, as
+ * creating a new global context is much more expensive than resetting one.
+ * <p>
+ * Globals are only reused for the script that they were originally created for. When a global is returned to the pool all of its
+ * enumerable properties are deleted, or set to undefined if they cannot be deleted, and the script is evaluated in it again when it
+ * is next loaded.
+ */
+public final class ScriptGlobalPool
+{
+    private static final Logger LOG = LoggerFactory.getLogger(ScriptGlobalPool.class);
+
+    private final JavaScriptEngineLazy scriptEngine;
+    private final int maxGlobalsPerScript;
+    private final Cache<ScriptCacheKey, Queue<Bindings>> pools;
+
+    public ScriptGlobalPool(
+        final JavaScriptEngineLazy scriptEngine,
+        final int maxGlobalsPerScript,
+        final long maxScripts,
+        final long expireAfterAccess
+    )
+    {
+        this.scriptEngine = Objects.requireNonNull(scriptEngine);
+        this.maxGlobalsPerScript = maxGlobalsPerScript;
+        this.pools = CacheBuilder.newBuilder()
+            .maximumSize(maxScripts)
+            .expireAfterAccess(expireAfterAccess, TimeUnit.SECONDS)
+            .build();
+    }
+
+    /**
+     * Returns a global context for the specified script to be loaded into. This is one which has previously been used for the same
+     * script if one is available, or else a new one.
+     *
+     * @param key identifies the script which is going to be loaded
+     * @return an empty global context
+     */
+    @Nonnull
+    public Bindings acquire(final ScriptCacheKey key)
+    {
+        if (maxGlobalsPerScript > 0) {
+            final Queue<Bindings> pool = pools.getIfPresent(key);
+            if (pool != null) {
+                final Bindings global = pool.poll();
+                if (global != null) {
+                    return global;
+                }
+            }
+        }
+
+        return scriptEngine.createNewGlobal();
+    }
+
+    /**
+     * Resets a global context which the specified script was loaded into and keeps it for reuse, unless the maximum number of globals
+     * are already being kept for the script.
+     *
+     * @param key identifies the script which was loaded into the global context
+     * @param global the global context which is no longer in use
+     */
+    public void release(final ScriptCacheKey key, final Bindings global)
+    {
+        if (maxGlobalsPerScript <= 0) {
+            return;
+        }
+
+        final Queue<Bindings> pool;
+        try {
+            pool = pools.get(key, () -> new ArrayBlockingQueue<>(maxGlobalsPerScript));
+        } catch (final ExecutionException ex) {
+            throw new RuntimeException(ex);
+        }
+
+        // Only spend time resetting the global if there is space to keep it
+        if (pool.size() >= maxGlobalsPerScript) {
+            return;
+        }
+
+        try {
+            scriptEngine.resetGlobal(global);
+        } catch (final ScriptException | RuntimeException ex) {
+            LOG.warn("Failed to reset script global context; it will not be reused", ex);
+            return;
+        }
+
+        pool.offer(global);
+    }
+}
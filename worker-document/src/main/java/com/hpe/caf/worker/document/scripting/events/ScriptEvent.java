@@ -0,0 +1,59 @@
+/*
+ * Copyright 2016-2019 Micro Focus or one of its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hpe.caf.worker.document.scripting.events;
+
+import javax.annotation.Nonnull;
+
+/**
+ * The events which can be handled by customization scripts.
+ */
+public enum ScriptEvent
+{
+    PROCESS_TASK("onProcessTask"),
+    BEFORE_PROCESS_DOCUMENT("onBeforeProcessDocument"),
+    PROCESS_DOCUMENT("onProcessDocument"),
+    AFTER_PROCESS_DOCUMENT("onAfterProcessDocument"),
+    AFTER_PROCESS_TASK("onAfterProcessTask"),
+    ERROR("onError");
+
+    private final String handlerName;
+
+    ScriptEvent(final String handlerName)
+    {
+        this.handlerName = handlerName;
+    }
+
+    /**
+     * Returns the name of the JavaScript function which handles the event.
+     *
+     * @return the event handler name
+     */
+    @Nonnull
+    public String getHandlerName()
+    {
+        return handlerName;
+    }
+
+    /**
+     * Returns the bit which represents the event in a set of events.
+     *
+     * @return the bit mask for the event
+     */
+    public int getMask()
+    {
+        return 1 << ordinal();
+    }
+}
@@ -24,6 +24,7 @@ import com.hpe.caf.worker.document.impl.ApplicationImpl;
 import com.hpe.caf.worker.document.impl.DocumentImpl;
 import com.hpe.caf.worker.document.impl.DocumentWorkerObjectImpl;
 import com.hpe.caf.worker.document.impl.ResponseImpl;
+import com.hpe.caf.worker.document.impl.ScriptImpl;
 import com.hpe.caf.worker.document.impl.ScriptsImpl;
 import com.hpe.caf.worker.document.model.Document;
 import com.hpe.caf.worker.document.model.Response;
@@ -31,6 +32,7 @@ import com.hpe.caf.worker.document.model.Task;
 import com.hpe.caf.worker.document.scripting.events.CancelableDocumentEventObject;
 import com.hpe.caf.worker.document.scripting.events.DocumentEventObject;
 import com.hpe.caf.worker.document.scripting.events.ErrorEventObject;
+import com.hpe.caf.worker.document.scripting.events.ScriptEvent;
 import com.hpe.caf.worker.document.scripting.events.TaskEventObject;
 import com.hpe.caf.worker.document.views.ReadOnlyDocument;
 import java.net.SocketException;
@@ -38,6 +40,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.function.BooleanSupplier;
+import java.util.stream.Stream;
 import javax.annotation.Nonnull;
 import javax.script.ScriptException;
 
@@ -47,7 +50,12 @@ public abstract class AbstractTask extends DocumentWorkerObjectImpl implements T
     protected final DocumentImpl document;
     protected final ResponseImpl response;
     private final Map<String, String> customData;
-    protected final ScriptsImpl scripts;
+    /**
+     * The task's customization scripts. This is only created when it is needed, so that tasks which do not have any scripts do not
+     * incur any of the cost of supporting them. It is volatile because subdocuments may be processed on several threads at once.
+     */
+    private volatile ScriptsImpl scripts;
+    private volatile DocumentWorkerTransientException transientFailure;
 
     protected AbstractTask(
         final ApplicationImpl application,
@@ -61,7 +69,7 @@ public abstract class AbstractTask extends DocumentWorkerObjectImpl implements T
         this.document = new DocumentImpl(application, this, effectiveDocument);
         this.response = new ResponseImpl(application, this);
         this.customData = customData;
-        this.scripts = new ScriptsImpl(application, this);
+        this.scripts = null;
     }
 
     protected AbstractTask(
@@ -77,7 +85,9 @@ public abstract class AbstractTask extends DocumentWorkerObjectImpl implements T
         this.document = new DocumentImpl(application, this, effectiveDocument);
         this.response = new ResponseImpl(application, this);
         this.customData = customData;
-        this.scripts = new ScriptsImpl(application, this, scripts);
+        this.scripts = (scripts == null || scripts.isEmpty())
+            ? null
+            : new ScriptsImpl(application, this, scripts);
     }
 
     @Nonnull
@@ -101,7 +111,30 @@ public abstract class AbstractTask extends DocumentWorkerObjectImpl implements T
     @Override
     public final ScriptsImpl getScripts()
     {
-        return scripts;
+        final ScriptsImpl existingScripts = scripts;
+        if (existingScripts != null) {
+            return existingScripts;
+        }
+
+        synchronized (this) {
+            if (scripts == null) {
+                scripts = new ScriptsImpl(application, this);
+            }
+            return scripts;
+        }
+    }
+
+    /**
+     * Returns the task's customization scripts without creating the script collection if the task does not have any.
+     *
+     * @return the scripts that the task currently has
+     */
+    @Nonnull
+    protected final Stream<ScriptImpl> streamScripts()
+    {
+        return (scripts == null)
+            ? Stream.empty()
+            : scripts.streamImpls();
     }
 
     @Override
@@ -119,6 +152,29 @@ public abstract class AbstractTask extends DocumentWorkerObjectImpl implements T
         return this.response;
     }
 
+    /**
+     * Records that one of the task's documents could not be processed because of a transient failure. Only the first failure recorded
+     * is kept.
+     *
+     * @param failure the transient failure which prevented the document from being processed
+     */
+    public final synchronized void recordTransientFailure(final DocumentWorkerTransientException failure)
+    {
+        if (transientFailure == null) {
+            transientFailure = failure;
+        }
+    }
+
+    /**
+     * Returns the transient failure that was recorded against one of the task's documents, or null if there was no such failure.
+     *
+     * @return the transient failure which means that the task should be retried, or null
+     */
+    public final DocumentWorkerTransientException getTransientFailure()
+    {
+        return transientFailure;
+    }
+
     @Nonnull
     public final WorkerResponse createWorkerResponse()
     {
@@ -151,6 +207,10 @@ public abstract class AbstractTask extends DocumentWorkerObjectImpl implements T
      */
     public void loadScripts() throws DocumentWorkerTransientException, InterruptedException
     {
+        if (scripts == null) {
+            return;
+        }
+
         try {
             scripts.loadAll();
         } catch (final ScriptException ex) {
@@ -168,45 +228,77 @@ public abstract class AbstractTask extends DocumentWorkerObjectImpl implements T
         }
     }
 
+    /**
+     * Unloads the customization scripts so that the resources they were using can be reused by later tasks. This should be called
+     * when the task has been completed and its scripts will not be called again.
+     */
+    public void unloadScripts()
+    {
+        if (scripts != null) {
+            scripts.unloadAll();
+        }
+    }
+
     public void raiseProcessTaskEvent() throws DocumentWorkerTransientException, InterruptedException
     {
-        raiseScriptEvents("onProcessTask", false, new TaskEventObject(this));
+        if (hasEventHandlers(ScriptEvent.PROCESS_TASK)) {
+            raiseScriptEvents(ScriptEvent.PROCESS_TASK, false, new TaskEventObject(this));
+        }
     }
 
     public boolean raiseBeforeProcessDocumentEvent(final Document document) throws DocumentWorkerTransientException, InterruptedException
     {
+        if (!hasEventHandlers(ScriptEvent.BEFORE_PROCESS_DOCUMENT)) {
+            return false;
+        }
+
         final CancelableDocumentEventObject documentEventObj = new CancelableDocumentEventObject(document);
 
-        raiseScriptEventsUntil("onBeforeProcessDocument", false, () -> documentEventObj.cancel, documentEventObj);
+        raiseScriptEventsUntil(ScriptEvent.BEFORE_PROCESS_DOCUMENT, false, () -> documentEventObj.cancel, documentEventObj);
 
         return documentEventObj.cancel;
     }
 
     public void raiseProcessDocumentEvent(final Document document) throws DocumentWorkerTransientException, InterruptedException
     {
-        raiseScriptEvents("onProcessDocument", false, new DocumentEventObject(document));
+        if (hasEventHandlers(ScriptEvent.PROCESS_DOCUMENT)) {
+            raiseScriptEvents(ScriptEvent.PROCESS_DOCUMENT, false, new DocumentEventObject(document));
+        }
     }
 
     public void raiseAfterProcessDocumentEvent(final Document document) throws DocumentWorkerTransientException, InterruptedException
     {
-        raiseScriptEvents("onAfterProcessDocument", true, new DocumentEventObject(document));
+        if (hasEventHandlers(ScriptEvent.AFTER_PROCESS_DOCUMENT)) {
+            raiseScriptEvents(ScriptEvent.AFTER_PROCESS_DOCUMENT, true, new DocumentEventObject(document));
+        }
     }
 
     public void raiseAfterProcessTaskEvent() throws DocumentWorkerTransientException, InterruptedException
     {
-        raiseScriptEvents("onAfterProcessTask", true, new TaskEventObject(this));
+        if (hasEventHandlers(ScriptEvent.AFTER_PROCESS_TASK)) {
+            raiseScriptEvents(ScriptEvent.AFTER_PROCESS_TASK, true, new TaskEventObject(this));
+        }
     }
 
     public boolean raiseOnErrorEvent(final RuntimeException ex) throws DocumentWorkerTransientException, InterruptedException
     {
+        if (!hasEventHandlers(ScriptEvent.ERROR)) {
+            return false;
+        }
+
         final ErrorEventObject errorEventObj = new ErrorEventObject(this, ex);
 
-        raiseScriptEventsUntil("onError", true, () -> errorEventObj.handled, errorEventObj);
+        raiseScriptEventsUntil(ScriptEvent.ERROR, true, () -> errorEventObj.handled, errorEventObj);
 
         return errorEventObj.handled;
     }
 
-    private void raiseScriptEvents(final String event, final boolean useReverseOrder, final Object... args)
+    private boolean hasEventHandlers(final ScriptEvent event)
+    {
+        return scripts != null && scripts.hasEventHandlers(event);
+    }
+
+    private void raiseScriptEvents(final ScriptEvent event, final boolean useReverseOrder, final Object... args)
         throws DocumentWorkerTransientException, InterruptedException
     {
         unwrapCheckedExceptions(() -> {
@@ -215,7 +307,7 @@ public abstract class AbstractTask extends DocumentWorkerObjectImpl implements T
     }
 
     private void raiseScriptEventsUntil(
-        final String event,
+        final ScriptEvent event,
         final boolean useReverseOrder,
         final BooleanSupplier condition,
         final Object... args
@@ -15,6 +15,8 @@
  */
 package com.hpe.caf.worker.document.tasks;
 
+import com.hpe.caf.api.worker.DataStoreException;
+import com.hpe.caf.api.worker.TaskFailedException;
 import com.hpe.caf.api.worker.TaskStatus;
 import com.hpe.caf.api.worker.WorkerResponse;
 import com.hpe.caf.api.worker.WorkerTaskData;
@@ -23,29 +25,43 @@ import com.hpe.caf.worker.document.DocumentWorkerChangeLogEntry;
 import com.hpe.caf.worker.document.DocumentWorkerConstants;
 import com.hpe.caf.worker.document.DocumentWorkerDocumentTask;
 import com.hpe.caf.worker.document.DocumentWorkerScript;
-import com.hpe.caf.worker.document.changelog.ChangeLogFunctions;
 import com.hpe.caf.worker.document.changelog.MutableDocument;
+import com.hpe.caf.worker.document.config.ChangeLogCompactionConfiguration;
 import com.hpe.caf.worker.document.config.DocumentWorkerConfiguration;
+import com.hpe.caf.worker.document.converters.DocumentConverter;
 import com.hpe.caf.worker.document.exceptions.InvalidChangeLogException;
 import com.hpe.caf.worker.document.exceptions.InvalidScriptException;
 import com.hpe.caf.worker.document.impl.ApplicationImpl;
+import com.hpe.caf.worker.document.impl.DocumentSnapshotStore;
 import com.hpe.caf.worker.document.impl.ScriptImpl;
 import com.hpe.caf.worker.document.output.ChangeLogBuilder;
+import com.hpe.caf.worker.document.output.RawDocumentTaskSections;
+import com.hpe.caf.worker.document.output.StreamingResultSerialiser;
 import com.hpe.caf.worker.document.util.DocumentFunctions;
 import com.hpe.caf.worker.document.util.ListFunctions;
 import com.hpe.caf.worker.document.util.MapFunctions;
 import com.hpe.caf.worker.document.views.ReadOnlyDocument;
+import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
 import java.util.stream.Collectors;
 import javax.annotation.Nonnull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 public final class DocumentTask extends AbstractTask
 {
+    private static final Logger LOG = LoggerFactory.getLogger(DocumentTask.class);
+
     private final DocumentWorkerDocumentTask documentTask;
 
+    /**
+     * The sections of the serialised task which can be copied into the response as they are, if they have been located.
+     */
+    private final RawDocumentTaskSections rawSections;
+
     @Nonnull
     public static DocumentTask create(
         final ApplicationImpl application,
@@ -55,32 +71,69 @@ public final class DocumentTask extends AbstractTask
     {
         Objects.requireNonNull(documentTask);
 
-        return new DocumentTask(application, workerTask, documentTask);
+        return create(application, workerTask, documentTask, ReadOnlyDocument.create(documentTask.document));
+    }
+
+    /**
+     * Creates a task whose change log is applied to the specified base document rather than to the document in the task, which is
+     * used when the task refers to a document snapshot.
+     */
+    @Nonnull
+    public static DocumentTask create(
+        final ApplicationImpl application,
+        final WorkerTaskData workerTask,
+        final DocumentWorkerDocumentTask documentTask,
+        final ReadOnlyDocument baseDocument
+    ) throws InvalidChangeLogException, InvalidScriptException
+    {
+        return create(application, workerTask, documentTask, baseDocument, null);
+    }
+
+    /**
+     * Creates a task whose change log is applied to the specified base document, and whose response can copy the document and
+     * change log from the specified sections of the serialised task rather than serialising them again.
+     */
+    @Nonnull
+    public static DocumentTask create(
+        final ApplicationImpl application,
+        final WorkerTaskData workerTask,
+        final DocumentWorkerDocumentTask documentTask,
+        final ReadOnlyDocument baseDocument,
+        final RawDocumentTaskSections rawSections
+    ) throws InvalidChangeLogException, InvalidScriptException
+    {
+        Objects.requireNonNull(documentTask);
+        Objects.requireNonNull(baseDocument);
+
+        return new DocumentTask(application, workerTask, documentTask, baseDocument, rawSections);
     }
 
     private DocumentTask(
         final ApplicationImpl application,
         final WorkerTaskData workerTask,
-        final DocumentWorkerDocumentTask documentTask
+        final DocumentWorkerDocumentTask documentTask,
+        final ReadOnlyDocument baseDocument,
+        final RawDocumentTaskSections rawSections
     ) throws InvalidChangeLogException, InvalidScriptException
     {
         super(application,
               workerTask,
-              createEffectiveDocument(documentTask),
+              createEffectiveDocument(documentTask, baseDocument),
               documentTask.customData,
               documentTask.scripts);
 
         this.documentTask = documentTask;
+        this.rawSections = rawSections;
     }
 
     @Nonnull
-    private static ReadOnlyDocument createEffectiveDocument(final DocumentWorkerDocumentTask documentTask)
-        throws InvalidChangeLogException
+    private static ReadOnlyDocument createEffectiveDocument(
+        final DocumentWorkerDocumentTask documentTask,
+        final ReadOnlyDocument baseDocument
+    ) throws InvalidChangeLogException
     {
         Objects.requireNonNull(documentTask);
 
-        final ReadOnlyDocument baseDocument = ReadOnlyDocument.create(documentTask.document);
-
         final MutableDocument effectiveDocument = new MutableDocument(baseDocument);
         effectiveDocument.applyChangeLog(documentTask.changeLog);
 
@@ -91,6 +144,15 @@ public final class DocumentTask extends AbstractTask
     @Override
     protected WorkerResponse createWorkerResponseImpl()
     {
+        // Write the response straight from the document model unless the change log is going to be compacted
+        final StreamingResultSerialiser streamingResultSerialiser = application.getStreamingResultSerialiser();
+        if (streamingResultSerialiser != null && !isCompactionRequired()) {
+            final WorkerResponse streamedResponse = tryCreateStreamedWorkerResponse(streamingResultSerialiser);
+            if (streamedResponse != null) {
+                return streamedResponse;
+            }
+        }
+
         // Build up the changes to add to the change log
         final ChangeLogBuilder changeLogBuilder = new ChangeLogBuilder();
         document.recordChanges(changeLogBuilder);
@@ -98,7 +160,7 @@ public final class DocumentTask extends AbstractTask
         final List<DocumentWorkerChange> changes = changeLogBuilder.getChanges();
 
         // Check if any of the changes include any new failures
-        final boolean hasFailures = ChangeLogFunctions.hasFailures(changes);
+        final boolean hasFailures = changeLogBuilder.hasFailures();
 
         // Select the output queue
         final String outputQueue = response.getOutputQueue(hasFailures);
@@ -106,18 +168,7 @@ public final class DocumentTask extends AbstractTask
         // If there have been failures, then check if the framework is configured to return a RESULT_EXCEPTION rather than simply adding
         // them to the change log
         if (hasFailures && application.getConfiguration().getEnableExceptionOnFailure()) {
-
-            final String failures = DocumentFunctions.documentNodes(document)
-                .flatMap(d -> d.getFailures().stream())
-                .map(f -> f.getFailureId() + ": " + f.getFailureMessage())
-                .collect(Collectors.joining("\n"));
-
-            return new WorkerResponse(outputQueue,
-                                      TaskStatus.RESULT_EXCEPTION,
-                                      failures.getBytes(StandardCharsets.UTF_8),
-                                      "DocumentWorkerException",
-                                      1,
-                                      null);
+            return createFailureExceptionResponse(outputQueue);
         }
 
         // Create a new change log entry
@@ -130,23 +181,104 @@ public final class DocumentTask extends AbstractTask
         changeLog.add(changeLogEntry);
 
         // Get the installed scripts to include them in the response
-        final List<DocumentWorkerScript> installedScripts = scripts.streamImpls()
-            .filter(ScriptImpl::shouldIncludeInResponse)
-            .map(ScriptImpl::toDocumentWorkerScript)
-            .collect(Collectors.toList());
+        final List<DocumentWorkerScript> installedScripts = getInstalledScripts();
 
         // Construct the DocumentWorkerDocumentTask object
         final DocumentWorkerDocumentTask documentWorkerResult = new DocumentWorkerDocumentTask();
         documentWorkerResult.document = documentTask.document;
+        documentWorkerResult.documentSnapshot = documentTask.documentSnapshot;
         documentWorkerResult.changeLog = changeLog;
         documentWorkerResult.customData = MapFunctions.emptyToNull(response.getCustomData().asMap());
         documentWorkerResult.scripts = ListFunctions.emptyToNull(installedScripts);
 
-        // Serialise the result object
-        final byte[] data = application.serialiseResult(documentWorkerResult);
+        // Serialise the result object, folding the change log into the document if it has grown beyond the configured limits
+        // (or replacing them both with a snapshot of the document if the change log is long enough to warrant one)
+        final ChangeLogCompactionConfiguration compactionConfig = application.getConfiguration().getChangeLogCompaction();
+        final DocumentSnapshotStore snapshotStore = application.getDocumentSnapshotStore();
+        final boolean isSnapshotWritten = snapshotStore.shouldWriteSnapshot(countEntriesWithChanges(changeLog))
+            && tryWriteSnapshot(compactionConfig, documentWorkerResult);
+
+        if (!isSnapshotWritten && exceedsMaxEntries(compactionConfig, changeLog.size())) {
+            compactChangeLog(compactionConfig, documentWorkerResult);
+        }
+
+        byte[] data = application.serialiseResult(documentWorkerResult);
+
+        if (!isSnapshotWritten && exceedsMaxBytes(compactionConfig, data.length) && documentWorkerResult.changeLog == changeLog) {
+            compactChangeLog(compactionConfig, documentWorkerResult);
+            data = application.serialiseResult(documentWorkerResult);
+        }
+
+        // The snapshot that the task referred to is no longer needed if the response has replaced it
+        final String inputSnapshot = documentTask.documentSnapshot;
+        if (inputSnapshot != null && !inputSnapshot.equals(documentWorkerResult.documentSnapshot)) {
+            snapshotStore.deleteSupersededSnapshot(inputSnapshot);
+        }
+
+        return createSuccessResponse(outputQueue, data, documentWorkerResult.scripts != null);
+    }
+
+    /**
+     * Creates the response by writing the changes straight from the document model into the serialised result, without building up
+     * the change objects first.
+     *
+     * @return the response, or null if the response message is too large and the change log needs to be compacted
+     */
+    private WorkerResponse tryCreateStreamedWorkerResponse(final StreamingResultSerialiser streamingResultSerialiser)
+    {
+        // Construct the DocumentWorkerDocumentTask object, excluding the new change log entry which is written as it is recorded
+        final DocumentWorkerDocumentTask documentWorkerResult = new DocumentWorkerDocumentTask();
+        documentWorkerResult.document = documentTask.document;
+        documentWorkerResult.documentSnapshot = documentTask.documentSnapshot;
+        documentWorkerResult.changeLog = documentTask.changeLog;
+        documentWorkerResult.customData = MapFunctions.emptyToNull(response.getCustomData().asMap());
+        documentWorkerResult.scripts = ListFunctions.emptyToNull(getInstalledScripts());
+
+        final StreamingResultSerialiser.SerialisedResult serialisedResult;
+        try {
+            serialisedResult = streamingResultSerialiser.serialise(
+                documentWorkerResult, rawSections, getChangeLogEntryName(), document::recordChanges);
+        } catch (final IOException ex) {
+            throw new TaskFailedException("Failed to serialise result", ex);
+        }
+
+        final boolean hasFailures = serialisedResult.hasFailures();
+        final String outputQueue = response.getOutputQueue(hasFailures);
+
+        if (hasFailures && application.getConfiguration().getEnableExceptionOnFailure()) {
+            return createFailureExceptionResponse(outputQueue);
+        }
+
+        final byte[] data = serialisedResult.getData();
+
+        if (exceedsMaxBytes(application.getConfiguration().getChangeLogCompaction(), data.length)) {
+            return null;
+        }
+
+        return createSuccessResponse(outputQueue, data, documentWorkerResult.scripts != null);
+    }
+
+    @Nonnull
+    private WorkerResponse createFailureExceptionResponse(final String outputQueue)
+    {
+        final String failures = DocumentFunctions.documentNodes(document)
+            .flatMap(d -> d.getFailures().stream())
+            .map(f -> f.getFailureId() + ": " + f.getFailureMessage())
+            .collect(Collectors.joining("\n"));
+
+        return new WorkerResponse(outputQueue,
+                                  TaskStatus.RESULT_EXCEPTION,
+                                  failures.getBytes(StandardCharsets.UTF_8),
+                                  "DocumentWorkerException",
+                                  1,
+                                  null);
+    }
 
+    @Nonnull
+    private static WorkerResponse createSuccessResponse(final String outputQueue, final byte[] data, final boolean hasScripts)
+    {
         // If the response message includes any scripts then it is in the v2 message format
-        final int resultMessageVersion = (documentWorkerResult.scripts == null) ? 1 : 2;
+        final int resultMessageVersion = hasScripts ? 2 : 1;
 
         // Create the WorkerResponse object
         return new WorkerResponse(outputQueue,
@@ -157,6 +289,30 @@ public final class DocumentTask extends AbstractTask
                                   null);
     }
 
+    @Nonnull
+    private List<DocumentWorkerScript> getInstalledScripts()
+    {
+        return streamScripts()
+            .filter(ScriptImpl::shouldIncludeInResponse)
+            .map(ScriptImpl::toDocumentWorkerScript)
+            .collect(Collectors.toList());
+    }
+
+    /**
+     * Checks whether the change log is going to be replaced by a document snapshot or folded into the document, based on the number
+     * of entries that it will have once the new entry has been added.
+     */
+    private boolean isCompactionRequired()
+    {
+        return application.getDocumentSnapshotStore().shouldWriteSnapshot(countEntriesWithChanges(documentTask.changeLog) + 1)
+            || exceedsMaxEntries(application.getConfiguration().getChangeLogCompaction(), getChangeLogSize() + 1);
+    }
+
+    private int getChangeLogSize()
+    {
+        return (documentTask.changeLog == null) ? 0 : documentTask.changeLog.size();
+    }
+
     @Nonnull
     @Override
     protected WorkerResponse handleGeneralFailureImpl(final Throwable failure)
@@ -170,6 +326,109 @@ public final class DocumentTask extends AbstractTask
         return this.createWorkerResponse();
     }
 
+    /**
+     * Replaces the document in the result with the current state of the document, so that the changes in the change log no longer
+     * need to be included.
+     */
+    private void compactChangeLog(
+        final ChangeLogCompactionConfiguration compactionConfig,
+        final DocumentWorkerDocumentTask documentWorkerResult
+    )
+    {
+        documentWorkerResult.document = DocumentConverter.convert(document);
+        documentWorkerResult.documentSnapshot = null;
+        documentWorkerResult.changeLog = getEntryNames(compactionConfig, documentWorkerResult.changeLog);
+    }
+
+    /**
+     * Writes the current state of the document to the data store and replaces the document and change log in the result with a
+     * reference to it. If the snapshot cannot be written then the result is left unchanged.
+     *
+     * @return true if the snapshot was written
+     */
+    private boolean tryWriteSnapshot(
+        final ChangeLogCompactionConfiguration compactionConfig,
+        final DocumentWorkerDocumentTask documentWorkerResult
+    )
+    {
+        final String snapshotReference;
+        try {
+            snapshotReference = application.getDocumentSnapshotStore().writeSnapshot(DocumentConverter.convert(document));
+        } catch (final DataStoreException ex) {
+            LOG.warn("Failed to write document snapshot; sending the full change log instead", ex);
+            return false;
+        }
+
+        documentWorkerResult.document = null;
+        documentWorkerResult.documentSnapshot = snapshotReference;
+        documentWorkerResult.changeLog = getEntryNames(compactionConfig, documentWorkerResult.changeLog);
+
+        return true;
+    }
+
+    /**
+     * Returns the names of the change log entries which are to be kept once their changes have been folded into the document.
+     */
+    @Nonnull
+    private static List<DocumentWorkerChangeLogEntry> getEntryNames(
+        final ChangeLogCompactionConfiguration compactionConfig,
+        final List<DocumentWorkerChangeLogEntry> changeLog
+    )
+    {
+        final boolean retainEntryNames = compactionConfig != null && Boolean.TRUE.equals(compactionConfig.getRetainEntryNames());
+
+        // Keep an entry for this worker even if the earlier entry names are not being retained
+        final List<DocumentWorkerChangeLogEntry> retainedEntries = retainEntryNames
+            ? changeLog
+            : changeLog.subList(changeLog.size() - 1, changeLog.size());
+
+        return retainedEntries.stream()
+            .map(DocumentTask::withoutChanges)
+            .collect(Collectors.toList());
+    }
+
+    /**
+     * Returns the number of entries in the change log which have changes that need to be applied, so that the names kept when the
+     * document was last compacted do not count towards the next snapshot.
+     */
+    private static int countEntriesWithChanges(final List<DocumentWorkerChangeLogEntry> changeLog)
+    {
+        return (changeLog == null)
+            ? 0
+            : (int) changeLog.stream().filter(changeLogEntry -> changeLogEntry.changes != null).count();
+    }
+
+    @Nonnull
+    private static DocumentWorkerChangeLogEntry withoutChanges(final DocumentWorkerChangeLogEntry changeLogEntry)
+    {
+        final DocumentWorkerChangeLogEntry nameOnlyEntry = new DocumentWorkerChangeLogEntry();
+        nameOnlyEntry.name = changeLogEntry.name;
+
+        return nameOnlyEntry;
+    }
+
+    private static boolean exceedsMaxEntries(final ChangeLogCompactionConfiguration compactionConfig, final int changeLogSize)
+    {
+        if (compactionConfig == null) {
+            return false;
+        }
+
+        final Integer maxEntries = compactionConfig.getMaxEntries();
+
+        return maxEntries != null && maxEntries > 0 && changeLogSize > maxEntries;
+    }
+
+    private static boolean exceedsMaxBytes(final ChangeLogCompactionConfiguration compactionConfig, final int messageSize)
+    {
+        if (compactionConfig == null) {
+            return false;
+        }
+
+        final Long maxBytes = compactionConfig.getMaxBytes();
+
+        return maxBytes != null && maxBytes > 0 && messageSize > maxBytes;
+    }
+
     @Nonnull
     private String getChangeLogEntryName()
     {
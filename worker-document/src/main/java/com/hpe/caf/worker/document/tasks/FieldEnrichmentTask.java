@@ -77,7 +77,7 @@ public final class FieldEnrichmentTask extends AbstractTask
         }
 
         // Check that no customization scripts have been installed (as this response format doesn't support them)
-        if (scripts.streamImpls().anyMatch(ScriptImpl::shouldIncludeInResponse)) {
+        if (streamScripts().anyMatch(ScriptImpl::shouldIncludeInResponse)) {
             throw new UnsupportedOperationException();
         }
 
@@ -16,7 +16,12 @@
 package com.hpe.caf.worker.document.util;
 
 import com.hpe.caf.worker.document.model.Document;
+import com.hpe.caf.worker.document.model.Field;
+import com.hpe.caf.worker.document.model.FieldValue;
+import java.util.Spliterator;
+import java.util.Spliterators;
 import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * Document-related utility functions.
@@ -33,14 +38,42 @@ public final class DocumentFunctions
     /**
      * Returns a {@code Stream} of documents containing the specified document and all of its subdocuments and their subdocuments
      * recursively.
+     * <p>
+     * The documents are returned in pre-order, using {@link DocumentTraversal#preOrder(Document)}.
      *
      * @param document the root document of the hierarchy
      * @return a {@code Stream} of the documents that are in the specified document's hierarchy
      */
     public static Stream<Document> documentNodes(final Document document)
     {
-        return Stream.concat(
-            Stream.of(document),
-            document.getSubdocuments().stream().flatMap(DocumentFunctions::documentNodes));
+        final Spliterator<Document> spliterator = Spliterators.spliteratorUnknownSize(
+            DocumentTraversal.preOrder(document), Spliterator.ORDERED | Spliterator.NONNULL);
+
+        return StreamSupport.stream(spliterator, false);
+    }
+
+    /**
+     * Returns an estimate of the number of bytes that have been added to the specified document and its subdocuments since they were
+     * received. Only the fields that have been changed are examined, and references are counted by the length of the reference
+     * rather than by the size of the data that they refer to.
+     *
+     * @param document the root document of the hierarchy
+     * @return the estimated number of bytes added to the document hierarchy
+     */
+    public static long estimateChangesSize(final Document document)
+    {
+        return documentNodes(document)
+            .flatMap(node -> node.getFields().stream())
+            .filter(Field::hasChanges)
+            .flatMap(field -> field.getValues().stream())
+            .mapToLong(DocumentFunctions::estimateSize)
+            .sum();
+    }
+
+    private static long estimateSize(final FieldValue fieldValue)
+    {
+        return fieldValue.isReference()
+            ? fieldValue.getReference().length()
+            : fieldValue.getValue().length;
     }
 }
@@ -0,0 +1,286 @@
+/*
+ * Copyright 2016-2019 Micro Focus or one of its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hpe.caf.worker.document.util;
+
+import com.hpe.caf.worker.document.model.Document;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+
+/**
+ * Functions for traversing document hierarchies.
+ * <p>
+ * The traversals use an explicit stack rather than recursion, so they can be used with deep hierarchies, and they only allocate a
+ * small amount of state for each document on the current path. The subdocuments of a document are not retrieved until after the
+ * document itself has been returned or visited, so changes made to its subdocuments at that point are reflected in the traversal.
+ */
+public final class DocumentTraversal
+{
+    /**
+     * The depth limit to use if all of the documents in the hierarchy should be traversed.
+     */
+    public static final int UNLIMITED_DEPTH = Integer.MAX_VALUE;
+
+    /**
+     * Overrides the default constructor to ensure that no instances of this class are created.
+     */
+    private DocumentTraversal()
+    {
+    }
+
+    /**
+     * Returns an iterator which returns the specified document and then all of the documents in its hierarchy, with each document
+     * being returned before its subdocuments.
+     *
+     * @param root the root document of the hierarchy
+     * @return an iterator over the documents in the hierarchy, in pre-order
+     */
+    public static Iterator<Document> preOrder(final Document root)
+    {
+        return preOrder(root, UNLIMITED_DEPTH);
+    }
+
+    /**
+     * Returns an iterator which returns the specified document and then the documents in its hierarchy down to the specified depth,
+     * with each document being returned before its subdocuments.
+     *
+     * @param root the root document of the hierarchy
+     * @param maxDepth the depth of the deepest documents to return, where the root document is at depth 0
+     * @return an iterator over the documents in the hierarchy, in pre-order
+     */
+    public static Iterator<Document> preOrder(final Document root, final int maxDepth)
+    {
+        return new PreOrderIterator(Objects.requireNonNull(root), maxDepth);
+    }
+
+    /**
+     * Returns an iterator which returns all of the documents in the specified document's hierarchy, with each document being returned
+     * after its subdocuments. The root document is returned last.
+     *
+     * @param root the root document of the hierarchy
+     * @return an iterator over the documents in the hierarchy, in post-order
+     */
+    public static Iterator<Document> postOrder(final Document root)
+    {
+        return postOrder(root, UNLIMITED_DEPTH);
+    }
+
+    /**
+     * Returns an iterator which returns the documents in the specified document's hierarchy down to the specified depth, with each
+     * document being returned after its subdocuments. The root document is returned last.
+     *
+     * @param root the root document of the hierarchy
+     * @param maxDepth the depth of the deepest documents to return, where the root document is at depth 0
+     * @return an iterator over the documents in the hierarchy, in post-order
+     */
+    public static Iterator<Document> postOrder(final Document root, final int maxDepth)
+    {
+        return new PostOrderIterator(Objects.requireNonNull(root), maxDepth);
+    }
+
+    /**
+     * Visits the specified document and all of the documents in its hierarchy.
+     *
+     * @param root the root document of the hierarchy
+     * @param visitor the callback to call for each document
+     */
+    public static void walk(final Document root, final DocumentVisitor visitor)
+    {
+        walk(root, UNLIMITED_DEPTH, visitor);
+    }
+
+    /**
+     * Visits the specified document and the documents in its hierarchy down to the specified depth.
+     * <p>
+     * The visitor's {@link DocumentVisitor#preVisit preVisit()} method is called for each document before its subdocuments are visited,
+     * and its {@link DocumentVisitor#postVisit postVisit()} method is called after them.
+     *
+     * @param root the root document of the hierarchy
+     * @param maxDepth the depth of the deepest documents to visit, where the root document is at depth 0
+     * @param visitor the callback to call for each document
+     */
+    public static void walk(final Document root, final int maxDepth, final DocumentVisitor visitor)
+    {
+        Objects.requireNonNull(root);
+        Objects.requireNonNull(visitor);
+
+        final ArrayDeque<Frame> stack = new ArrayDeque<>();
+        stack.push(createVisitorFrame(root, 0, maxDepth, visitor));
+
+        while (!stack.isEmpty()) {
+            final Frame frame = stack.peek();
+            if (frame.subdocuments != null && frame.subdocuments.hasNext()) {
+                final Document subdocument = frame.subdocuments.next();
+                stack.push(createVisitorFrame(subdocument, frame.depth + 1, maxDepth, visitor));
+            } else {
+                stack.pop();
+                visitor.postVisit(frame.document, frame.depth);
+            }
+        }
+    }
+
+    private static Frame createVisitorFrame(
+        final Document document,
+        final int depth,
+        final int maxDepth,
+        final DocumentVisitor visitor
+    )
+    {
+        final boolean visitSubdocuments = visitor.preVisit(document, depth) && depth < maxDepth;
+
+        return new Frame(document, depth, visitSubdocuments ? document.getSubdocuments().iterator() : null);
+    }
+
+    /**
+     * A document on the current path through the hierarchy, along with the position reached in its subdocuments.
+     */
+    private static final class Frame
+    {
+        public final Document document;
+        public final int depth;
+        public final Iterator<? extends Document> subdocuments;
+
+        public Frame(final Document document, final int depth, final Iterator<? extends Document> subdocuments)
+        {
+            this.document = document;
+            this.depth = depth;
+            this.subdocuments = subdocuments;
+        }
+    }
+
+    private static final class PreOrderIterator implements Iterator<Document>
+    {
+        private final int maxDepth;
+
+        /**
+         * The subdocument iterators of the documents on the current path. The size of the stack is the depth of the documents returned
+         * by the iterator at the top of it.
+         */
+        private final ArrayDeque<Iterator<? extends Document>> stack;
+
+        /**
+         * The document most recently returned, if its subdocuments have not yet been added to the stack.
+         */
+        private Document lastDocument;
+        private int lastDepth;
+
+        /**
+         * The next document to be returned, if it has already been found.
+         */
+        private Document nextDocument;
+        private int nextDepth;
+
+        public PreOrderIterator(final Document root, final int maxDepth)
+        {
+            this.maxDepth = maxDepth;
+            this.stack = new ArrayDeque<>();
+            this.lastDocument = null;
+            this.lastDepth = 0;
+            this.nextDocument = root;
+            this.nextDepth = 0;
+        }
+
+        @Override
+        public boolean hasNext()
+        {
+            if (nextDocument == null) {
+                findNext();
+            }
+
+            return nextDocument != null;
+        }
+
+        @Override
+        public Document next()
+        {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+
+            lastDocument = nextDocument;
+            lastDepth = nextDepth;
+            nextDocument = null;
+
+            return lastDocument;
+        }
+
+        private void findNext()
+        {
+            // Descend into the subdocuments of the document most recently returned
+            if (lastDocument != null) {
+                if (lastDepth < maxDepth) {
+                    stack.push(lastDocument.getSubdocuments().iterator());
+                }
+                lastDocument = null;
+            }
+
+            // Find the next document, moving back up the hierarchy as each set of subdocuments is exhausted
+            while (!stack.isEmpty()) {
+                final Iterator<? extends Document> subdocuments = stack.peek();
+                if (subdocuments.hasNext()) {
+                    nextDocument = subdocuments.next();
+                    nextDepth = stack.size();
+                    return;
+                }
+                stack.pop();
+            }
+        }
+    }
+
+    private static final class PostOrderIterator implements Iterator<Document>
+    {
+        private final int maxDepth;
+        private final ArrayDeque<Frame> stack;
+
+        public PostOrderIterator(final Document root, final int maxDepth)
+        {
+            this.maxDepth = maxDepth;
+            this.stack = new ArrayDeque<>();
+            this.stack.push(createFrame(root, 0));
+        }
+
+        @Override
+        public boolean hasNext()
+        {
+            return !stack.isEmpty();
+        }
+
+        @Override
+        public Document next()
+        {
+            if (stack.isEmpty()) {
+                throw new NoSuchElementException();
+            }
+
+            // Descend as far as possible before returning the document at the top of the stack
+            for (;;) {
+                final Frame frame = stack.peek();
+                if (frame.subdocuments != null && frame.subdocuments.hasNext()) {
+                    stack.push(createFrame(frame.subdocuments.next(), frame.depth + 1));
+                } else {
+                    stack.pop();
+                    return frame.document;
+                }
+            }
+        }
+
+        private Frame createFrame(final Document document, final int depth)
+        {
+            return new Frame(document, depth, (depth < maxDepth) ? document.getSubdocuments().iterator() : null);
+        }
+    }
+}
@@ -0,0 +1,44 @@
+/*
+ * Copyright 2016-2019 Micro Focus or one of its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hpe.caf.worker.document.util;
+
+import com.hpe.caf.worker.document.model.Document;
+
+/**
+ * A callback interface for visiting the documents in a document hierarchy using {@link DocumentTraversal#walk walk()}.
+ */
+@FunctionalInterface
+public interface DocumentVisitor
+{
+    /**
+     * Called when a document is reached, before any of its subdocuments are visited.
+     *
+     * @param document the document being visited
+     * @param depth the depth of the document in the hierarchy, where the root document is at depth 0
+     * @return true if the document's subdocuments should be visited; false if they should be skipped
+     */
+    boolean preVisit(Document document, int depth);
+
+    /**
+     * Called after all of the document's subdocuments have been visited (or skipped).
+     *
+     * @param document the document being visited
+     * @param depth the depth of the document in the hierarchy, where the root document is at depth 0
+     */
+    default void postVisit(final Document document, final int depth)
+    {
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright 2016-2019 Micro Focus or one of its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hpe.caf.worker.document;
+
+import com.hpe.caf.worker.document.config.BatchSizeAdaptationConfiguration;
+import com.hpe.caf.worker.document.config.DocumentWorkerConfiguration;
+import com.hpe.caf.worker.document.impl.ApplicationImpl;
+import com.hpe.caf.worker.document.impl.BatchSizeControllerImpl;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+public class BatchSizeControllerImplTest
+{
+    @Test
+    public void staticLimitsAreNotAdjustedTest()
+    {
+        final BatchSizeControllerImpl controller = createController(false);
+
+        controller.recordBatch(100, 10000, 100, 500, 500, 20000);
+
+        Assert.assertEquals(100, controller.getMaximumBatchSize());
+        Assert.assertEquals(10000, controller.getMaximumBatchTime());
+        Assert.assertEquals(1, controller.getBatchCount());
+        Assert.assertEquals(1.0, controller.getLastBatchFillRatio(), 0);
+        Assert.assertEquals(20000, controller.getLastBatchProcessingTime());
+    }
+
+    @Test
+    public void slowBatchReducesBatchSizeTest()
+    {
+        final BatchSizeControllerImpl controller = createController(true);
+
+        controller.recordBatch(100, 10000, 100, 500, 500, 6000);
+        Assert.assertEquals(50, controller.getMaximumBatchSize());
+
+        controller.recordBatch(50, 10000, 50, 500, 500, 6000);
+        controller.recordBatch(25, 10000, 25, 500, 500, 6000);
+        controller.recordBatch(12, 10000, 12, 500, 500, 6000);
+        Assert.assertEquals(10, controller.getMaximumBatchSize());
+        Assert.assertEquals(4, controller.getBatchSizeDecreaseCount());
+    }
+
+    @Test
+    public void fullBatchIncreasesLimitsUpToCeilingTest()
+    {
+        final BatchSizeControllerImpl controller = createController(true);
+
+        controller.recordBatch(100, 10000, 100, 500, 500, 6000);
+        Assert.assertEquals(50, controller.getMaximumBatchSize());
+
+        controller.recordBatch(50, 10000, 50, 500, 500, 1000);
+        Assert.assertEquals(55, controller.getMaximumBatchSize());
+
+        for (int i = 0; i < 20; i++) {
+            final int batchSize = controller.getMaximumBatchSize();
+            controller.recordBatch(batchSize, 10000, batchSize, 500, 500, 1000);
+        }
+        Assert.assertEquals(100, controller.getMaximumBatchSize());
+        Assert.assertEquals(10000, controller.getMaximumBatchTime());
+    }
+
+    @Test
+    public void sparseBatchReducesBatchTimeTest()
+    {
+        final BatchSizeControllerImpl controller = createController(true);
+
+        controller.recordBatch(100, 10000, 10, 10000, 10000, 1000);
+        Assert.assertEquals(5000, controller.getMaximumBatchTime());
+        Assert.assertEquals(100, controller.getMaximumBatchSize());
+
+        controller.recordBatch(100, 5000, 10, 5000, 5000, 1000);
+        controller.recordBatch(100, 2500, 10, 2500, 2500, 1000);
+        Assert.assertEquals(2000, controller.getMaximumBatchTime());
+
+        controller.recordBatch(100, 2000, 100, 300, 300, 1000);
+        Assert.assertEquals(3000, controller.getMaximumBatchTime());
+        Assert.assertEquals(3, controller.getBatchTimeDecreaseCount());
+        Assert.assertEquals(1, controller.getBatchTimeIncreaseCount());
+    }
+
+    @Test
+    public void slowWorkerDoesNotReduceBatchTimeTest()
+    {
+        final BatchSizeControllerImpl controller = createController(true);
+
+        // The batch reached its time limit while mostly empty because the worker was processing the documents as they were added
+        controller.recordBatch(100, 10000, 10, 10000, 1000, 9000);
+        Assert.assertEquals(10000, controller.getMaximumBatchTime());
+        Assert.assertEquals(0, controller.getBatchTimeDecreaseCount());
+        Assert.assertEquals(1, controller.getBatchSizeDecreaseCount());
+    }
+
+    private static BatchSizeControllerImpl createController(final boolean adaptive)
+    {
+        final BatchSizeAdaptationConfiguration adaptationConfig = new BatchSizeAdaptationConfiguration();
+        adaptationConfig.setEnabled(adaptive);
+        adaptationConfig.setMinBatchSize(10);
+        adaptationConfig.setMinBatchTime(2000L);
+        adaptationConfig.setTargetProcessingTime(5000L);
+        adaptationConfig.setBatchSizeIncrement(5);
+
+        final DocumentWorkerConfiguration configuration = new DocumentWorkerConfiguration();
+        configuration.setMaxBatchSize(100);
+        configuration.setMaxBatchTime(10000);
+        configuration.setBatchSizeAdaptation(adaptationConfig);
+
+        return new BatchSizeControllerImpl(Mockito.mock(ApplicationImpl.class), configuration);
+    }
+}
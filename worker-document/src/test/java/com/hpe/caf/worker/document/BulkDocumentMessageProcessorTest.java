@@ -0,0 +1,527 @@
+/*
+ * Copyright 2016-2019 Micro Focus or one of its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hpe.caf.worker.document;
+
+import com.google.common.util.concurrent.Uninterruptibles;
+import com.hpe.caf.api.worker.BulkWorkerRuntime;
+import com.hpe.caf.api.worker.TaskRejectedException;
+import com.hpe.caf.api.worker.WorkerResponse;
+import com.hpe.caf.api.worker.WorkerTask;
+import com.hpe.caf.api.worker.WorkerTaskData;
+import com.hpe.caf.worker.document.config.BatchSizeAdaptationConfiguration;
+import com.hpe.caf.worker.document.config.DocumentWorkerConfiguration;
+import com.hpe.caf.worker.document.exceptions.DocumentWorkerTransientException;
+import com.hpe.caf.worker.document.extensibility.BulkDocumentWorker;
+import com.hpe.caf.worker.document.impl.ApplicationImpl;
+import com.hpe.caf.worker.document.impl.BatchSizeControllerImpl;
+import com.hpe.caf.worker.document.impl.InputMessageProcessorImpl;
+import com.hpe.caf.worker.document.model.Document;
+import com.hpe.caf.worker.document.model.Documents;
+import com.hpe.caf.worker.document.model.HealthMonitor;
+import com.hpe.caf.worker.document.tasks.FieldEnrichmentTask;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+public class BulkDocumentMessageProcessorTest
+{
+    private DocumentWorkerConfiguration configuration;
+    private TestRuntime runtime;
+    private ExecutorService batchPreparationExecutor;
+    private BatchSizeControllerImpl batchSizeController;
+
+    /**
+     * The ids of the documents processed by the worker, in the order that they were processed.
+     */
+    private List<String> processedIds;
+
+    /**
+     * The responses set on the tasks, in the order that they were set, as the document id followed by the type of response.
+     */
+    private Queue<String> responses;
+
+    @Before
+    public void setUp()
+    {
+        configuration = new DocumentWorkerConfiguration();
+        configuration.setMaxBatchSize(100);
+        configuration.setMaxBatchTime(500);
+        runtime = new TestRuntime();
+        batchPreparationExecutor = Executors.newSingleThreadExecutor();
+        processedIds = Collections.synchronizedList(new ArrayList<>());
+        responses = new ConcurrentLinkedQueue<>();
+    }
+
+    @After
+    public void tearDown()
+    {
+        batchPreparationExecutor.shutdownNow();
+    }
+
+    @Test(timeout = 10000)
+    public void prefetchedTasksProcessedInOrderTest() throws Exception
+    {
+        configuration.setMaxBatchPrefetch(3);
+        addTasks(0, 10);
+
+        processBatch(documents -> {
+            for (final Document document : documents) {
+                processedIds.add(getId(document));
+            }
+        });
+
+        Assert.assertEquals(ids(0, 10), processedIds);
+        Assert.assertEquals(ids(0, 10).stream().map(id -> id + ":success").collect(Collectors.toList()), new ArrayList<>(responses));
+    }
+
+    @Test(timeout = 10000)
+    public void leftoverTasksProcessedBeforeReturningTest() throws Exception
+    {
+        configuration.setMaxBatchPrefetch(3);
+        addTasks(0, 10);
+
+        // Each batch takes one document and then closes, leaving the tasks which were prefetched for it unused
+        final BatchProcessor takeOneDocument = documents -> {
+            final Document document = documents.iterator().next();
+            processedIds.add(getId(document));
+            if (processedIds.size() == 1) {
+                runtime.awaitRetrieved(4);
+            }
+            documents.closeBatch();
+        };
+
+        processBatch(takeOneDocument);
+
+        // The prefetched tasks are processed in batches of their own before returning, without retrieving any more tasks
+        Assert.assertEquals(4, runtime.retrievedCount.get());
+        Assert.assertEquals(ids(0, 4), processedIds);
+        Assert.assertEquals(ids(0, 4).stream().map(id -> id + ":success").collect(Collectors.toList()), new ArrayList<>(responses));
+        assertOneResponsePerRetrievedTask();
+    }
+
+    @Test(timeout = 10000)
+    public void leftoverTasksRejectedWhenBatchFailsTest() throws Exception
+    {
+        configuration.setMaxBatchPrefetch(3);
+        addTasks(0, 10);
+
+        processBatch(documents -> {
+            processedIds.add(getId(documents.iterator().next()));
+            runtime.awaitRetrieved(4);
+            throw new DocumentWorkerTransientException("Batch failed");
+        });
+
+        Assert.assertEquals(4, runtime.retrievedCount.get());
+        Assert.assertTrue(responses.stream().allMatch(response -> response.endsWith(":rejected")));
+        assertOneResponsePerRetrievedTask();
+    }
+
+    @Test(timeout = 10000)
+    public void leftoverTasksRejectedWhenNotTakenTest() throws Exception
+    {
+        configuration.setMaxBatchPrefetch(3);
+        addTasks(0, 10);
+
+        // Only the first batch takes a document, so the leftover tasks are never added to a batch
+        final AtomicInteger batchCount = new AtomicInteger();
+        processBatch(documents -> {
+            if (batchCount.getAndIncrement() == 0) {
+                processedIds.add(getId(documents.iterator().next()));
+                runtime.awaitRetrieved(4);
+            }
+            documents.closeBatch();
+        });
+
+        Assert.assertEquals(ids(0, 1), processedIds);
+        Assert.assertEquals(
+            Stream.of("0:success", "1:rejected", "2:rejected", "3:rejected").collect(Collectors.toList()),
+            new ArrayList<>(responses));
+        assertOneResponsePerRetrievedTask();
+    }
+
+    @Test(timeout = 10000)
+    public void prefetchStoppedWhileWaitingTest() throws Exception
+    {
+        configuration.setMaxBatchTime(60000);
+        configuration.setMaxBatchPrefetch(3);
+        addTasks(0, 1);
+
+        // Closing the batch stops the prefetcher waiting for more tasks rather than waiting for the batch time to expire
+        final long startTime = System.currentTimeMillis();
+        processBatch(documents -> {
+            processedIds.add(getId(documents.iterator().next()));
+            documents.closeBatch();
+        });
+        Assert.assertTrue(System.currentTimeMillis() - startTime < 30000);
+
+        Assert.assertEquals(ids(0, 1), processedIds);
+        Assert.assertEquals(Collections.singletonList("0:success"), new ArrayList<>(responses));
+
+        // No task was taken from the runtime after the batch was closed
+        addTasks(1, 2);
+        Assert.assertEquals(1, runtime.tasks.size());
+    }
+
+    @Test(timeout = 10000)
+    public void prefetchStoppedWhilePreparingTest() throws Exception
+    {
+        configuration.setMaxBatchPrefetch(3);
+        addTasks(0, 2);
+
+        // The second task is still being prepared when the batch is closed
+        final CountDownLatch preparingSecondTask = new CountDownLatch(1);
+        runtime.onCreateTask = id -> {
+            if (id.equals("1")) {
+                preparingSecondTask.countDown();
+                Uninterruptibles.sleepUninterruptibly(200, TimeUnit.MILLISECONDS);
+            }
+        };
+
+        processBatch(documents -> {
+            for (final Document document : documents) {
+                processedIds.add(getId(document));
+                preparingSecondTask.await();
+                documents.closeBatch();
+            }
+        });
+
+        // The task is processed in a batch of its own rather than being rejected or dropped
+        Assert.assertEquals(ids(0, 2), processedIds);
+        Assert.assertEquals(ids(0, 2).stream().map(id -> id + ":success").collect(Collectors.toList()), new ArrayList<>(responses));
+    }
+
+    @Test(timeout = 10000)
+    public void slowWorkerDoesNotReduceBatchTimeTest() throws Exception
+    {
+        enableBatchSizeAdaptation();
+        addTasks(0, 10);
+
+        // The worker processes each document as it is added, so the time limit is passed while the batch is mostly empty
+        processBatch(documents -> {
+            for (final Document document : documents) {
+                processedIds.add(getId(document));
+                Thread.sleep(100);
+            }
+        });
+
+        Assert.assertEquals(ids(0, 10), processedIds);
+        Assert.assertTrue(batchSizeController.getLastBatchProcessingTime() >= 1000);
+        Assert.assertEquals(0, batchSizeController.getBatchTimeDecreaseCount());
+        Assert.assertEquals(configuration.getMaxBatchTime(), batchSizeController.getMaximumBatchTime());
+    }
+
+    @Test(timeout = 10000)
+    public void sparseTasksReduceBatchTimeTest() throws Exception
+    {
+        enableBatchSizeAdaptation();
+        addTasks(0, 1);
+
+        // The time limit is reached while waiting for more tasks to arrive
+        processBatch(documents -> {
+            for (final Document document : documents) {
+                processedIds.add(getId(document));
+            }
+            Thread.sleep(100);
+        });
+
+        Assert.assertEquals(ids(0, 1), processedIds);
+        Assert.assertTrue(batchSizeController.getLastBatchProcessingTime() >= 100);
+        Assert.assertTrue(batchSizeController.getLastBatchProcessingTime() < configuration.getMaxBatchTime());
+        Assert.assertEquals(1, batchSizeController.getBatchTimeDecreaseCount());
+    }
+
+    @Test(timeout = 10000)
+    public void transientFailureRejectsOnlyAffectedTaskTest() throws Exception
+    {
+        addTasks(0, 3);
+
+        processBatch(documents -> {
+            for (final Document document : documents) {
+                final String id = getId(document);
+                processedIds.add(id);
+                if (id.equals("1")) {
+                    document.markTransientFailure(new DocumentWorkerTransientException("Service unavailable"));
+                }
+            }
+        });
+
+        // The rest of the batch is still completed normally
+        Assert.assertEquals(ids(0, 3), processedIds);
+        Assert.assertEquals(3, responses.size());
+        Assert.assertTrue(responses.contains("0:success"));
+        Assert.assertTrue(responses.contains("1:rejected"));
+        Assert.assertTrue(responses.contains("2:success"));
+    }
+
+    @Test(timeout = 10000)
+    public void completedTasksRespondedToEarlyTest() throws Exception
+    {
+        addTasks(0, 3);
+
+        processBatch(documents -> {
+            for (final Document document : documents) {
+                final String id = getId(document);
+                processedIds.add(id);
+
+                // The response is sent as soon as the task's only document is marked as completed
+                documents.markCompleted(document);
+                Assert.assertTrue(responses.contains(id + ":success"));
+
+                // Marking it again does not send another response
+                documents.markCompleted(document);
+            }
+
+            // Documents which are not part of the batch are not accepted
+            final DocumentWorkerTask otherTask = new DocumentWorkerTask();
+            otherTask.fields = new HashMap<>();
+            final Document otherDocument = FieldEnrichmentTask.create(
+                createApplication(), Mockito.mock(WorkerTaskData.class), otherTask).getDocument();
+            try {
+                documents.markCompleted(otherDocument);
+                Assert.fail("Expected the document to be rejected");
+            } catch (final IllegalArgumentException ex) {
+                // Expected
+            }
+        });
+
+        // Each task is only responded to once
+        Assert.assertEquals(ids(0, 3), processedIds);
+        Assert.assertEquals(ids(0, 3).stream().map(id -> id + ":success").collect(Collectors.toList()), new ArrayList<>(responses));
+    }
+
+    @Test(timeout = 10000)
+    public void parallelStreamTest() throws Exception
+    {
+        addTasks(0, 50);
+
+        processBatch(documents -> {
+            // The batch is filled before the stream is returned so that it can be split between threads
+            final Stream<Document> stream = documents.parallelStream();
+            Assert.assertTrue(documents.isBatchClosed());
+            Assert.assertEquals(50, documents.currentSize());
+
+            // The documents are marked as completed from the pool threads
+            final ForkJoinPool pool = new ForkJoinPool(4);
+            try {
+                pool.submit(() -> stream.forEach(document -> {
+                    processedIds.add(getId(document));
+                    try {
+                        documents.markCompleted(document);
+                    } catch (final InterruptedException ex) {
+                        throw new RuntimeException(ex);
+                    }
+                })).get();
+            } catch (final ExecutionException ex) {
+                throw new RuntimeException(ex);
+            } finally {
+                pool.shutdown();
+            }
+        });
+
+        // Every document is processed once and every task is responded to once
+        final List<String> sortedIds = new ArrayList<>(processedIds);
+        Collections.sort(sortedIds, Comparator.comparingInt(Integer::parseInt));
+        Assert.assertEquals(ids(0, 50), sortedIds);
+
+        final List<String> sortedResponses = new ArrayList<>(responses);
+        Collections.sort(sortedResponses, Comparator.comparingInt(response -> Integer.parseInt(response.split(":")[0])));
+        Assert.assertEquals(ids(0, 50).stream().map(id -> id + ":success").collect(Collectors.toList()), sortedResponses);
+    }
+
+    private void enableBatchSizeAdaptation()
+    {
+        final BatchSizeAdaptationConfiguration adaptationConfig = new BatchSizeAdaptationConfiguration();
+        adaptationConfig.setEnabled(true);
+        adaptationConfig.setMinBatchTime(100L);
+        configuration.setBatchSizeAdaptation(adaptationConfig);
+        configuration.setMaxBatchTime(250);
+    }
+
+    private void processBatch(final BatchProcessor batchProcessor) throws InterruptedException
+    {
+        final ApplicationImpl application = createApplication();
+        final BulkDocumentMessageProcessor messageProcessor = new BulkDocumentMessageProcessor(
+            application, createWorker(batchProcessor), runtime, batchPreparationExecutor, null);
+
+        messageProcessor.processTasks();
+    }
+
+    private void assertOneResponsePerRetrievedTask()
+    {
+        final List<String> respondedIds = responses.stream()
+            .map(response -> response.split(":")[0])
+            .sorted(Comparator.comparingInt(Integer::parseInt))
+            .collect(Collectors.toList());
+
+        Assert.assertEquals(ids(0, runtime.retrievedCount.get()), respondedIds);
+    }
+
+    private ApplicationImpl createApplication()
+    {
+        final ApplicationImpl application = Mockito.mock(ApplicationImpl.class);
+        Mockito.when(application.getConfiguration()).thenReturn(configuration);
+
+        batchSizeController = new BatchSizeControllerImpl(application, configuration);
+        Mockito.when(application.getBatchSizeController()).thenReturn(batchSizeController);
+
+        final InputMessageProcessorImpl inputMessageProcessor = Mockito.mock(InputMessageProcessorImpl.class);
+        try {
+            Mockito.when(inputMessageProcessor.createTask(Mockito.any(WorkerTaskData.class))).thenAnswer(invocation -> {
+                final WorkerTaskData workerTask = (WorkerTaskData) invocation.getArguments()[0];
+                final String id = runtime.taskIds.get(workerTask);
+                runtime.onCreateTask.accept(id);
+
+                final DocumentWorkerTask documentWorkerTask = new DocumentWorkerTask();
+                documentWorkerTask.fields = new HashMap<>();
+                documentWorkerTask.fields.put("ID", Collections.singletonList(createFieldValue(id)));
+                return FieldEnrichmentTask.create(application, workerTask, documentWorkerTask);
+            });
+        } catch (final Exception ex) {
+            throw new RuntimeException(ex);
+        }
+        Mockito.when(application.getInputMessageProcessor()).thenReturn(inputMessageProcessor);
+
+        return application;
+    }
+
+    private void addTasks(final int startId, final int endId)
+    {
+        for (int i = startId; i < endId; i++) {
+            final String id = String.valueOf(i);
+            final WorkerTask workerTask = Mockito.mock(WorkerTask.class);
+            Mockito.doAnswer(invocation -> responses.add(id + ":success"))
+                .when(workerTask).setResponse(Mockito.any(WorkerResponse.class));
+            Mockito.doAnswer(invocation -> responses.add(id + ":rejected"))
+                .when(workerTask).setResponse(Mockito.any(TaskRejectedException.class));
+
+            runtime.taskIds.put(workerTask, id);
+            runtime.tasks.add(workerTask);
+        }
+    }
+
+    private static List<String> ids(final int startId, final int endId)
+    {
+        return IntStream.range(startId, endId).mapToObj(String::valueOf).collect(Collectors.toList());
+    }
+
+    private static String getId(final Document document)
+    {
+        return document.getField("ID").getStringValues().get(0);
+    }
+
+    private static DocumentWorkerFieldValue createFieldValue(final String data)
+    {
+        final DocumentWorkerFieldValue fieldValue = new DocumentWorkerFieldValue();
+        fieldValue.data = data;
+        return fieldValue;
+    }
+
+    private static BulkDocumentWorker createWorker(final BatchProcessor batchProcessor)
+    {
+        return new BulkDocumentWorker()
+        {
+            @Override
+            public void processDocuments(final Documents documents) throws InterruptedException, DocumentWorkerTransientException
+            {
+                batchProcessor.processDocuments(documents);
+            }
+
+            @Override
+            public void checkHealth(final HealthMonitor healthMonitor)
+            {
+            }
+
+            @Override
+            public void processDocument(final Document document)
+            {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    private interface BatchProcessor
+    {
+        void processDocuments(Documents documents) throws InterruptedException, DocumentWorkerTransientException;
+    }
+
+    private interface TaskCreationListener
+    {
+        void accept(String id) throws InterruptedException;
+    }
+
+    private static final class TestRuntime implements BulkWorkerRuntime
+    {
+        public final BlockingQueue<WorkerTask> tasks = new LinkedBlockingQueue<>();
+        public final Map<WorkerTaskData, String> taskIds = new ConcurrentHashMap<>();
+        public final AtomicInteger retrievedCount = new AtomicInteger();
+        public volatile TaskCreationListener onCreateTask = id -> {
+        };
+
+        @Override
+        public WorkerTask getNextWorkerTask()
+        {
+            return recordRetrieved(tasks.poll());
+        }
+
+        @Override
+        public WorkerTask getNextWorkerTask(final long maxWaitMillis) throws InterruptedException
+        {
+            return recordRetrieved(tasks.poll(maxWaitMillis, TimeUnit.MILLISECONDS));
+        }
+
+        /**
+         * Waits until the specified number of tasks have been retrieved, or for a second if they are not.
+         */
+        public void awaitRetrieved(final int count) throws InterruptedException
+        {
+            final long endTime = System.currentTimeMillis() + 1000;
+            while (retrievedCount.get() < count && System.currentTimeMillis() < endTime) {
+                Thread.sleep(10);
+            }
+        }
+
+        private WorkerTask recordRetrieved(final WorkerTask workerTask)
+        {
+            if (workerTask != null) {
+                retrievedCount.incrementAndGet();
+            }
+            return workerTask;
+        }
+    }
+}
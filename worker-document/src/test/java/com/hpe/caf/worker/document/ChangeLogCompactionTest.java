@@ -0,0 +1,270 @@
+/*
+ * Copyright 2016-2019 Micro Focus or one of its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hpe.caf.worker.document;
+
+import com.hpe.caf.api.Codec;
+import com.hpe.caf.api.worker.DataStore;
+import com.hpe.caf.api.worker.WorkerTaskData;
+import com.hpe.caf.worker.document.config.ChangeLogCompactionConfiguration;
+import com.hpe.caf.worker.document.config.DocumentSnapshotConfiguration;
+import com.hpe.caf.worker.document.config.DocumentWorkerConfiguration;
+import com.hpe.caf.worker.document.impl.ApplicationImpl;
+import com.hpe.caf.worker.document.impl.DocumentSnapshotStore;
+import com.hpe.caf.worker.document.tasks.DocumentTask;
+import com.hpe.caf.worker.document.views.ReadOnlyDocument;
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+
+public class ChangeLogCompactionTest
+{
+    @Test
+    public void compactByEntryCountTest() throws Exception
+    {
+        final ChangeLogCompactionConfiguration compactionConfig = new ChangeLogCompactionConfiguration();
+        compactionConfig.setMaxEntries(3);
+        compactionConfig.setRetainEntryNames(true);
+
+        // Below the limit the change log is passed on
+        final DocumentWorkerDocumentTask shortResult = processTask(compactionConfig, 2);
+        Assert.assertEquals(3, shortResult.changeLog.size());
+        Assert.assertNull(shortResult.document.fields);
+
+        // Above the limit the changes are folded into the document
+        final DocumentWorkerDocumentTask longResult = processTask(compactionConfig, 3);
+        Assert.assertEquals(
+            Arrays.asList("stage-0", "stage-1", "stage-2", "worker-name:1.0.0"),
+            longResult.changeLog.stream().map(entry -> entry.name).collect(Collectors.toList()));
+        Assert.assertTrue(longResult.changeLog.stream().allMatch(entry -> entry.changes == null));
+        Assert.assertEquals(
+            Arrays.asList("value-0", "value-1", "value-2", "new-value"),
+            longResult.document.fields.get("FIELD").stream().map(value -> value.data).collect(Collectors.toList()));
+    }
+
+    @Test
+    public void compactWithoutEntryNamesTest() throws Exception
+    {
+        final ChangeLogCompactionConfiguration compactionConfig = new ChangeLogCompactionConfiguration();
+        compactionConfig.setMaxBytes(1L);
+
+        final DocumentWorkerDocumentTask result = processTask(compactionConfig, 2);
+        Assert.assertEquals(1, result.changeLog.size());
+        Assert.assertEquals("worker-name:1.0.0", result.changeLog.get(0).name);
+        Assert.assertEquals(3, result.document.fields.get("FIELD").size());
+    }
+
+    @Test
+    public void writeSnapshotTest() throws Exception
+    {
+        final DataStore dataStore = Mockito.mock(DataStore.class);
+        Mockito.when(dataStore.store(Mockito.any(byte[].class), Mockito.any())).thenReturn("snapshot-ref");
+
+        final Codec codec = Mockito.mock(Codec.class);
+        Mockito.when(codec.serialise(Mockito.any())).thenReturn(new byte[100]);
+
+        final DocumentSnapshotConfiguration snapshotConfig = new DocumentSnapshotConfiguration();
+        snapshotConfig.setMinChangeLogEntries(3);
+        final DocumentSnapshotStore snapshotStore = new DocumentSnapshotStore(dataStore, codec, snapshotConfig);
+
+        // The change log is passed on until it is long enough for a snapshot
+        final DocumentWorkerDocumentTask shortResult = processTask(null, snapshotStore, 1);
+        Assert.assertNull(shortResult.documentSnapshot);
+        Assert.assertEquals(2, shortResult.changeLog.size());
+
+        final DocumentWorkerDocumentTask result = processTask(null, snapshotStore, 2);
+        Assert.assertNull(result.document);
+        Assert.assertEquals("snapshot-ref", result.documentSnapshot);
+        Assert.assertEquals(1, result.changeLog.size());
+        Assert.assertNull(result.changeLog.get(0).changes);
+
+        // The snapshot is read back from the local cache
+        final ReadOnlyDocument snapshot = snapshotStore.readSnapshot("snapshot-ref");
+        Assert.assertEquals(3, snapshot.getFields().get("FIELD").size());
+        Mockito.verify(dataStore, Mockito.never()).retrieve(Mockito.anyString());
+    }
+
+    @Test
+    public void snapshotRetainsEntryNamesTest() throws Exception
+    {
+        final DataStore dataStore = Mockito.mock(DataStore.class);
+        Mockito.when(dataStore.store(Mockito.any(byte[].class), Mockito.any())).thenReturn("snapshot-ref");
+
+        final Codec codec = Mockito.mock(Codec.class);
+        Mockito.when(codec.serialise(Mockito.any())).thenReturn(new byte[100]);
+
+        final ChangeLogCompactionConfiguration compactionConfig = new ChangeLogCompactionConfiguration();
+        compactionConfig.setRetainEntryNames(true);
+
+        final DocumentSnapshotConfiguration snapshotConfig = new DocumentSnapshotConfiguration();
+        snapshotConfig.setMinChangeLogEntries(3);
+        final DocumentSnapshotStore snapshotStore = new DocumentSnapshotStore(dataStore, codec, snapshotConfig);
+
+        final DocumentWorkerDocumentTask result = processTask(compactionConfig, snapshotStore, 2);
+        Assert.assertEquals("snapshot-ref", result.documentSnapshot);
+        Assert.assertEquals(
+            Arrays.asList("stage-0", "stage-1", "worker-name:1.0.0"),
+            result.changeLog.stream().map(entry -> entry.name).collect(Collectors.toList()));
+        Assert.assertTrue(result.changeLog.stream().allMatch(entry -> entry.changes == null));
+
+        // The retained names do not count towards the next snapshot
+        final DocumentWorkerDocumentTask nextResult
+            = processTask(compactionConfig, snapshotStore, result.documentSnapshot, result.changeLog);
+        Assert.assertEquals("snapshot-ref", nextResult.documentSnapshot);
+        Assert.assertEquals(4, nextResult.changeLog.size());
+        Assert.assertNotNull(nextResult.changeLog.get(3).changes);
+        Mockito.verify(dataStore, Mockito.times(1)).store(Mockito.any(byte[].class), Mockito.any());
+    }
+
+    @Test
+    public void deleteSupersededSnapshotTest() throws Exception
+    {
+        final DataStore dataStore = Mockito.mock(DataStore.class);
+        Mockito.when(dataStore.store(Mockito.any(byte[].class), Mockito.any())).thenReturn("new-snapshot-ref");
+
+        final Codec codec = Mockito.mock(Codec.class);
+        Mockito.when(codec.serialise(Mockito.any())).thenReturn(new byte[100]);
+
+        final DocumentSnapshotConfiguration snapshotConfig = new DocumentSnapshotConfiguration();
+        snapshotConfig.setMinChangeLogEntries(3);
+        snapshotConfig.setDeleteSuperseded(true);
+        final DocumentSnapshotStore snapshotStore = new DocumentSnapshotStore(dataStore, codec, snapshotConfig);
+
+        // The snapshot is kept while the response still refers to it
+        final DocumentWorkerDocumentTask shortResult
+            = processTask(null, snapshotStore, "old-snapshot-ref", createChangeLog(1));
+        Assert.assertEquals("old-snapshot-ref", shortResult.documentSnapshot);
+        Mockito.verify(dataStore, Mockito.never()).delete(Mockito.anyString());
+
+        // It is deleted once the response refers to a new snapshot instead
+        final DocumentWorkerDocumentTask result
+            = processTask(null, snapshotStore, "old-snapshot-ref", createChangeLog(2));
+        Assert.assertEquals("new-snapshot-ref", result.documentSnapshot);
+        Mockito.verify(dataStore).delete("old-snapshot-ref");
+    }
+
+    @Test
+    public void snapshotCacheLimitedByBytesTest() throws Exception
+    {
+        final DataStore dataStore = Mockito.mock(DataStore.class);
+        Mockito.when(dataStore.store(Mockito.any(byte[].class), Mockito.any())).thenReturn("snapshot-1", "snapshot-2");
+        Mockito.when(dataStore.retrieve("snapshot-1")).thenReturn(new ByteArrayInputStream(new byte[100]));
+
+        final Codec codec = Mockito.mock(Codec.class);
+        Mockito.when(codec.serialise(Mockito.any())).thenReturn(new byte[100], new byte[101]);
+        Mockito.when(codec.deserialise(Mockito.any(byte[].class), Mockito.eq(DocumentWorkerDocument.class), Mockito.any()))
+            .thenReturn(new DocumentWorkerDocument());
+
+        final DocumentSnapshotConfiguration snapshotConfig = new DocumentSnapshotConfiguration();
+        snapshotConfig.setMaxCacheBytes(150L);
+        final DocumentSnapshotStore snapshotStore = new DocumentSnapshotStore(dataStore, codec, snapshotConfig);
+
+        snapshotStore.writeSnapshot(new DocumentWorkerDocument());
+        snapshotStore.writeSnapshot(new DocumentWorkerDocument());
+
+        // Only the most recent snapshot fits in the cache, so the first one has to be retrieved again
+        snapshotStore.readSnapshot("snapshot-2");
+        Mockito.verify(dataStore, Mockito.never()).retrieve(Mockito.anyString());
+
+        snapshotStore.readSnapshot("snapshot-1");
+        Mockito.verify(dataStore).retrieve("snapshot-1");
+    }
+
+    private static DocumentWorkerDocumentTask processTask(
+        final ChangeLogCompactionConfiguration compactionConfig,
+        final int changeLogLength
+    ) throws Exception
+    {
+        final DocumentSnapshotStore snapshotStore
+            = new DocumentSnapshotStore(Mockito.mock(DataStore.class), Mockito.mock(Codec.class), null);
+
+        return processTask(compactionConfig, snapshotStore, changeLogLength);
+    }
+
+    private static DocumentWorkerDocumentTask processTask(
+        final ChangeLogCompactionConfiguration compactionConfig,
+        final DocumentSnapshotStore snapshotStore,
+        final int changeLogLength
+    ) throws Exception
+    {
+        return processTask(compactionConfig, snapshotStore, null, createChangeLog(changeLogLength));
+    }
+
+    private static DocumentWorkerDocumentTask processTask(
+        final ChangeLogCompactionConfiguration compactionConfig,
+        final DocumentSnapshotStore snapshotStore,
+        final String documentSnapshot,
+        final List<DocumentWorkerChangeLogEntry> changeLog
+    ) throws Exception
+    {
+        final DocumentWorkerConfiguration configuration = new DocumentWorkerConfiguration();
+        configuration.setWorkerName("worker-name");
+        configuration.setWorkerVersion("1.0.0");
+        configuration.setChangeLogCompaction(compactionConfig);
+
+        final ApplicationImpl application = Mockito.mock(ApplicationImpl.class);
+        Mockito.when(application.getConfiguration()).thenReturn(configuration);
+        Mockito.when(application.getDocumentSnapshotStore()).thenReturn(snapshotStore);
+        Mockito.when(application.serialiseResult(Mockito.any())).thenReturn(new byte[100]);
+
+        final DocumentWorkerDocument document = new DocumentWorkerDocument();
+        document.reference = "doc";
+
+        final DocumentWorkerDocumentTask documentTask = new DocumentWorkerDocumentTask();
+        documentTask.document = (documentSnapshot == null) ? document : null;
+        documentTask.documentSnapshot = documentSnapshot;
+        documentTask.changeLog = new ArrayList<>(changeLog);
+
+        final DocumentTask task = DocumentTask.create(
+            application, Mockito.mock(WorkerTaskData.class), documentTask, ReadOnlyDocument.create(document));
+        task.getDocument().getField("FIELD").add("new-value");
+        task.createWorkerResponse();
+
+        final ArgumentCaptor<DocumentWorkerDocumentTask> result = ArgumentCaptor.forClass(DocumentWorkerDocumentTask.class);
+        Mockito.verify(application, Mockito.atLeastOnce()).serialiseResult(result.capture());
+
+        final List<DocumentWorkerDocumentTask> results = result.getAllValues();
+        return results.get(results.size() - 1);
+    }
+
+    private static List<DocumentWorkerChangeLogEntry> createChangeLog(final int changeLogLength)
+    {
+        final List<DocumentWorkerChangeLogEntry> changeLog = new ArrayList<>();
+        for (int i = 0; i < changeLogLength; i++) {
+            final DocumentWorkerChange change = new DocumentWorkerChange();
+            change.addFields = Collections.singletonMap("FIELD", Arrays.asList(createFieldValue("value-" + i)));
+
+            final DocumentWorkerChangeLogEntry changeLogEntry = new DocumentWorkerChangeLogEntry();
+            changeLogEntry.name = "stage-" + i;
+            changeLogEntry.changes = Arrays.asList(change);
+            changeLog.add(changeLogEntry);
+        }
+        return changeLog;
+    }
+
+    private static DocumentWorkerFieldValue createFieldValue(final String data)
+    {
+        final DocumentWorkerFieldValue fieldValue = new DocumentWorkerFieldValue();
+        fieldValue.data = data;
+        return fieldValue;
+    }
+}
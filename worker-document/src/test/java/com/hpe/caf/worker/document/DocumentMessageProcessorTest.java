@@ -0,0 +1,227 @@
+/*
+ * Copyright 2016-2019 Micro Focus or one of its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hpe.caf.worker.document;
+
+import com.hpe.caf.api.Codec;
+import com.hpe.caf.api.worker.DataStore;
+import com.hpe.caf.api.worker.TaskRejectedException;
+import com.hpe.caf.api.worker.WorkerTaskData;
+import com.hpe.caf.worker.document.config.DocumentWorkerConfiguration;
+import com.hpe.caf.worker.document.exceptions.DocumentWorkerTransientException;
+import com.hpe.caf.worker.document.extensibility.DocumentWorker;
+import com.hpe.caf.worker.document.impl.ApplicationImpl;
+import com.hpe.caf.worker.document.impl.DocumentSnapshotStore;
+import com.hpe.caf.worker.document.impl.InputMessageProcessorImpl;
+import com.hpe.caf.worker.document.model.Document;
+import com.hpe.caf.worker.document.model.HealthMonitor;
+import com.hpe.caf.worker.document.model.Script;
+import com.hpe.caf.worker.document.scripting.JavaScriptManager;
+import com.hpe.caf.worker.document.tasks.DocumentTask;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+public class DocumentMessageProcessorTest
+{
+    private ForkJoinPool subdocumentPool;
+    private List<String> processedReferences;
+
+    @Before
+    public void setUp()
+    {
+        subdocumentPool = new ForkJoinPool(4);
+        processedReferences = Collections.synchronizedList(new ArrayList<>());
+    }
+
+    @After
+    public void tearDown()
+    {
+        subdocumentPool.shutdownNow();
+    }
+
+    @Test(timeout = 10000)
+    public void concurrentSubdocumentsProcessedAfterParentTest() throws Exception
+    {
+        final DocumentTask task = createTask(4, 3);
+
+        final DocumentMessageProcessor processor = createProcessor(task, document -> {
+            processedReferences.add(document.getReference());
+        });
+
+        Assert.assertNotNull(processor.doWork());
+
+        // Every document is processed once, and each document is processed before any of its subdocuments
+        Assert.assertEquals(1 + 4 + 4 * 3, processedReferences.size());
+        Assert.assertEquals(processedReferences.size(), processedReferences.stream().distinct().count());
+        Assert.assertEquals("root", processedReferences.get(0));
+        for (int i = 0; i < 4; i++) {
+            final int parentIndex = processedReferences.indexOf("sub-" + i);
+            for (int j = 0; j < 3; j++) {
+                Assert.assertTrue(parentIndex < processedReferences.indexOf("sub-" + i + "-" + j));
+            }
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void firstFailurePropagatedTest() throws Exception
+    {
+        final DocumentTask task = createTask(4, 3);
+        final DocumentWorkerTransientException firstFailure = new DocumentWorkerTransientException("First failure");
+        final CountDownLatch firstFailureThrown = new CountDownLatch(1);
+
+        final DocumentMessageProcessor processor = createProcessor(task, document -> {
+            processedReferences.add(document.getReference());
+            switch (document.getReference()) {
+                case "sub-1":
+                    firstFailureThrown.countDown();
+                    throw firstFailure;
+                case "sub-2":
+                    // This failure happens after the first one so it is not the one that is propagated
+                    firstFailureThrown.await(5, TimeUnit.SECONDS);
+                    throw new IllegalStateException("Second failure");
+                default:
+                    break;
+            }
+        });
+
+        try {
+            processor.doWork();
+            Assert.fail("Expected the task to be rejected");
+        } catch (final TaskRejectedException ex) {
+            Assert.assertSame(firstFailure, ex.getCause());
+        }
+
+        // The subdocuments of the documents which failed are not processed
+        for (int j = 0; j < 3; j++) {
+            Assert.assertFalse(processedReferences.contains("sub-1-" + j));
+            Assert.assertFalse(processedReferences.contains("sub-2-" + j));
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void scriptEventsRaisedOneAtATimeTest() throws Exception
+    {
+        final DocumentTask task = createTask(4, 3);
+
+        final Script script = task.getScripts().add();
+        script.setName("concurrency.js");
+        script.setScriptInline(
+            "var active = 0;\n"
+            + "var maxActive = 0;\n"
+            + "var count = 0;\n"
+            + "function onEvent() {\n"
+            + "    active++;\n"
+            + "    maxActive = Math.max(maxActive, active);\n"
+            + "    java.lang.Thread.sleep(5);\n"
+            + "    count++;\n"
+            + "    active--;\n"
+            + "}\n"
+            + "function onBeforeProcessDocument(e) { onEvent(); }\n"
+            + "function onProcessDocument(e) { onEvent(); }\n"
+            + "function onAfterProcessDocument(e) { onEvent(); }\n"
+            + "function onAfterProcessTask(e) {\n"
+            + "    e.rootDocument.getField('MAX_ACTIVE').add(String(maxActive));\n"
+            + "    e.rootDocument.getField('EVENT_COUNT').add(String(count));\n"
+            + "}");
+
+        final DocumentMessageProcessor processor = createProcessor(task, document -> {
+            processedReferences.add(document.getReference());
+            Thread.sleep(5);
+        });
+
+        Assert.assertNotNull(processor.doWork());
+
+        Assert.assertEquals(17, processedReferences.size());
+        Assert.assertEquals("1", task.getDocument().getField("MAX_ACTIVE").getStringValues().get(0));
+        Assert.assertEquals(String.valueOf(17 * 3), task.getDocument().getField("EVENT_COUNT").getStringValues().get(0));
+    }
+
+    private DocumentMessageProcessor createProcessor(final DocumentTask task, final DocumentProcessor documentProcessor)
+        throws Exception
+    {
+        final ApplicationImpl application = (ApplicationImpl) task.getApplication();
+
+        final InputMessageProcessorImpl inputMessageProcessor = Mockito.mock(InputMessageProcessorImpl.class);
+        Mockito.when(inputMessageProcessor.createTask(Mockito.any(WorkerTaskData.class))).thenReturn(task);
+        Mockito.when(inputMessageProcessor.getProcessSubdocumentsSeparately()).thenReturn(true);
+        Mockito.when(application.getInputMessageProcessor()).thenReturn(inputMessageProcessor);
+
+        final DocumentWorker documentWorker = new DocumentWorker()
+        {
+            @Override
+            public void checkHealth(final HealthMonitor healthMonitor)
+            {
+            }
+
+            @Override
+            public void processDocument(final Document document) throws InterruptedException, DocumentWorkerTransientException
+            {
+                documentProcessor.processDocument(document);
+            }
+        };
+
+        return new DocumentMessageProcessor(application, documentWorker, Mockito.mock(WorkerTaskData.class), subdocumentPool);
+    }
+
+    /**
+     * Creates a task with a root document which has the specified number of subdocuments, each of which has the specified number of
+     * subdocuments of its own.
+     */
+    private static DocumentTask createTask(final int subdocumentCount, final int nestedSubdocumentCount) throws Exception
+    {
+        final DocumentWorkerDocumentTask documentTask = new DocumentWorkerDocumentTask();
+        documentTask.document = new DocumentWorkerDocument();
+        documentTask.document.reference = "root";
+        documentTask.document.subdocuments = new ArrayList<>();
+        for (int i = 0; i < subdocumentCount; i++) {
+            final DocumentWorkerDocument subdocument = new DocumentWorkerDocument();
+            subdocument.reference = "sub-" + i;
+            subdocument.subdocuments = new ArrayList<>();
+            for (int j = 0; j < nestedSubdocumentCount; j++) {
+                final DocumentWorkerDocument nestedSubdocument = new DocumentWorkerDocument();
+                nestedSubdocument.reference = "sub-" + i + "-" + j;
+                subdocument.subdocuments.add(nestedSubdocument);
+            }
+            documentTask.document.subdocuments.add(subdocument);
+        }
+
+        final DocumentWorkerConfiguration configuration = new DocumentWorkerConfiguration();
+        configuration.setWorkerName("worker-name");
+        configuration.setWorkerVersion("1.0.0");
+
+        final ApplicationImpl application = Mockito.mock(ApplicationImpl.class);
+        Mockito.when(application.getConfiguration()).thenReturn(configuration);
+        Mockito.when(application.getJavaScriptManager()).thenReturn(new JavaScriptManager(null));
+        Mockito.when(application.getDocumentSnapshotStore()).thenReturn(
+            new DocumentSnapshotStore(Mockito.mock(DataStore.class), Mockito.mock(Codec.class), null));
+        Mockito.when(application.serialiseResult(Mockito.any())).thenReturn(new byte[100]);
+
+        return DocumentTask.create(application, Mockito.mock(WorkerTaskData.class), documentTask);
+    }
+
+    private interface DocumentProcessor
+    {
+        void processDocument(Document document) throws InterruptedException, DocumentWorkerTransientException;
+    }
+}
@@ -15,11 +15,20 @@
  */
 package com.hpe.caf.worker.document;
 
+import com.hpe.caf.api.worker.DataStore;
 import com.hpe.caf.api.worker.WorkerTaskData;
 import com.hpe.caf.worker.document.impl.*;
+import com.hpe.caf.worker.document.model.Field;
+import com.hpe.caf.worker.document.model.FieldValue;
+import com.hpe.caf.worker.document.output.ChangeLogBuilder;
 import com.hpe.caf.worker.document.tasks.FieldEnrichmentTask;
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
 import org.apache.commons.codec.binary.Base64;
+import org.apache.commons.io.IOUtils;
 import org.junit.Assert;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -121,6 +130,127 @@ public class FieldImplTest
         Assert.assertEquals(DocumentWorkerAction.replace, fieldChanges.action);
     }
 
+    @Test
+    public void fieldSetToInitialValueTest()
+    {
+        final FieldImpl fieldImpl = createFieldImpl("REFERENCE");
+        fieldImpl.set("/mnt/fs/docs/hr policy.doc");
+
+        Assert.assertNull(fieldImpl.getChanges());
+        Assert.assertFalse(fieldImpl.hasChanges());
+    }
+
+    @Test
+    public void fieldClearAndReAddTest()
+    {
+        final FieldImpl fieldImpl = createFieldImpl("REFERENCE");
+        fieldImpl.clear();
+        fieldImpl.add("/mnt/fs/docs/hr policy.doc");
+        fieldImpl.add("/mnt/fs/docs/hr policy v2.doc");
+
+        final DocumentWorkerFieldChanges fieldChanges = fieldImpl.getChanges();
+
+        Assert.assertEquals(DocumentWorkerAction.add, fieldChanges.action);
+        Assert.assertEquals(1, fieldChanges.values.size());
+        Assert.assertEquals("/mnt/fs/docs/hr policy v2.doc", fieldChanges.values.get(0).data);
+    }
+
+    @Test
+    public void largeFieldValuesStoredTest() throws Exception
+    {
+        final DataStore dataStore = Mockito.mock(DataStore.class);
+        Mockito.when(dataStore.store(Mockito.any(byte[].class), Mockito.any())).thenReturn("stored-ref");
+
+        final FieldValueStore fieldValueStore = new FieldValueStore(dataStore, 8);
+        final ApplicationImpl application = Mockito.mock(ApplicationImpl.class);
+        Mockito.when(application.getFieldValueStore()).thenReturn(fieldValueStore);
+        final DocumentImpl document
+            = createDocument("/mnt/fs/docs/hr policy.doc", "REFERENCE", DocumentWorkerFieldEncoding.utf8, application);
+
+        final Field field = document.getField("CONTENT");
+        field.add("short");
+        field.add("longer than eight bytes");
+        field.add(new byte[6]);
+        field.add(new byte[7]);
+
+        // The values are held inline in the document model
+        Assert.assertEquals(4, field.getValues().size());
+        Assert.assertFalse(field.getValues().stream().anyMatch(FieldValue::isReference));
+        Mockito.verifyZeroInteractions(dataStore);
+
+        // The large values are stored when the changes are recorded, and only once however many times they are recorded
+        recordChanges(document);
+        final List<DocumentWorkerFieldValue> values = recordChanges(document).get(0).addFields.get("CONTENT");
+        Assert.assertEquals("short", values.get(0).data);
+        Assert.assertEquals("stored-ref", values.get(1).data);
+        Assert.assertEquals(DocumentWorkerFieldEncoding.storage_ref, values.get(1).encoding);
+        Assert.assertEquals(DocumentWorkerFieldEncoding.base64, values.get(2).encoding);
+        Assert.assertEquals(DocumentWorkerFieldEncoding.storage_ref, values.get(3).encoding);
+
+        Mockito.verify(dataStore).store("longer than eight bytes".getBytes("UTF-8"), null);
+        Mockito.verify(dataStore).store(new byte[7], null);
+        Mockito.verifyNoMoreInteractions(dataStore);
+
+        Assert.assertEquals(2, fieldValueStore.getStoredCount());
+        Assert.assertEquals(30, fieldValueStore.getStoredBytes());
+        Assert.assertEquals(0, fieldValueStore.getFailedCount());
+    }
+
+    @Test
+    public void largeFieldValueResetTest() throws Exception
+    {
+        final String largeValue = "longer than eight bytes";
+        final DataStore dataStore = Mockito.mock(DataStore.class);
+
+        final ApplicationImpl application = Mockito.mock(ApplicationImpl.class);
+        Mockito.when(application.getFieldValueStore()).thenReturn(new FieldValueStore(dataStore, 8));
+        final DocumentImpl document = createDocument(largeValue, "CONTENT", DocumentWorkerFieldEncoding.utf8, application);
+
+        // Setting the field to the value it already has is not a change, so nothing needs to be stored
+        final Field field = document.getField("CONTENT");
+        field.set(largeValue);
+
+        Assert.assertFalse(field.hasChanges());
+        Assert.assertTrue(recordChanges(document).isEmpty());
+        Mockito.verifyZeroInteractions(dataStore);
+    }
+
+    @Test
+    public void streamedFieldValuesStoredTest() throws Exception
+    {
+        final List<String> storedValues = new ArrayList<>();
+        final DataStore dataStore = Mockito.mock(DataStore.class);
+        Mockito.when(dataStore.store(Mockito.any(InputStream.class), Mockito.any())).thenAnswer(invocation -> {
+            final InputStream data = (InputStream) invocation.getArguments()[0];
+            storedValues.add(IOUtils.toString(data, StandardCharsets.UTF_8));
+            return "stored-ref-" + storedValues.size();
+        });
+
+        final ApplicationImpl application = Mockito.mock(ApplicationImpl.class);
+        Mockito.when(application.getDataStore()).thenReturn(dataStore);
+        final DocumentImpl document
+            = createDocument("/mnt/fs/docs/hr policy.doc", "REFERENCE", DocumentWorkerFieldEncoding.utf8, application);
+
+        final FieldImpl fieldImpl = new FieldImpl(application, document, "CONTENT");
+        fieldImpl.add(new ByteArrayInputStream("first value".getBytes(StandardCharsets.UTF_8)));
+        try (final OutputStream stream = fieldImpl.openOutputStream()) {
+            stream.write("second ".getBytes(StandardCharsets.UTF_8));
+            stream.write("value".getBytes(StandardCharsets.UTF_8));
+        }
+
+        Assert.assertEquals(Arrays.asList("first value", "second value"), storedValues);
+
+        final List<DocumentWorkerFieldValue> values = fieldImpl.getChanges().values;
+        Assert.assertEquals(2, values.size());
+        Assert.assertEquals("stored-ref-1", values.get(0).data);
+        Assert.assertEquals("stored-ref-2", values.get(1).data);
+        Assert.assertEquals(DocumentWorkerFieldEncoding.storage_ref, values.get(1).encoding);
+
+        fieldImpl.set(new ByteArrayInputStream("third value".getBytes(StandardCharsets.UTF_8)));
+        Assert.assertEquals(DocumentWorkerAction.replace, fieldImpl.getChanges().action);
+        Assert.assertEquals("stored-ref-3", fieldImpl.getChanges().values.get(0).data);
+    }
+
     private FieldImpl createFieldImpl(final String fileName)
     {
         final ApplicationImpl application = Mockito.mock(ApplicationImpl.class);
@@ -130,6 +260,14 @@ public class FieldImplTest
         return new FieldImpl(application, document, fileName);
     }
 
+    private static List<DocumentWorkerChange> recordChanges(final DocumentImpl document)
+    {
+        final ChangeLogBuilder changeLogBuilder = new ChangeLogBuilder();
+        document.recordChanges(changeLogBuilder);
+
+        return changeLogBuilder.getChanges();
+    }
+
     /**
      * Create a DocumentImpl object that can be used by the tests.
      *
@@ -0,0 +1,222 @@
+/*
+ * Copyright 2016-2019 Micro Focus or one of its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hpe.caf.worker.document;
+
+import com.google.common.base.Strings;
+import com.google.common.util.concurrent.Uninterruptibles;
+import com.hpe.caf.api.worker.DataStore;
+import com.hpe.caf.worker.document.config.FieldValueCacheConfiguration;
+import com.hpe.caf.worker.document.impl.FieldValueCache;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.apache.commons.io.IOUtils;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.Mockito;
+
+public class FieldValueCacheTest
+{
+    @Rule
+    public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void readThroughTest() throws Exception
+    {
+        final DataStore dataStore = createDataStore();
+
+        final FieldValueCacheConfiguration config = new FieldValueCacheConfiguration();
+        config.setMaxBytes(10L);
+        config.setMaxValueBytes(6L);
+        config.setSpillDirectory(temporaryFolder.getRoot().getPath());
+
+        final FieldValueCache cache = new FieldValueCache(dataStore, config);
+
+        // Values are read from the data store once and then from memory
+        Assert.assertEquals("ref-a", read(cache, "ref-a"));
+        Assert.assertEquals("ref-a", read(cache, "ref-a"));
+        Assert.assertEquals(1, cache.getMissCount());
+        Assert.assertEquals(1, cache.getHitCount());
+        Assert.assertEquals(5, cache.getCachedBytes());
+
+        // Values evicted from memory are read back from the spill directory
+        Assert.assertEquals("ref-b2", read(cache, "ref-b2"));
+        Assert.assertEquals(1, cache.getSpillCount());
+        Assert.assertEquals("ref-a", read(cache, "ref-a"));
+        Assert.assertEquals(1, cache.getSpillHitCount());
+        Mockito.verify(dataStore, Mockito.times(1)).retrieve("ref-a");
+
+        // Values larger than the limit are always read from the data store
+        Assert.assertEquals("ref-big", read(cache, "ref-big"));
+        Assert.assertEquals("ref-big", read(cache, "ref-big"));
+        Assert.assertEquals(2, cache.getUncachedCount());
+        Mockito.verify(dataStore, Mockito.times(2)).retrieve("ref-big");
+
+        // The spilled values are removed when the cache is closed
+        cache.close();
+        Assert.assertEquals(0, cache.getSpilledBytes());
+        Assert.assertEquals(0, temporaryFolder.getRoot().list().length);
+    }
+
+    @Test
+    public void largeValueLimitTest() throws Exception
+    {
+        final DataStore dataStore = createSizedDataStore();
+
+        final FieldValueCacheConfiguration config = new FieldValueCacheConfiguration();
+        config.setMaxBytes(1000L);
+
+        final FieldValueCache cache = new FieldValueCache(dataStore, config);
+
+        // Values up to the full size of the cache are kept rather than being evicted as soon as they are added
+        Assert.assertEquals(1000, cache.getMaximumValueBytes());
+
+        Assert.assertEquals(1000, read(cache, "a:1000").length());
+        Assert.assertEquals(1000, read(cache, "a:1000").length());
+        Assert.assertEquals(1, cache.getHitCount());
+        Assert.assertEquals(0, cache.getEvictionCount());
+        Mockito.verify(dataStore, Mockito.times(1)).retrieve("a:1000");
+
+        Assert.assertEquals(1001, read(cache, "b:1001").length());
+        Assert.assertEquals(1, cache.getUncachedCount());
+    }
+
+    @Test
+    public void spillTierTest() throws Exception
+    {
+        final DataStore dataStore = createSizedDataStore();
+
+        final FieldValueCacheConfiguration config = new FieldValueCacheConfiguration();
+        config.setMaxBytes(1000L);
+        config.setMaxValueBytes(200L);
+        config.setSpillDirectory(temporaryFolder.getRoot().getPath());
+
+        final FieldValueCache cache = new FieldValueCache(dataStore, config);
+
+        final int valueCount = 20;
+        for (int i = 0; i < valueCount; i++) {
+            Assert.assertEquals(200, read(cache, i + ":200").length());
+        }
+        Assert.assertEquals(valueCount, cache.getMissCount());
+        Assert.assertTrue(cache.getCachedBytes() <= 1000);
+        Assert.assertTrue(cache.getSpillCount() > 0);
+        Assert.assertEquals(cache.getSpillCount(), cache.getEvictionCount());
+
+        // Every value is read back from memory or from disk rather than from the data store
+        for (int i = 0; i < valueCount; i++) {
+            Assert.assertEquals(200, read(cache, i + ":200").length());
+            Mockito.verify(dataStore, Mockito.times(1)).retrieve(i + ":200");
+        }
+        Assert.assertEquals(valueCount, cache.getMissCount());
+        Assert.assertEquals(valueCount, cache.getHitCount() + cache.getSpillHitCount());
+        Assert.assertTrue(cache.getSpillHitCount() > 0);
+
+        cache.close();
+        Assert.assertEquals(0, cache.getSpilledBytes());
+        Assert.assertEquals(0, temporaryFolder.getRoot().list().length);
+    }
+
+    @Test
+    public void prefetchTest() throws Exception
+    {
+        final DataStore dataStore = createDataStore();
+
+        final FieldValueCacheConfiguration config = new FieldValueCacheConfiguration();
+        config.setMaxBytes(1000L);
+
+        final FieldValueCache cache = new FieldValueCache(dataStore, config);
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            cache.prefetch("ref-a", executor);
+            cache.prefetch("ref-a", executor);
+
+            // Reading the value waits for the prefetch rather than retrieving it again
+            Assert.assertEquals("ref-a", read(cache, "ref-a"));
+            Assert.assertEquals(1, cache.getPrefetchCount());
+            Assert.assertEquals(0, cache.getMissCount());
+            Mockito.verify(dataStore, Mockito.times(1)).retrieve("ref-a");
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void cancelledPrefetchTest() throws Exception
+    {
+        final DataStore dataStore = createDataStore();
+
+        final FieldValueCacheConfiguration config = new FieldValueCacheConfiguration();
+        config.setMaxBytes(1000L);
+
+        final FieldValueCache cache = new FieldValueCache(dataStore, config);
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        final CountDownLatch blocker = new CountDownLatch(1);
+        try {
+            // Keep the executor busy so that the prefetch stays queued
+            executor.execute(() -> Uninterruptibles.awaitUninterruptibly(blocker));
+            cache.prefetch("ref-a", executor);
+
+            final List<Runnable> drainedTasks = executor.shutdownNow();
+            Assert.assertEquals(1, drainedTasks.size());
+            cache.cancelPrefetches(drainedTasks);
+
+            // Reading the value does not wait for the prefetch which is never going to run
+            Assert.assertEquals("ref-a", read(cache, "ref-a"));
+            Assert.assertEquals(0, cache.getPrefetchCount());
+            Assert.assertEquals(1, cache.getMissCount());
+        } finally {
+            blocker.countDown();
+        }
+    }
+
+    private static DataStore createDataStore() throws Exception
+    {
+        final DataStore dataStore = Mockito.mock(DataStore.class);
+        Mockito.when(dataStore.retrieve(Mockito.anyString())).thenAnswer(
+            invocation -> new ByteArrayInputStream(((String) invocation.getArguments()[0]).getBytes(StandardCharsets.UTF_8)));
+
+        return dataStore;
+    }
+
+    /**
+     * Creates a data store which returns values of the size given after the colon in the reference.
+     */
+    private static DataStore createSizedDataStore() throws Exception
+    {
+        final DataStore dataStore = Mockito.mock(DataStore.class);
+        Mockito.when(dataStore.retrieve(Mockito.anyString())).thenAnswer(invocation -> {
+            final String reference = (String) invocation.getArguments()[0];
+            final int size = Integer.parseInt(reference.substring(reference.indexOf(':') + 1));
+            return new ByteArrayInputStream(Strings.repeat("x", size).getBytes(StandardCharsets.UTF_8));
+        });
+
+        return dataStore;
+    }
+
+    private static String read(final FieldValueCache cache, final String reference) throws IOException
+    {
+        try (final InputStream stream = cache.openInputStream(reference)) {
+            return IOUtils.toString(stream, StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright 2016-2019 Micro Focus or one of its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hpe.caf.worker.document;
+
+import com.hpe.caf.api.worker.WorkerTaskData;
+import com.hpe.caf.worker.document.impl.ApplicationImpl;
+import com.hpe.caf.worker.document.model.Script;
+import com.hpe.caf.worker.document.scripting.JavaScriptManager;
+import com.hpe.caf.worker.document.scripting.events.ScriptEvent;
+import com.hpe.caf.worker.document.tasks.AbstractTask;
+import com.hpe.caf.worker.document.tasks.FieldEnrichmentTask;
+import java.util.HashMap;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+public class ScriptEventTest
+{
+    @Test
+    public void eventHandlersResolvedOnLoadTest() throws Exception
+    {
+        final AbstractTask task = createTask();
+
+        Assert.assertFalse(task.getScripts().hasEventHandlers(ScriptEvent.PROCESS_DOCUMENT));
+        Assert.assertFalse(task.raiseBeforeProcessDocumentEvent(task.getDocument()));
+
+        final Script script = task.getScripts().add();
+        script.setName("test.js");
+        script.setScriptInline(
+            "function onProcessDocument(e) { e.document.getField('PROCESSED').add('true'); }\n"
+            + "var onError = 'not a function';");
+        script.load();
+
+        Assert.assertTrue(task.getScripts().hasEventHandlers(ScriptEvent.PROCESS_DOCUMENT));
+        Assert.assertFalse(task.getScripts().hasEventHandlers(ScriptEvent.ERROR));
+        Assert.assertFalse(task.getScripts().hasEventHandlers(ScriptEvent.PROCESS_TASK));
+
+        task.raiseProcessDocumentEvent(task.getDocument());
+        Assert.assertEquals("true", task.getDocument().getField("PROCESSED").getStringValues().get(0));
+
+        script.unload();
+
+        Assert.assertFalse(task.getScripts().hasEventHandlers(ScriptEvent.PROCESS_DOCUMENT));
+    }
+
+    @Test
+    public void scriptUnloadedFromOwnHandlerTest() throws Exception
+    {
+        final AbstractTask task = createTask();
+
+        final Script script = task.getScripts().add();
+        script.setName("test.js");
+        script.setScriptInline(
+            "var state = 'loaded';\n"
+            + "function onProcessDocument(e) { thisScript.unload(); e.document.getField('STATE').add(String(state)); }");
+        script.load();
+
+        // The handler's global context must not be reset while it is still running
+        task.raiseProcessDocumentEvent(task.getDocument());
+        Assert.assertEquals("loaded", task.getDocument().getField("STATE").getStringValues().get(0));
+        Assert.assertFalse(script.isLoaded());
+
+        script.load();
+        Assert.assertTrue(script.isLoaded());
+
+        task.unloadScripts();
+        Assert.assertFalse(script.isLoaded());
+    }
+
+    private static AbstractTask createTask()
+    {
+        final ApplicationImpl application = Mockito.mock(ApplicationImpl.class);
+        Mockito.when(application.getJavaScriptManager()).thenReturn(new JavaScriptManager(null));
+
+        final DocumentWorkerTask documentWorkerTask = new DocumentWorkerTask();
+        documentWorkerTask.fields = new HashMap<>();
+
+        return FieldEnrichmentTask.create(application, Mockito.mock(WorkerTaskData.class), documentWorkerTask);
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright 2016-2019 Micro Focus or one of its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hpe.caf.worker.document;
+
+import com.hpe.caf.api.worker.WorkerTaskData;
+import com.hpe.caf.worker.document.impl.ApplicationImpl;
+import com.hpe.caf.worker.document.model.Document;
+import com.hpe.caf.worker.document.model.Subdocument;
+import com.hpe.caf.worker.document.model.Subdocuments;
+import com.hpe.caf.worker.document.tasks.DocumentTask;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+public class SubdocumentsImplTest
+{
+    @Test
+    public void indexedAccessWithDeletionsTest() throws Exception
+    {
+        final Subdocuments subdocuments = createDocument(100).getSubdocuments();
+        for (int i = 0; i < 50; i++) {
+            subdocuments.add("new-" + i);
+        }
+        Assert.assertEquals(150, subdocuments.size());
+
+        // Delete every third subdocument, going through both the original and the new subdocuments
+        final List<String> expected = new ArrayList<>();
+        for (final Subdocument subdocument : subdocuments) {
+            expected.add(subdocument.getReference());
+        }
+        for (int i = 149; i >= 0; i -= 3) {
+            subdocuments.get(i).delete();
+            expected.remove(i);
+        }
+
+        Assert.assertEquals(expected.size(), subdocuments.size());
+        for (int i = 0; i < expected.size(); i++) {
+            Assert.assertEquals(expected.get(i), subdocuments.get(i).getReference());
+        }
+        Assert.assertEquals(expected, subdocuments.stream().map(Subdocument::getReference).collect(Collectors.toList()));
+
+        // Subdocuments added after the deletions are also indexed
+        subdocuments.add("last");
+        Assert.assertEquals("last", subdocuments.get(expected.size()).getReference());
+
+        try {
+            subdocuments.get(expected.size() + 1);
+            Assert.fail("Expected IndexOutOfBoundsException");
+        } catch (final IndexOutOfBoundsException ex) {
+            // Expected
+        }
+    }
+
+    @Test
+    public void deleteAndResetTest() throws Exception
+    {
+        final Document document = createDocument(3);
+        final Subdocuments subdocuments = document.getSubdocuments();
+
+        subdocuments.get(0).delete();
+        subdocuments.get(0).delete();
+        subdocuments.get(0).delete();
+        Assert.assertTrue(subdocuments.isEmpty());
+        Assert.assertFalse(subdocuments.iterator().hasNext());
+
+        document.reset();
+        Assert.assertEquals(3, subdocuments.size());
+        Assert.assertEquals("sub-2", subdocuments.get(2).getReference());
+    }
+
+    private static Document createDocument(final int subdocumentCount) throws Exception
+    {
+        final List<DocumentWorkerDocument> subdocuments = new ArrayList<>();
+        for (int i = 0; i < subdocumentCount; i++) {
+            final DocumentWorkerDocument subdocument = new DocumentWorkerDocument();
+            subdocument.reference = "sub-" + i;
+            subdocuments.add(subdocument);
+        }
+
+        final DocumentWorkerDocumentTask documentTask = new DocumentWorkerDocumentTask();
+        documentTask.document = new DocumentWorkerDocument();
+        documentTask.document.reference = "root";
+        documentTask.document.subdocuments = subdocuments;
+
+        final ApplicationImpl application = Mockito.mock(ApplicationImpl.class);
+        final WorkerTaskData workerTaskData = Mockito.mock(WorkerTaskData.class);
+
+        return DocumentTask.create(application, workerTaskData, documentTask).getDocument();
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright 2016-2019 Micro Focus or one of its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hpe.caf.worker.document.changelog;
+
+import com.hpe.caf.worker.document.DocumentWorkerChange;
+import com.hpe.caf.worker.document.DocumentWorkerDocument;
+import com.hpe.caf.worker.document.DocumentWorkerFieldValue;
+import com.hpe.caf.worker.document.views.ReadOnlyDocument;
+import java.util.Arrays;
+import java.util.Collections;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class MutableDocumentTest
+{
+    @Test
+    public void unchangedPartsAreSharedTest() throws Exception
+    {
+        final ReadOnlyDocument baseDocument = ReadOnlyDocument.create(
+            createDocument("root", "TITLE", createDocument("a", "A"), createDocument("b", "B")));
+
+        // A document with no changes is returned as it was
+        Assert.assertSame(baseDocument, ReadOnlyDocument.create(new MutableDocument(baseDocument)));
+
+        // Add a value to a field of the second subdocument
+        final DocumentWorkerChange addFieldsChange = new DocumentWorkerChange();
+        addFieldsChange.addFields = Collections.singletonMap("B", Arrays.asList(createFieldValue("b2")));
+
+        final DocumentWorkerChange updateSubdocumentChange = new DocumentWorkerChange();
+        updateSubdocumentChange.updateSubdocument = new DocumentWorkerChange.UpdateSubdocumentParams();
+        updateSubdocumentChange.updateSubdocument.index = 1;
+        updateSubdocumentChange.updateSubdocument.reference = "b";
+        updateSubdocumentChange.updateSubdocument.changes = Arrays.asList(addFieldsChange);
+
+        final MutableDocument mutableDocument = new MutableDocument(baseDocument);
+        mutableDocument.applyChanges(Arrays.asList(updateSubdocumentChange));
+        final ReadOnlyDocument effectiveDocument = ReadOnlyDocument.create(mutableDocument);
+
+        // The untouched parts of the hierarchy are shared with the base document
+        Assert.assertSame(baseDocument.getFields(), effectiveDocument.getFields());
+        Assert.assertSame(baseDocument.getSubdocuments().get(0), effectiveDocument.getSubdocuments().get(0));
+
+        // The changed subdocument has the new value, and the base document is unaffected
+        Assert.assertEquals(2, effectiveDocument.getSubdocuments().get(1).getFields().get("B").size());
+        Assert.assertEquals("b2", effectiveDocument.getSubdocuments().get(1).getFields().get("B").get(1).getData());
+        Assert.assertEquals(1, baseDocument.getSubdocuments().get(1).getFields().get("B").size());
+    }
+
+    private static DocumentWorkerDocument createDocument(
+        final String reference,
+        final String fieldName,
+        final DocumentWorkerDocument... subdocuments
+    )
+    {
+        final DocumentWorkerDocument document = new DocumentWorkerDocument();
+        document.reference = reference;
+        document.fields = Collections.singletonMap(fieldName, Arrays.asList(createFieldValue(reference + "1")));
+        document.subdocuments = Arrays.asList(subdocuments);
+        return document;
+    }
+
+    private static DocumentWorkerFieldValue createFieldValue(final String data)
+    {
+        final DocumentWorkerFieldValue fieldValue = new DocumentWorkerFieldValue();
+        fieldValue.data = data;
+        return fieldValue;
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright 2016-2019 Micro Focus or one of its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hpe.caf.worker.document.output;
+
+import com.hpe.caf.api.worker.WorkerTaskData;
+import com.hpe.caf.worker.document.DocumentWorkerChange;
+import com.hpe.caf.worker.document.DocumentWorkerDocument;
+import com.hpe.caf.worker.document.DocumentWorkerDocumentTask;
+import com.hpe.caf.worker.document.changelog.ChangeLogFunctions;
+import com.hpe.caf.worker.document.impl.ApplicationImpl;
+import com.hpe.caf.worker.document.impl.DocumentImpl;
+import com.hpe.caf.worker.document.model.Document;
+import com.hpe.caf.worker.document.tasks.DocumentTask;
+import com.hpe.caf.worker.document.util.DocumentTraversal;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+import org.mockito.Mockito;
+
+/**
+ * Compares the cost of checking whether a change log has new failures by re-scanning the changes using
+ * {@link ChangeLogFunctions#hasFailures(List)} with the cost of reading the state tracked by {@link ChangeLogBuilder#hasFailures()}.
+ * <p>
+ * The hierarchy used has 10,000 documents and is 50 levels deep: each document on a 50-document spine has 199 leaf subdocuments. Every
+ * document has a field added, and only the deepest document has a failure added, so a re-scan has to visit every updated subdocument.
+ * This is not run as part of the build; run the {@code main} method with the test classpath to produce the timings.
+ */
+public final class ChangeLogBuilderBenchmark
+{
+    private static final int DEPTH = 50;
+    private static final int LEAVES_PER_LEVEL = 199;
+    private static final int WARMUP_ITERATIONS = 200;
+    private static final int MEASURED_ITERATIONS = 1000;
+
+    private ChangeLogBuilderBenchmark()
+    {
+    }
+
+    public static void main(final String[] args) throws Exception
+    {
+        final DocumentImpl root = createChangedHierarchy();
+
+        final ChangeLogBuilder changeLogBuilder = new ChangeLogBuilder();
+        root.recordChanges(changeLogBuilder);
+        final List<DocumentWorkerChange> changes = changeLogBuilder.getChanges();
+
+        run("re-scan changes", () -> ChangeLogFunctions.hasFailures(changes));
+        run("tracked state", changeLogBuilder::hasFailures);
+        run("record + re-scan", () -> {
+            final ChangeLogBuilder builder = new ChangeLogBuilder();
+            root.recordChanges(builder);
+            return ChangeLogFunctions.hasFailures(builder.getChanges());
+        });
+        run("record + tracked", () -> {
+            final ChangeLogBuilder builder = new ChangeLogBuilder();
+            root.recordChanges(builder);
+            builder.getChanges();
+            return builder.hasFailures();
+        });
+    }
+
+    private static void run(final String name, final BooleanSupplier check)
+    {
+        int failureCount = 0;
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            failureCount += check.getAsBoolean() ? 1 : 0;
+        }
+
+        final long startTime = System.nanoTime();
+        for (int i = 0; i < MEASURED_ITERATIONS; i++) {
+            failureCount += check.getAsBoolean() ? 1 : 0;
+        }
+        final long elapsedTime = System.nanoTime() - startTime;
+
+        System.out.printf("%-18s %12.3f us/op  (failures found %d times)%n",
+                          name, elapsedTime / 1000.0 / MEASURED_ITERATIONS, failureCount);
+    }
+
+    private static DocumentImpl createChangedHierarchy() throws Exception
+    {
+        DocumentWorkerDocument spine = null;
+        for (int level = DEPTH - 1; level >= 0; level--) {
+            final List<DocumentWorkerDocument> subdocuments = new ArrayList<>();
+            if (spine != null) {
+                subdocuments.add(spine);
+            }
+            for (int i = 0; i < LEAVES_PER_LEVEL; i++) {
+                subdocuments.add(createDocument("leaf-" + level + "-" + i, null));
+            }
+            spine = createDocument("spine-" + level, subdocuments);
+        }
+
+        final DocumentWorkerDocumentTask documentTask = new DocumentWorkerDocumentTask();
+        documentTask.document = spine;
+
+        final ApplicationImpl application = Mockito.mock(ApplicationImpl.class);
+        final WorkerTaskData workerTaskData = Mockito.mock(WorkerTaskData.class);
+        final DocumentImpl root = DocumentTask.create(application, workerTaskData, documentTask).getDocument();
+
+        // Add a field to every document, and a failure to the last document on the spine
+        Document deepest = root;
+        final Iterator<Document> documents = DocumentTraversal.preOrder(root);
+        while (documents.hasNext()) {
+            final Document document = documents.next();
+            document.getField("PROCESSED").add("true");
+            if (document.getReference().equals("spine-" + (DEPTH - 1))) {
+                deepest = document;
+            }
+        }
+        deepest.getFailures().add("FAILURE", "Benchmark failure", null);
+
+        return root;
+    }
+
+    private static DocumentWorkerDocument createDocument(final String reference, final List<DocumentWorkerDocument> subdocuments)
+    {
+        final DocumentWorkerDocument document = new DocumentWorkerDocument();
+        document.reference = reference;
+        document.subdocuments = subdocuments;
+        return document;
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright 2016-2019 Micro Focus or one of its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hpe.caf.worker.document.output;
+
+import com.hpe.caf.worker.document.DocumentWorkerDocument;
+import com.hpe.caf.worker.document.DocumentWorkerFailure;
+import com.hpe.caf.worker.document.changelog.ChangeLogFunctions;
+import java.util.Collections;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ChangeLogBuilderTest
+{
+    @Test
+    public void nestedFailureTrackingTest()
+    {
+        final ChangeLogBuilder changeLogBuilder = new ChangeLogBuilder();
+        final ChangesJournal subdocumentJournal = changeLogBuilder.updateSubdocument(0, "a");
+        final ChangesJournal nestedJournal = subdocumentJournal.updateSubdocument(1, "b");
+        assertFailureState(false, changeLogBuilder);
+
+        nestedJournal.addFailure(createFailure("F1"));
+        assertFailureState(true, changeLogBuilder);
+
+        subdocumentJournal.addFailure(createFailure("F2"));
+        nestedJournal.setFailures(Collections.emptyList());
+        assertFailureState(true, changeLogBuilder);
+
+        subdocumentJournal.setFailures(Collections.emptyList());
+        assertFailureState(false, changeLogBuilder);
+    }
+
+    @Test
+    public void addedSubdocumentFailureTrackingTest()
+    {
+        final DocumentWorkerDocument nestedSubdocument = new DocumentWorkerDocument();
+        nestedSubdocument.failures = Collections.singletonList(createFailure("F1"));
+
+        final DocumentWorkerDocument subdocument = new DocumentWorkerDocument();
+        subdocument.subdocuments = Collections.singletonList(nestedSubdocument);
+
+        final ChangeLogBuilder changeLogBuilder = new ChangeLogBuilder();
+        changeLogBuilder.addSubdocument(new DocumentWorkerDocument());
+        assertFailureState(false, changeLogBuilder);
+
+        changeLogBuilder.updateSubdocument(0, "a").addSubdocument(subdocument);
+        assertFailureState(true, changeLogBuilder);
+    }
+
+    private static void assertFailureState(final boolean expected, final ChangeLogBuilder changeLogBuilder)
+    {
+        Assert.assertEquals(expected, changeLogBuilder.hasFailures());
+        Assert.assertEquals(expected, ChangeLogFunctions.hasFailures(changeLogBuilder.getChanges()));
+    }
+
+    private static DocumentWorkerFailure createFailure(final String failureId)
+    {
+        final DocumentWorkerFailure failure = new DocumentWorkerFailure();
+        failure.failureId = failureId;
+        failure.failureMessage = "Failure " + failureId;
+        return failure;
+    }
+}
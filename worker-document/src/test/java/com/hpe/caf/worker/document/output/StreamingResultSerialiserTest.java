@@ -0,0 +1,226 @@
+/*
+ * Copyright 2016-2019 Micro Focus or one of its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hpe.caf.worker.document.output;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.hpe.caf.api.Codec;
+import com.hpe.caf.api.ConfigurationSource;
+import com.hpe.caf.api.worker.DataStore;
+import com.hpe.caf.api.worker.WorkerTaskData;
+import com.hpe.caf.worker.document.DocumentWorkerChangeLogEntry;
+import com.hpe.caf.worker.document.DocumentWorkerDocument;
+import com.hpe.caf.worker.document.DocumentWorkerDocumentTask;
+import com.hpe.caf.worker.document.DocumentWorkerFieldValue;
+import com.hpe.caf.worker.document.config.DocumentWorkerConfiguration;
+import com.hpe.caf.worker.document.impl.ApplicationImpl;
+import com.hpe.caf.worker.document.impl.DocumentImpl;
+import com.hpe.caf.worker.document.tasks.DocumentTask;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+public class StreamingResultSerialiserTest
+{
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    @Test
+    public void matchesChangeLogBuilderTest() throws Exception
+    {
+        final DocumentImpl document = createDocument();
+        document.setReference("doc-2");
+        document.getField("FIELD").add("c");
+        document.getField("OTHER").clear();
+        document.getField("NEW").set("d");
+        document.getSubdocuments().get(0).getField("FIELD").add("e");
+        document.getSubdocuments().get(0).getSubdocuments().get(0).addFailure("F1", "Nested failure");
+        document.getSubdocuments().get(1).delete();
+        document.getSubdocuments().add("sub-3").getField("FIELD").add("f");
+
+        final DocumentWorkerDocumentTask result = createResult();
+
+        // Build the expected result from the change objects
+        final ChangeLogBuilder changeLogBuilder = new ChangeLogBuilder();
+        document.recordChanges(changeLogBuilder);
+
+        final DocumentWorkerChangeLogEntry changeLogEntry = new DocumentWorkerChangeLogEntry();
+        changeLogEntry.name = "worker:1";
+        changeLogEntry.changes = changeLogBuilder.getChanges();
+
+        final DocumentWorkerDocumentTask expectedResult = createResult();
+        expectedResult.changeLog.add(changeLogEntry);
+
+        final StreamingResultSerialiser.SerialisedResult serialisedResult
+            = new StreamingResultSerialiser(MAPPER).serialise(result, changeLogEntry.name, document::recordChanges);
+
+        Assert.assertEquals(MAPPER.readTree(MAPPER.writeValueAsBytes(expectedResult)), MAPPER.readTree(serialisedResult.getData()));
+        Assert.assertTrue(serialisedResult.hasFailures());
+        Assert.assertTrue(changeLogBuilder.hasFailures());
+    }
+
+    @Test
+    public void unchangedDocumentTest() throws Exception
+    {
+        final DocumentImpl document = createDocument();
+
+        final StreamingResultSerialiser.SerialisedResult serialisedResult
+            = new StreamingResultSerialiser(MAPPER).serialise(createResult(), "worker:1", document::recordChanges);
+
+        final DocumentWorkerDocumentTask result = MAPPER.readValue(serialisedResult.getData(), DocumentWorkerDocumentTask.class);
+        Assert.assertEquals(2, result.changeLog.size());
+        Assert.assertEquals("worker:1", result.changeLog.get(1).name);
+        Assert.assertNull(result.changeLog.get(1).changes);
+        Assert.assertFalse(serialisedResult.hasFailures());
+    }
+
+    @Test
+    public void rawSectionsTest() throws Exception
+    {
+        final DocumentImpl document = createDocument();
+        document.getField("FIELD").add("c");
+
+        final DocumentWorkerDocumentTask result = createResult();
+        final StreamingResultSerialiser serialiser = new StreamingResultSerialiser(MAPPER);
+
+        // The original sections are copied exactly, including their formatting
+        final byte[] taskData = MAPPER.writerWithDefaultPrettyPrinter().writeValueAsBytes(result);
+        final StreamingResultSerialiser.DeserialisedTask deserialisedTask = serialiser.deserialiseTask(taskData);
+        Assert.assertEquals(MAPPER.readTree(MAPPER.writeValueAsBytes(result)),
+                            MAPPER.readTree(MAPPER.writeValueAsBytes(deserialisedTask.getTask())));
+        final RawDocumentTaskSections rawSections = deserialisedTask.getRawSections();
+        Assert.assertNotNull(rawSections);
+        Assert.assertEquals(MAPPER.readTree(MAPPER.writeValueAsBytes(result.document)),
+                            MAPPER.readTree(rawSections.getDocument().getValue()));
+
+        final byte[] expected = serialiser.serialise(result, "worker:1", document::recordChanges).getData();
+        final byte[] actual = serialiser.serialise(result, rawSections, "worker:1", document::recordChanges).getData();
+        Assert.assertEquals(MAPPER.readTree(expected), MAPPER.readTree(actual));
+        Assert.assertTrue(new String(actual, "UTF-8").contains(rawSections.getDocument().getValue()));
+
+        // Tasks without a document or change log entries
+        result.document = null;
+        result.changeLog = Collections.emptyList();
+
+        final RawDocumentTaskSections emptySections = serialiser.deserialiseTask(MAPPER.writeValueAsBytes(result)).getRawSections();
+        Assert.assertNotNull(emptySections);
+        Assert.assertNull(emptySections.getDocument());
+        Assert.assertFalse(emptySections.hasChangeLogEntries());
+        Assert.assertEquals(
+            MAPPER.readTree(serialiser.serialise(result, "worker:1", document::recordChanges).getData()),
+            MAPPER.readTree(serialiser.serialise(result, emptySections, "worker:1", document::recordChanges).getData()));
+    }
+
+    @Test
+    public void rawSectionsLocatedWhileDeserialisingTest() throws Exception
+    {
+        final StreamingResultSerialiser serialiser = new StreamingResultSerialiser(MAPPER);
+
+        // The sections are located wherever they are in the task, and nested values with the same names are not mistaken for them
+        final String taskJson = "{\"customData\": {\"document\": \"x\", \"changeLog\": \"y\"},"
+            + " \"changeLog\": [{\"name\": \"a:1\"}, {\"name\": \"b:1\", \"changes\": []}],"
+            + " \"document\": {\"reference\": \"doc\", \"subdocuments\": [{\"reference\": \"sub\"}]}}";
+
+        final StreamingResultSerialiser.DeserialisedTask deserialisedTask = serialiser.deserialiseTask(taskJson.getBytes("UTF-8"));
+        Assert.assertEquals("doc", deserialisedTask.getTask().document.reference);
+        Assert.assertEquals(2, deserialisedTask.getTask().changeLog.size());
+
+        final RawDocumentTaskSections rawSections = deserialisedTask.getRawSections();
+        Assert.assertNotNull(rawSections);
+        Assert.assertEquals("{\"reference\": \"doc\", \"subdocuments\": [{\"reference\": \"sub\"}]}",
+                            rawSections.getDocument().getValue());
+        Assert.assertEquals("{\"name\": \"a:1\"}, {\"name\": \"b:1\", \"changes\": []}",
+                            rawSections.getChangeLogEntries().getValue());
+
+        // The deserialisation is strict
+        try {
+            serialiser.deserialiseTask("{\"unknown\": true}".getBytes("UTF-8"));
+            Assert.fail("Unknown property accepted");
+        } catch (final IOException ex) {
+            // expected
+        }
+    }
+
+    @Test
+    public void codecCompatibilityTest() throws Exception
+    {
+        final ConfigurationSource configSource = Mockito.mock(ConfigurationSource.class);
+        Mockito.when(configSource.getConfiguration(DocumentWorkerConfiguration.class)).thenReturn(new DocumentWorkerConfiguration());
+
+        // A codec which writes the same JSON allows the results to be streamed
+        final Codec jsonCodec = Mockito.mock(Codec.class);
+        Mockito.when(jsonCodec.serialise(Mockito.any())).thenAnswer(invocation -> MAPPER.writeValueAsBytes(invocation.getArguments()[0]));
+
+        final ApplicationImpl jsonApplication = new ApplicationImpl(configSource, Mockito.mock(DataStore.class), jsonCodec);
+        Assert.assertNotNull(jsonApplication.getStreamingResultSerialiser());
+
+        // Any other codec is used to serialise the results itself
+        final Codec otherCodec = Mockito.mock(Codec.class);
+        Mockito.when(otherCodec.serialise(Mockito.any())).thenReturn(new byte[10]);
+
+        final ApplicationImpl otherApplication = new ApplicationImpl(configSource, Mockito.mock(DataStore.class), otherCodec);
+        Assert.assertNull(otherApplication.getStreamingResultSerialiser());
+    }
+
+    private static DocumentImpl createDocument() throws Exception
+    {
+        final DocumentWorkerDocument nestedSubdocument = new DocumentWorkerDocument();
+        nestedSubdocument.reference = "sub-0-0";
+
+        final DocumentWorkerDocument subdocument0 = createDocument("sub-0", "x");
+        subdocument0.subdocuments = Collections.singletonList(nestedSubdocument);
+
+        final DocumentWorkerDocument document = createDocument("doc", "a");
+        document.fields.put("OTHER", Collections.singletonList(createFieldValue("b")));
+        document.subdocuments = Arrays.asList(subdocument0, createDocument("sub-1", "y"), createDocument("sub-2", "z"));
+
+        final DocumentWorkerDocumentTask documentTask = new DocumentWorkerDocumentTask();
+        documentTask.document = document;
+
+        return DocumentTask.create(Mockito.mock(ApplicationImpl.class), Mockito.mock(WorkerTaskData.class), documentTask).getDocument();
+    }
+
+    private static DocumentWorkerDocument createDocument(final String reference, final String value)
+    {
+        final DocumentWorkerDocument document = new DocumentWorkerDocument();
+        document.reference = reference;
+        document.fields = new HashMap<>();
+        document.fields.put("FIELD", Collections.singletonList(createFieldValue(value)));
+        return document;
+    }
+
+    private static DocumentWorkerDocumentTask createResult()
+    {
+        final DocumentWorkerChangeLogEntry changeLogEntry = new DocumentWorkerChangeLogEntry();
+        changeLogEntry.name = "previous:1";
+
+        final DocumentWorkerDocumentTask result = new DocumentWorkerDocumentTask();
+        result.document = createDocument("doc", "a");
+        result.changeLog = new ArrayList<>(Collections.singletonList(changeLogEntry));
+        result.customData = Collections.singletonMap("key", "value");
+        return result;
+    }
+
+    private static DocumentWorkerFieldValue createFieldValue(final String data)
+    {
+        final DocumentWorkerFieldValue value = new DocumentWorkerFieldValue();
+        value.data = data;
+        return value;
+    }
+}
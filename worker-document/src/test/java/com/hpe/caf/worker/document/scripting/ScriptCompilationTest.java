@@ -0,0 +1,110 @@
+/*
+ * Copyright 2016-2019 Micro Focus or one of its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hpe.caf.worker.document.scripting;
+
+import com.hpe.caf.worker.document.config.ScriptCacheConfiguration;
+import com.hpe.caf.worker.document.scripting.specs.AbstractScriptSpec;
+import com.hpe.caf.worker.document.scripting.specs.InlineScriptSpec;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.script.CompiledScript;
+import javax.script.ScriptException;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+public class ScriptCompilationTest
+{
+    private static final int THREADS = 8;
+
+    @Test
+    public void concurrentCompilationKeepsScriptNamesTest() throws Exception
+    {
+        final JavaScriptEngine engine = new JavaScriptEngine(new NashornScriptEngineProvider());
+
+        final List<Callable<String>> compilations = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            final String name = "script-" + i + ".js";
+            compilations.add(() -> {
+                try {
+                    engine.getObjectCode(name, new InlineScriptSpec("function onProcessTask(e) {\n  ]\n}"));
+                    return null;
+                } catch (final ScriptException ex) {
+                    return ex.getFileName();
+                }
+            });
+        }
+
+        final ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            final List<Future<String>> results = executor.invokeAll(compilations);
+            for (int i = 0; i < results.size(); i++) {
+                Assert.assertEquals("script-" + i + ".js", results.get(i).get());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void cacheCompilesEachScriptOnceTest() throws Exception
+    {
+        final AtomicInteger compileCount = new AtomicInteger();
+        final CountDownLatch compilationStarted = new CountDownLatch(1);
+        final CountDownLatch compilationAllowed = new CountDownLatch(1);
+        final CompiledScript compiledScript = Mockito.mock(CompiledScript.class);
+
+        final ObjectCodeProvider compiler = (name, scriptSpec) -> {
+            compileCount.incrementAndGet();
+            compilationStarted.countDown();
+            try {
+                compilationAllowed.await(10, TimeUnit.SECONDS);
+            } catch (final InterruptedException ex) {
+                throw new ScriptException(ex);
+            }
+            return compiledScript;
+        };
+
+        final ScriptCache cache = new ScriptCache(null, new ScriptCacheConfiguration(), compiler);
+        final AbstractScriptSpec scriptSpec = new InlineScriptSpec("var x = 1;");
+
+        final ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            final List<Future<CompiledScript>> results = new ArrayList<>();
+            for (int i = 0; i < THREADS; i++) {
+                results.add(executor.submit(() -> cache.getObjectCode("test.js", scriptSpec)));
+            }
+
+            Assert.assertTrue(compilationStarted.await(10, TimeUnit.SECONDS));
+            compilationAllowed.countDown();
+
+            for (final Future<CompiledScript> result : results) {
+                Assert.assertSame(compiledScript, result.get());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        Assert.assertEquals(1, compileCount.get());
+    }
+}
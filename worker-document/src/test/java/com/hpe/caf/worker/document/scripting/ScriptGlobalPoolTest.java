@@ -0,0 +1,88 @@
+/*
+ * Copyright 2016-2019 Micro Focus or one of its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hpe.caf.worker.document.scripting;
+
+import com.hpe.caf.worker.document.config.ScriptCachingConfiguration;
+import com.hpe.caf.worker.document.scripting.specs.AbstractScriptSpec;
+import com.hpe.caf.worker.document.scripting.specs.InlineScriptSpec;
+import javax.script.Bindings;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ScriptGlobalPoolTest
+{
+    @Test
+    public void globalReusedForSameScriptTest() throws Exception
+    {
+        final ScriptCachingConfiguration config = new ScriptCachingConfiguration();
+        config.setGlobalPoolSize(8);
+
+        final JavaScriptManager manager = new JavaScriptManager(config);
+        final AbstractScriptSpec scriptSpec = new InlineScriptSpec("var count; var total = 0; function onProcessTask(e) { count = 1; }");
+
+        final Bindings global = manager.acquireGlobal("test.js", scriptSpec);
+        global.put("thisScript", "first");
+        manager.getObjectCode("test.js", scriptSpec).eval(global);
+        global.put("count", 5);
+        global.put("extra", "value");
+        manager.releaseGlobal("test.js", scriptSpec, global);
+
+        // A different script gets a new global
+        final AbstractScriptSpec otherScriptSpec = new InlineScriptSpec("var other = 1;");
+        Assert.assertNotSame(global, manager.acquireGlobal("other.js", otherScriptSpec));
+
+        // The same script gets the global back, without any of the variables from its previous use
+        final Bindings reusedGlobal = manager.acquireGlobal("test.js", scriptSpec);
+        Assert.assertSame(global, reusedGlobal);
+        Assert.assertNull(reusedGlobal.get("thisScript"));
+        Assert.assertNull(reusedGlobal.get("count"));
+        Assert.assertNull(reusedGlobal.get("extra"));
+
+        manager.getObjectCode("test.js", scriptSpec).eval(reusedGlobal);
+        Assert.assertEquals(0, ((Number) reusedGlobal.get("total")).intValue());
+        Assert.assertNull(reusedGlobal.get("count"));
+    }
+
+    @Test
+    public void globalPoolDisabledByDefaultTest() throws Exception
+    {
+        final JavaScriptManager manager = new JavaScriptManager(null);
+        final AbstractScriptSpec scriptSpec = new InlineScriptSpec("var x = 1;");
+
+        final Bindings global = manager.acquireGlobal("test.js", scriptSpec);
+        manager.releaseGlobal("test.js", scriptSpec, global);
+
+        Assert.assertNotSame(global, manager.acquireGlobal("test.js", scriptSpec));
+    }
+
+    @Test
+    public void builtInChangesNotSharedByDefaultTest() throws Exception
+    {
+        final JavaScriptManager manager = new JavaScriptManager(null);
+        final AbstractScriptSpec scriptSpec = new InlineScriptSpec(
+            "var leaked = typeof [].leaked; Array.prototype.leaked = 1; Object.defineProperty(this, 'hidden', { value: 1 });");
+
+        final Bindings global = manager.acquireGlobal("test.js", scriptSpec);
+        manager.getObjectCode("test.js", scriptSpec).eval(global);
+        Assert.assertEquals("undefined", global.get("leaked"));
+        manager.releaseGlobal("test.js", scriptSpec, global);
+
+        // The next task which loads the script does not see the changes that the previous one made to the built-in objects
+        final Bindings nextGlobal = manager.acquireGlobal("test.js", scriptSpec);
+        manager.getObjectCode("test.js", scriptSpec).eval(nextGlobal);
+        Assert.assertEquals("undefined", nextGlobal.get("leaked"));
+    }
+}
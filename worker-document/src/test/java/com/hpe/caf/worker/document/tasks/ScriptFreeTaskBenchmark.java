@@ -0,0 +1,153 @@
+/*
+ * Copyright 2016-2019 Micro Focus or one of its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hpe.caf.worker.document.tasks;
+
+import com.hpe.caf.api.worker.WorkerTaskData;
+import com.hpe.caf.worker.document.DocumentWorkerDocument;
+import com.hpe.caf.worker.document.DocumentWorkerDocumentTask;
+import com.hpe.caf.worker.document.impl.ApplicationImpl;
+import com.hpe.caf.worker.document.impl.ScriptsImpl;
+import com.hpe.caf.worker.document.model.Document;
+import com.hpe.caf.worker.document.scripting.events.CancelableDocumentEventObject;
+import com.hpe.caf.worker.document.scripting.events.DocumentEventObject;
+import com.hpe.caf.worker.document.scripting.events.ScriptEvent;
+import java.util.function.BooleanSupplier;
+import org.mockito.Mockito;
+
+/**
+ * Measures the per-document cost of raising the script events for a task which does not have any customization scripts.
+ * <p>
+ * The "previous" figures emulate the earlier implementation, which created a script collection for every task and an event object and
+ * a dispatch lambda for every event raised, regardless of whether any script was listening. This is not run as part of the build; run
+ * the {@code main} method with the test classpath to produce the timings.
+ */
+public final class ScriptFreeTaskBenchmark
+{
+    private static final int DOCUMENTS_PER_TASK = 100;
+    private static final int WARMUP_ITERATIONS = 20000;
+    private static final int MEASURED_ITERATIONS = 100000;
+
+    private ScriptFreeTaskBenchmark()
+    {
+    }
+
+    public static void main(final String[] args) throws Exception
+    {
+        final ApplicationImpl application = Mockito.mock(ApplicationImpl.class);
+        final WorkerTaskData workerTaskData = Mockito.mock(WorkerTaskData.class);
+        final DocumentWorkerDocumentTask documentTask = createDocumentTask();
+
+        run("previous", () -> processTaskPreviously(application, workerTaskData, documentTask));
+        run("fast path", () -> processTask(application, workerTaskData, documentTask));
+    }
+
+    private interface TaskAction
+    {
+        int run() throws Exception;
+    }
+
+    private static void run(final String name, final TaskAction action) throws Exception
+    {
+        long total = 0;
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            total += action.run();
+        }
+
+        final long startTime = System.nanoTime();
+        for (int i = 0; i < MEASURED_ITERATIONS; i++) {
+            total += action.run();
+        }
+        final long elapsedTime = System.nanoTime() - startTime;
+
+        System.out.printf("%-10s %8.1f ns/document  (%d documents cancelled)%n",
+                          name, (double) elapsedTime / MEASURED_ITERATIONS / DOCUMENTS_PER_TASK, total);
+    }
+
+    private static int processTask(
+        final ApplicationImpl application,
+        final WorkerTaskData workerTaskData,
+        final DocumentWorkerDocumentTask documentTask
+    ) throws Exception
+    {
+        final DocumentTask task = DocumentTask.create(application, workerTaskData, documentTask);
+        final Document document = task.getDocument();
+
+        task.loadScripts();
+        task.raiseProcessTaskEvent();
+
+        int cancelled = 0;
+        for (int i = 0; i < DOCUMENTS_PER_TASK; i++) {
+            if (task.raiseBeforeProcessDocumentEvent(document)) {
+                cancelled++;
+                continue;
+            }
+            task.raiseProcessDocumentEvent(document);
+            task.raiseAfterProcessDocumentEvent(document);
+        }
+
+        task.raiseAfterProcessTaskEvent();
+        return cancelled;
+    }
+
+    private static int processTaskPreviously(
+        final ApplicationImpl application,
+        final WorkerTaskData workerTaskData,
+        final DocumentWorkerDocumentTask documentTask
+    ) throws Exception
+    {
+        final DocumentTask task = DocumentTask.create(application, workerTaskData, documentTask);
+        final Document document = task.getDocument();
+        final ScriptsImpl scripts = new ScriptsImpl(application, task);
+
+        scripts.loadAll();
+
+        int cancelled = 0;
+        for (int i = 0; i < DOCUMENTS_PER_TASK; i++) {
+            final CancelableDocumentEventObject beforeEventObj = new CancelableDocumentEventObject(document);
+            raiseEvent(scripts, ScriptEvent.BEFORE_PROCESS_DOCUMENT, false, () -> beforeEventObj.cancel, beforeEventObj);
+            if (beforeEventObj.cancel) {
+                cancelled++;
+                continue;
+            }
+            raiseEvent(scripts, ScriptEvent.PROCESS_DOCUMENT, false, () -> false, new DocumentEventObject(document));
+            raiseEvent(scripts, ScriptEvent.AFTER_PROCESS_DOCUMENT, true, () -> false, new DocumentEventObject(document));
+        }
+
+        return cancelled;
+    }
+
+    private static void raiseEvent(
+        final ScriptsImpl scripts,
+        final ScriptEvent event,
+        final boolean useReverseOrder,
+        final BooleanSupplier condition,
+        final Object... args
+    )
+    {
+        final Runnable action = () -> scripts.raiseEventUntil(event, useReverseOrder, condition, args);
+        action.run();
+    }
+
+    private static DocumentWorkerDocumentTask createDocumentTask()
+    {
+        final DocumentWorkerDocument document = new DocumentWorkerDocument();
+        document.reference = "benchmark";
+
+        final DocumentWorkerDocumentTask documentTask = new DocumentWorkerDocumentTask();
+        documentTask.document = document;
+        return documentTask;
+    }
+}
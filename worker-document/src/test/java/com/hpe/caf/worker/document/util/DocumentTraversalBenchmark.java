@@ -0,0 +1,139 @@
+/*
+ * Copyright 2016-2019 Micro Focus or one of its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hpe.caf.worker.document.util;
+
+import com.hpe.caf.api.worker.WorkerTaskData;
+import com.hpe.caf.worker.document.DocumentWorkerDocument;
+import com.hpe.caf.worker.document.DocumentWorkerDocumentTask;
+import com.hpe.caf.worker.document.impl.ApplicationImpl;
+import com.hpe.caf.worker.document.model.Document;
+import com.hpe.caf.worker.document.tasks.DocumentTask;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.ToLongFunction;
+import java.util.stream.Stream;
+import org.mockito.Mockito;
+
+/**
+ * Compares the cost of traversing a large document hierarchy using the previous recursive stream implementation with the cost of
+ * using the traversals in {@link DocumentTraversal}.
+ * <p>
+ * The hierarchy used has 10,000 documents and is 50 levels deep: each document on a 50-document spine has 199 leaf subdocuments.
+ * This is not run as part of the build; run the {@code main} method with the test classpath to produce the timings.
+ */
+public final class DocumentTraversalBenchmark
+{
+    private static final int DEPTH = 50;
+    private static final int LEAVES_PER_LEVEL = 199;
+    private static final int WARMUP_ITERATIONS = 200;
+    private static final int MEASURED_ITERATIONS = 1000;
+
+    private DocumentTraversalBenchmark()
+    {
+    }
+
+    public static void main(final String[] args) throws Exception
+    {
+        final Document root = createHierarchy();
+
+        run("recursive stream", root, DocumentTraversalBenchmark::countRecursive);
+        run("documentNodes", root, document -> DocumentFunctions.documentNodes(document).count());
+        run("preOrder", root, document -> count(DocumentTraversal.preOrder(document)));
+        run("postOrder", root, document -> count(DocumentTraversal.postOrder(document)));
+        run("walk", root, DocumentTraversalBenchmark::countWalk);
+    }
+
+    private static void run(final String name, final Document root, final ToLongFunction<Document> traversal)
+    {
+        long total = 0;
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            total += traversal.applyAsLong(root);
+        }
+
+        final long startTime = System.nanoTime();
+        for (int i = 0; i < MEASURED_ITERATIONS; i++) {
+            total += traversal.applyAsLong(root);
+        }
+        final long elapsedTime = System.nanoTime() - startTime;
+
+        System.out.printf("%-16s %10.1f us/op  (%d documents visited)%n",
+                          name, elapsedTime / 1000.0 / MEASURED_ITERATIONS, total / (WARMUP_ITERATIONS + MEASURED_ITERATIONS));
+    }
+
+    private static long countRecursive(final Document document)
+    {
+        return recursiveDocumentNodes(document).count();
+    }
+
+    private static Stream<Document> recursiveDocumentNodes(final Document document)
+    {
+        return Stream.concat(
+            Stream.of(document),
+            document.getSubdocuments().stream().flatMap(DocumentTraversalBenchmark::recursiveDocumentNodes));
+    }
+
+    private static long count(final Iterator<Document> iterator)
+    {
+        long count = 0;
+        while (iterator.hasNext()) {
+            iterator.next();
+            count++;
+        }
+        return count;
+    }
+
+    private static long countWalk(final Document document)
+    {
+        final long[] count = new long[1];
+        DocumentTraversal.walk(document, (node, depth) -> {
+            count[0]++;
+            return true;
+        });
+        return count[0];
+    }
+
+    private static Document createHierarchy() throws Exception
+    {
+        DocumentWorkerDocument spine = null;
+        for (int level = DEPTH - 1; level >= 0; level--) {
+            final List<DocumentWorkerDocument> subdocuments = new ArrayList<>();
+            if (spine != null) {
+                subdocuments.add(spine);
+            }
+            for (int i = 0; i < LEAVES_PER_LEVEL; i++) {
+                subdocuments.add(createDocument("leaf-" + level + "-" + i, null));
+            }
+            spine = createDocument("spine-" + level, subdocuments);
+        }
+
+        final DocumentWorkerDocumentTask documentTask = new DocumentWorkerDocumentTask();
+        documentTask.document = spine;
+
+        final ApplicationImpl application = Mockito.mock(ApplicationImpl.class);
+        final WorkerTaskData workerTaskData = Mockito.mock(WorkerTaskData.class);
+
+        return DocumentTask.create(application, workerTaskData, documentTask).getDocument();
+    }
+
+    private static DocumentWorkerDocument createDocument(final String reference, final List<DocumentWorkerDocument> subdocuments)
+    {
+        final DocumentWorkerDocument document = new DocumentWorkerDocument();
+        document.reference = reference;
+        document.subdocuments = subdocuments;
+        return document;
+    }
+}
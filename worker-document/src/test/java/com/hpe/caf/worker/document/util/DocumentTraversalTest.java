@@ -0,0 +1,143 @@
+/*
+ * Copyright 2016-2019 Micro Focus or one of its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hpe.caf.worker.document.util;
+
+import com.hpe.caf.api.worker.WorkerTaskData;
+import com.hpe.caf.worker.document.DocumentWorkerDocument;
+import com.hpe.caf.worker.document.DocumentWorkerDocumentTask;
+import com.hpe.caf.worker.document.impl.ApplicationImpl;
+import com.hpe.caf.worker.document.model.Document;
+import com.hpe.caf.worker.document.tasks.DocumentTask;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.Collectors;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+public class DocumentTraversalTest
+{
+    @Test
+    public void preOrderTest() throws Exception
+    {
+        final Document root = createTestHierarchy();
+
+        Assert.assertEquals(
+            Arrays.asList("r", "a", "a1", "a2", "b", "b1", "b1x"),
+            references(DocumentTraversal.preOrder(root)));
+
+        Assert.assertEquals(
+            Arrays.asList("r", "a", "b"),
+            references(DocumentTraversal.preOrder(root, 1)));
+
+        Assert.assertEquals(
+            Arrays.asList("r", "a", "a1", "a2", "b", "b1", "b1x"),
+            DocumentFunctions.documentNodes(root).map(Document::getReference).collect(Collectors.toList()));
+    }
+
+    @Test
+    public void postOrderTest() throws Exception
+    {
+        final Document root = createTestHierarchy();
+
+        Assert.assertEquals(
+            Arrays.asList("a1", "a2", "a", "b1x", "b1", "b", "r"),
+            references(DocumentTraversal.postOrder(root)));
+
+        Assert.assertEquals(
+            Arrays.asList("a1", "a2", "a", "b1", "b", "r"),
+            references(DocumentTraversal.postOrder(root, 2)));
+
+        Assert.assertEquals(
+            Arrays.asList("r"),
+            references(DocumentTraversal.postOrder(root, 0)));
+    }
+
+    @Test
+    public void walkTest() throws Exception
+    {
+        final Document root = createTestHierarchy();
+        final List<String> events = new ArrayList<>();
+
+        DocumentTraversal.walk(root, new DocumentVisitor()
+        {
+            @Override
+            public boolean preVisit(final Document document, final int depth)
+            {
+                events.add("+" + document.getReference() + depth);
+                return !document.getReference().equals("a");
+            }
+
+            @Override
+            public void postVisit(final Document document, final int depth)
+            {
+                events.add("-" + document.getReference() + depth);
+            }
+        });
+
+        Assert.assertEquals(
+            Arrays.asList("+r0", "+a1", "-a1", "+b1", "+b12", "+b1x3", "-b1x3", "-b12", "-b1", "-r0"),
+            events);
+    }
+
+    @Test
+    public void preOrderIncludesAddedSubdocumentsTest() throws Exception
+    {
+        final Document root = createTestHierarchy();
+        final List<String> references = new ArrayList<>();
+
+        final Iterator<Document> iterator = DocumentTraversal.preOrder(root);
+        while (iterator.hasNext()) {
+            final Document document = iterator.next();
+            references.add(document.getReference());
+            if (document.getReference().equals("a2")) {
+                document.getSubdocuments().add("a2x");
+            }
+        }
+
+        Assert.assertEquals(Arrays.asList("r", "a", "a1", "a2", "a2x", "b", "b1", "b1x"), references);
+    }
+
+    private static List<String> references(final Iterator<Document> iterator)
+    {
+        final List<String> references = new ArrayList<>();
+        iterator.forEachRemaining(document -> references.add(document.getReference()));
+        return references;
+    }
+
+    private static Document createTestHierarchy() throws Exception
+    {
+        final DocumentWorkerDocumentTask documentTask = new DocumentWorkerDocumentTask();
+        documentTask.document = createDocument("r",
+                                               createDocument("a", createDocument("a1"), createDocument("a2")),
+                                               createDocument("b", createDocument("b1", createDocument("b1x"))));
+
+        final ApplicationImpl application = Mockito.mock(ApplicationImpl.class);
+        final WorkerTaskData workerTaskData = Mockito.mock(WorkerTaskData.class);
+
+        return DocumentTask.create(application, workerTaskData, documentTask).getDocument();
+    }
+
+    private static DocumentWorkerDocument createDocument(final String reference, final DocumentWorkerDocument... subdocuments)
+    {
+        final DocumentWorkerDocument document = new DocumentWorkerDocument();
+        document.reference = reference;
+        document.subdocuments = (subdocuments.length == 0) ? null : Arrays.asList(subdocuments);
+        return document;
+    }
+}